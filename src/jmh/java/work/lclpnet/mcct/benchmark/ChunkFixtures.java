@@ -0,0 +1,224 @@
+package work.lclpnet.mcct.benchmark;
+
+import net.minecraft.Bootstrap;
+import net.minecraft.SharedConstants;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtString;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.world.storage.RegionFile;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Generates synthetic chunk data in the 1.18 chunk format, so that the benchmarks don't need a real world save.
+ * The generated data is deterministic for a given seed.
+ */
+public class ChunkFixtures {
+
+    public static final String SEARCH_BLOCK = "minecraft:stone", REPLACE_BLOCK = "minecraft:oak_planks";
+
+    private static boolean bootstrapped = false;
+
+    /**
+     * Initialize the game registries, which are needed for dimension keys.
+     */
+    public static synchronized void bootstrap() {
+        if (bootstrapped) return;
+
+        SharedConstants.createGameVersion();
+        Bootstrap.initialize();
+        bootstrapped = true;
+    }
+
+    /**
+     * Create the data of a single chunk.
+     * @param chunkPos The position of the chunk.
+     * @param sectionCount The amount of chunk sections.
+     * @param paletteSize The amount of different block states per section.
+     * @param blockEntityCount The amount of block entities, alternating between chests and signs.
+     * @param seed The seed of the generated data.
+     * @return The chunk data.
+     */
+    public static NbtCompound createChunk(ChunkPos chunkPos, int sectionCount, int paletteSize, int blockEntityCount, long seed) {
+        final Random random = new Random(seed ^ chunkPos.toLong());
+        final NbtCompound chunk = new NbtCompound();
+
+        chunk.putInt("DataVersion", 2975);
+        chunk.putInt("xPos", chunkPos.x);
+        chunk.putInt("zPos", chunkPos.z);
+        chunk.putInt("yPos", -4);
+        chunk.putString("Status", "full");
+        chunk.putLong("LastUpdate", 1000L);
+        chunk.putLong("InhabitedTime", 0L);
+
+        NbtList sections = new NbtList();
+        for (int y = 0; y < sectionCount; y++) sections.add(createSection(y - 4, paletteSize, random));
+        chunk.put("sections", sections);
+
+        NbtList blockEntities = new NbtList();
+        for (int i = 0; i < blockEntityCount; i++) blockEntities.add(createBlockEntity(chunkPos, i, random));
+        chunk.put("block_entities", blockEntities);
+
+        NbtCompound heightmaps = new NbtCompound();
+        heightmaps.putLongArray("MOTION_BLOCKING", randomLongs(37, random));
+        heightmaps.putLongArray("WORLD_SURFACE", randomLongs(37, random));
+        chunk.put("Heightmaps", heightmaps);
+
+        NbtCompound structures = new NbtCompound();
+        structures.put("References", new NbtCompound());
+        structures.put("starts", new NbtCompound());
+        chunk.put("structures", structures);
+
+        chunk.put("block_ticks", new NbtList());
+        chunk.put("fluid_ticks", new NbtList());
+
+        return chunk;
+    }
+
+    protected static NbtCompound createSection(int y, int paletteSize, Random random) {
+        final NbtCompound section = new NbtCompound();
+        section.putByte("Y", (byte) y);
+
+        NbtList palette = new NbtList();
+        for (int i = 0; i < paletteSize; i++) palette.add(createBlockState(i));
+
+        NbtCompound blockStates = new NbtCompound();
+        blockStates.put("palette", palette);
+        if (paletteSize > 1) blockStates.putLongArray("data", randomIndices(4096, paletteSize, Math.max(4, MathHelper.ceilLog2(paletteSize)), random));
+        section.put("block_states", blockStates);
+
+        NbtList biomePalette = new NbtList();
+        biomePalette.add(NbtString.of("minecraft:plains"));
+        biomePalette.add(NbtString.of("minecraft:forest"));
+
+        NbtCompound biomes = new NbtCompound();
+        biomes.put("palette", biomePalette);
+        biomes.putLongArray("data", randomIndices(64, 2, 1, random));
+        section.put("biomes", biomes);
+
+        byte[] light = new byte[2048];
+        random.nextBytes(light);
+        section.putByteArray("BlockLight", light);
+        section.putByteArray("SkyLight", light.clone());
+
+        return section;
+    }
+
+    protected static NbtCompound createBlockState(int index) {
+        final NbtCompound state = new NbtCompound();
+
+        switch (index % 4) {
+            case 0 -> state.putString("Name", index == 0 ? "minecraft:air" : "minecraft:block_" + index);
+            case 1 -> state.putString("Name", SEARCH_BLOCK);
+            case 2 -> {
+                state.putString("Name", "minecraft:stone_slab");
+
+                NbtCompound properties = new NbtCompound();
+                properties.putString("type", "bottom");
+                properties.putString("waterlogged", "false");
+                properties.putString("variant", String.valueOf(index));
+                state.put("Properties", properties);
+            }
+            default -> {
+                state.putString("Name", "minecraft:oak_stairs");
+
+                NbtCompound properties = new NbtCompound();
+                properties.putString("facing", "north");
+                properties.putString("half", "bottom");
+                properties.putString("shape", "straight");
+                properties.putString("variant", String.valueOf(index));
+                state.put("Properties", properties);
+            }
+        }
+
+        return state;
+    }
+
+    protected static NbtCompound createBlockEntity(ChunkPos chunkPos, int index, Random random) {
+        final NbtCompound blockEntity = new NbtCompound();
+        blockEntity.putInt("x", chunkPos.getStartX() + random.nextInt(16));
+        blockEntity.putInt("y", random.nextInt(256) - 64);
+        blockEntity.putInt("z", chunkPos.getStartZ() + random.nextInt(16));
+        blockEntity.putBoolean("keepPacked", false);
+
+        if (index % 2 == 0) {
+            blockEntity.putString("id", "minecraft:chest");
+
+            NbtList items = new NbtList();
+            for (int slot = 0; slot < 27; slot += 2) {
+                NbtCompound item = new NbtCompound();
+                item.putByte("Slot", (byte) slot);
+                item.putString("id", slot % 4 == 0 ? SEARCH_BLOCK : "minecraft:cobblestone");
+                item.putByte("Count", (byte) (1 + random.nextInt(64)));
+                items.add(item);
+            }
+
+            blockEntity.put("Items", items);
+        } else {
+            blockEntity.putString("id", "minecraft:sign");
+            blockEntity.putString("Color", "black");
+            blockEntity.putBoolean("GlowingText", false);
+
+            for (int line = 1; line <= 4; line++)
+                blockEntity.putString("Text" + line, "{\"text\":\"Line %s of sign %s\"}".formatted(line, index));
+        }
+
+        return blockEntity;
+    }
+
+    protected static long[] randomIndices(int size, int paletteSize, int bits, Random random) {
+        final int valuesPerLong = 64 / bits;
+        final long[] data = new long[(size + valuesPerLong - 1) / valuesPerLong];
+
+        for (int i = 0; i < size; i++) {
+            long value = random.nextInt(paletteSize);
+            data[i / valuesPerLong] |= value << ((i % valuesPerLong) * bits);
+        }
+
+        return data;
+    }
+
+    protected static long[] randomLongs(int size, Random random) {
+        final long[] data = new long[size];
+        for (int i = 0; i < size; i++) data[i] = random.nextLong();
+        return data;
+    }
+
+    /**
+     * Write a region file with every chunk present.
+     * @param directory The region directory.
+     * @param regionX The x coordinate of the region.
+     * @param regionZ The z coordinate of the region.
+     * @param sectionCount The amount of sections per chunk.
+     * @param paletteSize The amount of different block states per section.
+     * @param blockEntityCount The amount of block entities per chunk.
+     * @return The path of the region file.
+     * @throws IOException If the region file could not be written.
+     */
+    public static Path writeRegion(Path directory, int regionX, int regionZ, int sectionCount, int paletteSize, int blockEntityCount) throws IOException {
+        Files.createDirectories(directory);
+        final Path file = directory.resolve("r.%s.%s.mca".formatted(regionX, regionZ));
+
+        try (RegionFile regionFile = new RegionFile(file, directory, false)) {
+            for (int x = 0; x < 32; x++) {
+                for (int z = 0; z < 32; z++) {
+                    ChunkPos chunkPos = new ChunkPos((regionX << 5) + x, (regionZ << 5) + z);
+                    NbtCompound chunk = createChunk(chunkPos, sectionCount, paletteSize, blockEntityCount, 0L);
+
+                    try (DataOutputStream out = regionFile.getChunkOutputStream(chunkPos)) {
+                        NbtIo.write(chunk, out);
+                    }
+                }
+            }
+        }
+
+        return file;
+    }
+}
@@ -0,0 +1,64 @@
+package work.lclpnet.mcct.benchmark;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.util.math.ChunkPos;
+import org.openjdk.jmh.annotations.*;
+import work.lclpnet.mcct.nbt.NbtSelection;
+import work.lclpnet.mcct.transform.ChunkData;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing and serializing uncompressed chunk data, for complete and selective reads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChunkIoBenchmark {
+
+    @Param({"8", "24"})
+    public int sections;
+
+    @Param({"0", "64"})
+    public int blockEntities;
+
+    @Param({"all", "sections.block_states", "block_entities"})
+    public String selection;
+
+    private byte[] data;
+    private NbtSelection nbtSelection;
+    private ChunkData chunkData;
+
+    @Setup
+    public void setup() throws IOException {
+        NbtCompound chunk = ChunkFixtures.createChunk(new ChunkPos(0, 0), sections, 16, blockEntities, 0L);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        NbtIo.write(chunk, new DataOutputStream(bytes));
+        data = bytes.toByteArray();
+
+        nbtSelection = "all".equals(selection) ? NbtSelection.all() : NbtSelection.of(selection);
+        chunkData = read();
+    }
+
+    @Benchmark
+    public ChunkData read() throws IOException {
+        return ChunkData.read(new DataInputStream(new ByteArrayInputStream(data)), nbtSelection);
+    }
+
+    @Benchmark
+    public int write() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length);
+        chunkData.write(new DataOutputStream(bytes));
+        return bytes.size();
+    }
+}
@@ -0,0 +1,108 @@
+package work.lclpnet.mcct.benchmark;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
+import org.openjdk.jmh.annotations.*;
+import work.lclpnet.mcct.transform.ChunkTransformer;
+import work.lclpnet.mcct.transform.IChunkTransformation;
+import work.lclpnet.mcct.transform.MCCT;
+import work.lclpnet.mcct.transform.WorldTransformer;
+import work.lclpnet.mcct.transform.impl.MultiStringFindReplaceChunkTransformer;
+import work.lclpnet.mcct.transform.impl.PaletteChunkTransformer;
+import work.lclpnet.mcct.transform.impl.RegexFindReplaceChunkTransformer;
+import work.lclpnet.mcct.transform.impl.StringFindReplaceChunkTransformer;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency of transforming a single chunk with {@link MCCT#transformChunkNbt}.
+ * Transformations modify the chunk, so every invocation transforms a fresh copy;
+ * subtract the <code>copy</code> baseline to get the cost of the transformation itself.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChunkTransformBenchmark {
+
+    @Param({"4", "24"})
+    public int sections;
+
+    @Param({"4", "64"})
+    public int paletteSize;
+
+    @Param({"0", "64"})
+    public int blockEntities;
+
+    @Param({"string", "cachedString", "multiString", "regex", "cachedRegex", "palette", "noMatch"})
+    public String transformation;
+
+    private NbtCompound chunk;
+    private ChunkPos chunkPos;
+    private WorldTransformer.RegionFileLocation region;
+    private ChunkTransformer transformer;
+
+    @Setup
+    public void setup() {
+        ChunkFixtures.bootstrap();
+
+        chunkPos = new ChunkPos(3, 7);
+        chunk = ChunkFixtures.createChunk(chunkPos, sections, paletteSize, blockEntities, 0L);
+        region = new WorldTransformer.RegionFileLocation(Path.of("r.0.0.mca"), 0, 0, World.OVERWORLD);
+
+        transformer = new ChunkTransformer.Builder().addTransformation(createTransformation(transformation)).create();
+        MCCT.registerTransformer(transformer);
+    }
+
+    @TearDown
+    public void tearDown() {
+        MCCT.unregisterTransformer(transformer);
+    }
+
+    static IChunkTransformation createTransformation(String name) {
+        return switch (name) {
+            case "string" -> new StringFindReplaceChunkTransformer(ChunkFixtures.SEARCH_BLOCK, ChunkFixtures.REPLACE_BLOCK);
+            case "cachedString" -> new StringFindReplaceChunkTransformer(ChunkFixtures.SEARCH_BLOCK, ChunkFixtures.REPLACE_BLOCK, true);
+            case "multiString" -> {
+                Map<String, String> rules = new LinkedHashMap<>();
+                rules.put(ChunkFixtures.SEARCH_BLOCK, ChunkFixtures.REPLACE_BLOCK);
+                rules.put("minecraft:stone_slab", "minecraft:oak_slab");
+                rules.put("minecraft:cobblestone", "minecraft:mossy_cobblestone");
+                rules.put("minecraft:sign", "minecraft:oak_sign");
+                yield new MultiStringFindReplaceChunkTransformer(rules);
+            }
+            case "regex" -> new RegexFindReplaceChunkTransformer("minecraft:stone_(slab|stairs)", "minecraft:oak_$1");
+            case "cachedRegex" -> new RegexFindReplaceChunkTransformer("minecraft:stone_(slab|stairs)", "minecraft:oak_$1", true);
+            case "palette" -> new PaletteChunkTransformer.Builder()
+                    .renameBlocks(Map.of(ChunkFixtures.SEARCH_BLOCK, ChunkFixtures.REPLACE_BLOCK, "minecraft:stone_slab", "minecraft:oak_slab"))
+                    .create();
+            case "noMatch" -> new StringFindReplaceChunkTransformer("minecraft:does_not_exist", ChunkFixtures.REPLACE_BLOCK);
+            default -> throw new IllegalArgumentException("Unknown transformation " + name);
+        };
+    }
+
+    @Benchmark
+    public NbtCompound copy() {
+        return chunk.copy();
+    }
+
+    @Benchmark
+    public boolean transformChunk() {
+        return MCCT.transformChunkNbt(chunk.copy(), chunkPos, region);
+    }
+
+    /**
+     * Transforms the same chunk over and over; after the first invocation, nothing matches anymore.
+     * This measures the cost of scanning chunks that don't need to be changed.
+     */
+    @Benchmark
+    public boolean scanChunk() {
+        return MCCT.transformChunkNbt(chunk, chunkPos, region);
+    }
+}
@@ -0,0 +1,96 @@
+package work.lclpnet.mcct.benchmark;
+
+import net.minecraft.world.World;
+import net.minecraft.world.level.storage.LevelStorage;
+import org.openjdk.jmh.annotations.*;
+import work.lclpnet.mcct.transform.BenchmarkAccess;
+import work.lclpnet.mcct.transform.ChunkTransformer;
+import work.lclpnet.mcct.transform.MCCT;
+import work.lclpnet.mcct.transform.TransformOptions;
+import work.lclpnet.mcct.transform.WorldTransformer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures the throughput of transforming a complete region file with 1024 chunks through {@link WorldTransformer}:
+ * read, decompress and parse each chunk, transform it and write it back if it was modified.
+ * Region files are synced once when they are closed, see {@link TransformOptions.Durability#REGION}.
+ * The score is the average time per chunk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RegionTransformBenchmark {
+
+    private static final int CHUNKS = 1024;
+
+    @Param({"8", "24"})
+    public int sections;
+
+    @Param({"string", "palette", "noMatch"})
+    public String transformation;
+
+    @Param({"true", "false"})
+    public boolean selective;
+
+    private Path directory, template, regionPath;
+    private LevelStorage.Session session;
+    private WorldTransformer worldTransformer;
+    private WorldTransformer.RegionFileLocation region;
+    private ChunkTransformer transformer;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        ChunkFixtures.bootstrap();
+
+        directory = Files.createTempDirectory("mcct-benchmark");
+        template = ChunkFixtures.writeRegion(directory.resolve("template"), 0, 0, sections, 16, 16);
+
+        session = LevelStorage.create(directory.resolve("saves")).createSession("world");
+        regionPath = session.getWorldDirectory(World.OVERWORLD).resolve("region").resolve(template.getFileName());
+        Files.createDirectories(regionPath.getParent());
+
+        region = new WorldTransformer.RegionFileLocation(regionPath, 0, 0, World.OVERWORLD);
+
+        transformer = new ChunkTransformer.Builder()
+                .addTransformation(ChunkTransformBenchmark.createTransformation(transformation))
+                .create();
+        MCCT.registerTransformer(transformer);
+
+        worldTransformer = BenchmarkAccess.createWorldTransformer(session, new TransformOptions.Builder()
+                .journal(false)
+                .durability(TransformOptions.Durability.REGION)
+                .create());
+    }
+
+    @Setup(Level.Invocation)
+    public void copyRegion() throws IOException {
+        // every invocation starts with the untransformed region file
+        Files.copy(template, regionPath, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        MCCT.unregisterTransformer(transformer);
+        session.close();
+
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(file);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHUNKS)
+    public boolean transformRegion() {
+        return BenchmarkAccess.transformRegionFile(worldTransformer, region, selective);
+    }
+}
@@ -0,0 +1,53 @@
+package work.lclpnet.mcct.transform;
+
+import com.google.common.collect.ImmutableSet;
+import net.minecraft.resource.DataPackSettings;
+import net.minecraft.world.Difficulty;
+import net.minecraft.world.GameMode;
+import net.minecraft.world.GameRules;
+import net.minecraft.world.World;
+import net.minecraft.world.level.LevelInfo;
+import net.minecraft.world.level.storage.LevelStorage;
+import work.lclpnet.mcct.nbt.NbtSelection;
+
+/**
+ * Gives the benchmarks access to the package-private entry points of the world transformation.
+ */
+public class BenchmarkAccess {
+
+    /**
+     * Create a world transformer for the overworld of a world session, without loading its level data.
+     * @param session The session of the world.
+     * @param options The transform options.
+     * @return The world transformer.
+     */
+    public static WorldTransformer createWorldTransformer(LevelStorage.Session session, TransformOptions options) {
+        final LevelInfo levelInfo = new LevelInfo("benchmark", GameMode.SURVIVAL, false, Difficulty.NORMAL, false,
+                new GameRules(), DataPackSettings.SAFE_MODE);
+
+        return new WorldTransformer(session, levelInfo, ImmutableSet.of(World.OVERWORLD), new WorldTransformer.ProgressListener() {
+            @Override
+            public void setSteps(int steps) {}
+
+            @Override
+            public void updateCurrentStep(int currentStep) {}
+
+            @Override
+            public void updateProgress(float progress) {}
+        }, options);
+    }
+
+    /**
+     * Transform a region file with the registered transformers, just like a world transformation does.
+     * @param worldTransformer The world transformer.
+     * @param region The region file.
+     * @param selective Whether to only read the parts of the chunk data the transformers need.
+     * @return True, if every chunk of the region was transformed.
+     */
+    public static boolean transformRegionFile(WorldTransformer worldTransformer, WorldTransformer.RegionFileLocation region, boolean selective) {
+        final ILevelTransformerManager transformer = MCCT.createTransformer(worldTransformer);
+        final NbtSelection selection = selective ? transformer.getSelection() : NbtSelection.all();
+
+        return worldTransformer.transformSingleRegion(region, transformer, selection);
+    }
+}
@@ -0,0 +1,59 @@
+package work.lclpnet.mcct.asm.mixin;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.ChunkSerializer;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ProtoChunk;
+import net.minecraft.world.poi.PointOfInterestStorage;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+import work.lclpnet.mcct.transform.LazyTransformer;
+
+@Mixin(ChunkSerializer.class)
+public class MixinChunkSerializer {
+
+    @Unique
+    private static final ThreadLocal<Boolean> mcct$lazilyTransformed = ThreadLocal.withInitial(() -> false);
+
+    @Inject(
+            method = "deserialize",
+            at = @At("HEAD")
+    )
+    private static void beforeDeserialize(ServerWorld world, PointOfInterestStorage poiStorage, ChunkPos chunkPos, NbtCompound nbt,
+                                          CallbackInfoReturnable<ProtoChunk> cir) {
+        final LazyTransformer transformer = LazyTransformer.get();
+        if (transformer == null) return;
+
+        mcct$lazilyTransformed.set(transformer.transformChunk(world, chunkPos, nbt));
+    }
+
+    @Inject(
+            method = "deserialize",
+            at = @At("RETURN")
+    )
+    private static void afterDeserialize(ServerWorld world, PointOfInterestStorage poiStorage, ChunkPos chunkPos, NbtCompound nbt,
+                                         CallbackInfoReturnable<ProtoChunk> cir) {
+        if (!mcct$lazilyTransformed.get()) return;
+
+        mcct$lazilyTransformed.set(false);
+
+        // the transformed data only exists in memory, until the chunk is saved
+        cir.getReturnValue().setShouldSave(true);
+    }
+
+    @Inject(
+            method = "serialize",
+            at = @At("RETURN")
+    )
+    private static void afterSerialize(ServerWorld world, Chunk chunk, CallbackInfoReturnable<NbtCompound> cir) {
+        final LazyTransformer transformer = LazyTransformer.get();
+        if (transformer == null) return;
+
+        transformer.markChunk(world, chunk.getPos(), cir.getReturnValue());
+    }
+}
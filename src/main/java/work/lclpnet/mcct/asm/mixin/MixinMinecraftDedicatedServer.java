@@ -0,0 +1,22 @@
+package work.lclpnet.mcct.asm.mixin;
+
+import net.minecraft.server.dedicated.MinecraftDedicatedServer;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+import work.lclpnet.mcct.asm.type.IMinecraftServer;
+
+@Mixin(MinecraftDedicatedServer.class)
+public class MixinMinecraftDedicatedServer {
+
+    @Inject(
+            method = "setupServer",
+            at = @At("HEAD"),
+            cancellable = true
+    )
+    private void beforeSetupServer(CallbackInfoReturnable<Boolean> cir) {
+        // a failed setup stops the server, before it binds its port and loads the worlds
+        if (((IMinecraftServer) this).mcct$isHalted()) cir.setReturnValue(false);
+    }
+}
@@ -0,0 +1,36 @@
+package work.lclpnet.mcct.asm.mixin;
+
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.level.storage.LevelStorage;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
+import work.lclpnet.mcct.asm.type.IMinecraftServer;
+
+@Mixin(MinecraftServer.class)
+public class MixinMinecraftServer implements IMinecraftServer {
+
+    @Shadow @Final protected LevelStorage.Session session;
+
+    @Unique
+    private volatile boolean mcct$halted = false;
+
+    @Unique
+    @Override
+    public LevelStorage.Session mcct$getSession() {
+        return session;
+    }
+
+    @Unique
+    @Override
+    public void mcct$halt() {
+        mcct$halted = true;
+    }
+
+    @Unique
+    @Override
+    public boolean mcct$isHalted() {
+        return mcct$halted;
+    }
+}
@@ -0,0 +1,32 @@
+package work.lclpnet.mcct.asm.mixin;
+
+import net.minecraft.world.storage.RegionFile;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Redirect;
+import work.lclpnet.mcct.asm.type.IRegionFile;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+@Mixin(RegionFile.class)
+public class MixinRegionFile implements IRegionFile {
+
+    @Unique
+    private boolean syncOnClose = true;
+
+    @Unique
+    @Override
+    public void mcct$setSyncOnClose(boolean syncOnClose) {
+        this.syncOnClose = syncOnClose;
+    }
+
+    @Redirect(
+            method = "close",
+            at = @At(value = "INVOKE", target = "Ljava/nio/channels/FileChannel;force(Z)V")
+    )
+    public void onCloseForce(FileChannel channel, boolean metaData) throws IOException {
+        if (syncOnClose) channel.force(metaData);
+    }
+}
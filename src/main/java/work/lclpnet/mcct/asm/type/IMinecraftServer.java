@@ -0,0 +1,15 @@
+package work.lclpnet.mcct.asm.type;
+
+import net.minecraft.world.level.storage.LevelStorage;
+
+public interface IMinecraftServer {
+
+    LevelStorage.Session mcct$getSession();
+
+    /**
+     * Stop a dedicated server before it loads its worlds. Must be called before the server is set up.
+     */
+    void mcct$halt();
+
+    boolean mcct$isHalted();
+}
@@ -0,0 +1,6 @@
+package work.lclpnet.mcct.asm.type;
+
+public interface IRegionFile {
+
+    void mcct$setSyncOnClose(boolean syncOnClose);
+}
@@ -11,8 +11,10 @@ import net.minecraft.text.Text;
 import net.minecraft.text.TranslatableText;
 import net.minecraft.world.level.storage.LevelStorage;
 import net.minecraft.world.level.storage.LevelSummary;
+import work.lclpnet.mcct.transform.TransformMetrics;
 import work.lclpnet.mcct.transform.WorldTransformer;
 
+import javax.annotation.Nullable;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -26,6 +28,11 @@ public class WorldTransformScreen extends Screen implements WorldTransformer.Pro
     protected int steps = 0, currentStep = 0;
     protected Text text = getText(), progressText = getProgressText();
     protected int percentHash = 0;
+    @Nullable
+    protected volatile WorldTransformer transformer = null;
+    protected long lastThroughputUpdate = -1;
+    @Nullable
+    protected Text throughputText = null;
 
     public WorldTransformScreen(EditWorldScreen parent, LevelStorage.Session session) {
         super(new TranslatableText("mcct.screen.world_transform"));
@@ -41,6 +48,7 @@ public class WorldTransformScreen extends Screen implements WorldTransformer.Pro
 
     protected void startTransformation() {
         WorldTransformer.create(Objects.requireNonNull(client), session, this)
+                .thenApply(transformer -> this.transformer = transformer)
                 .thenCompose(WorldTransformer::transform)
                 .thenRun(() -> aBoolean.set(true));
     }
@@ -81,9 +89,17 @@ public class WorldTransformScreen extends Screen implements WorldTransformer.Pro
             this.text = this.getText();
         }
 
+        if (lastThroughputUpdate == -1 || System.currentTimeMillis() - lastThroughputUpdate > 1000) {
+            lastThroughputUpdate = System.currentTimeMillis();
+            this.throughputText = this.getThroughputText();
+        }
+
         drawMultiLineCenteredString(matrices, this.client.textRenderer, this.text, 1.5F, this.width / 2, this.height / 2 - 20, 0xff007fff);
         drawCenteredText(matrices, this.client.textRenderer, this.progressText, this.width / 2, this.height / 2, 0xffffffff);
 
+        if (this.throughputText != null)
+            drawCenteredText(matrices, this.client.textRenderer, this.throughputText, this.width / 2, this.height / 2 + 12, 0xffa0a0a0);
+
         super.render(matrices, mouseX, mouseY, delta);
     }
 
@@ -115,6 +131,27 @@ public class WorldTransformScreen extends Screen implements WorldTransformer.Pro
                 : new TranslatableText("mcct.screen.world_transform.progress_short", percent);
     }
 
+    @Nullable
+    protected Text getThroughputText() {
+        final WorldTransformer transformer = this.transformer;
+        if (transformer == null) return null;
+
+        final TransformMetrics metrics = transformer.getMetrics();
+        if (metrics == null) return null;
+
+        final TransformMetrics.Snapshot snapshot = metrics.snapshot();
+        final String chunksPerSecond = String.format("%.1f", snapshot.chunksPerSecond());
+
+        return snapshot.etaMillis() >= 0L
+                ? new TranslatableText("mcct.screen.world_transform.throughput_long", chunksPerSecond, formatDuration(snapshot.etaMillis()))
+                : new TranslatableText("mcct.screen.world_transform.throughput_short", chunksPerSecond);
+    }
+
+    protected static String formatDuration(long millis) {
+        final long seconds = millis / 1000L;
+        return String.format("%d:%02d:%02d", seconds / 3600L, (seconds / 60L) % 60L, seconds % 60L);
+    }
+
     @Override
     public void setSteps(int steps) {
         this.steps = steps;
@@ -0,0 +1,46 @@
+package work.lclpnet.mcct.nbt;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records where the entries of partially read compounds are located in the original binary data.
+ * Entries that were skipped while reading are referenced by their byte range, so that they can be copied verbatim.
+ */
+final class NbtLayout {
+
+    private NbtLayout() {}
+
+    sealed interface Node permits CompoundNode, ListNode {}
+
+    static final class CompoundNode implements Node {
+        /** The entries of the compound, in their original order. */
+        final List<Entry> entries = new ArrayList<>();
+    }
+
+    static final class ListNode implements Node {
+        byte elementType;
+        /** The layouts of the list elements; null for elements that are no compounds or lists. */
+        final List<Node> elements = new ArrayList<>();
+    }
+
+    sealed interface Entry permits RawEntry, SelectedEntry {
+        String key();
+    }
+
+    /**
+     * An entry that was not read.
+     * @param key The key of the entry.
+     * @param start The offset of the type byte of the entry.
+     * @param end The offset after the last byte of the entry payload.
+     */
+    record RawEntry(String key, int start, int end) implements Entry {}
+
+    /**
+     * An entry that was read.
+     * @param key The key of the entry.
+     * @param child The layout of the entry, if it was read partially.
+     */
+    record SelectedEntry(String key, @Nullable Node child) implements Entry {}
+}
@@ -0,0 +1,237 @@
+package work.lclpnet.mcct.nbt;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A compiled path to nodes of an nbt compound.
+ * A path consists of compound keys, separated by dots. Each key may be followed by list selectors in brackets:
+ * <ul>
+ *     <li><code>[*]</code> selects every element of a list</li>
+ *     <li><code>[n]</code> selects the element at index <code>n</code>; negative indices count from the end</li>
+ *     <li><code>[key=value]</code> selects every compound element of a list, whose <code>key</code> has the string value <code>value</code></li>
+ * </ul>
+ * Keys and values may be quoted with double quotes, if they contain special characters.
+ *
+ * <br><br>
+ * Example:
+ * <pre>
+ * {@code
+ * NbtPath.compile("sections[*].block_states.palette[*].Name");
+ * NbtPath.compile("block_entities[id=minecraft:sign].Text1");
+ * }
+ * </pre>
+ * Paths are parsed once, when they are compiled. Use a {@link NbtPathTree} to evaluate many paths in a single traversal.
+ */
+public final class NbtPath {
+
+    private final String path;
+    private final List<Step> steps;
+
+    private NbtPath(String path, List<Step> steps) {
+        this.path = path;
+        this.steps = steps;
+    }
+
+    /**
+     * Compile a path.
+     * @param path The path, e.g. <code>"sections[*].block_states.palette[*].Name"</code>.
+     * @return The compiled path.
+     * @throws IllegalArgumentException If the path is malformed.
+     */
+    public static NbtPath compile(String path) {
+        Objects.requireNonNull(path);
+        return new NbtPath(path, Collections.unmodifiableList(new Parser(path).parse()));
+    }
+
+    /**
+     * @return The steps of this path, from the root to the selected nodes.
+     */
+    public List<Step> getSteps() {
+        return steps;
+    }
+
+    /**
+     * Get the parts of a compound that have to be read to evaluate this path.
+     * This includes the keys used by list filters.
+     * @return The selection of this path.
+     */
+    public NbtSelection toSelection() {
+        final StringBuilder prefix = new StringBuilder();
+        final List<String> paths = new ArrayList<>();
+
+        for (Step step : steps) {
+            if (step instanceof Key key) {
+                // a selection path can't express keys containing dots
+                if (key.name().indexOf('.') != -1) return NbtSelection.all();
+
+                if (!prefix.isEmpty()) prefix.append('.');
+                prefix.append(key.name());
+            } else if (step instanceof Filter filter) {
+                if (filter.key().indexOf('.') != -1) return NbtSelection.all();
+
+                paths.add(prefix + "." + filter.key());
+            }
+        }
+
+        paths.add(prefix.toString());
+
+        return NbtSelection.of(paths.toArray(String[]::new));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        NbtPath that = (NbtPath) o;
+        return steps.equals(that.steps);
+    }
+
+    @Override
+    public int hashCode() {
+        return steps.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+
+    /**
+     * A single step of a path.
+     */
+    public sealed interface Step permits Key, AllElements, Index, Filter {}
+
+    /**
+     * Selects the child of a compound.
+     */
+    public record Key(String name) implements Step {}
+
+    /**
+     * Selects every element of a list.
+     */
+    public record AllElements() implements Step {}
+
+    /**
+     * Selects the element of a list at an index. Negative indices count from the end of the list.
+     */
+    public record Index(int index) implements Step {}
+
+    /**
+     * Selects every compound element of a list, whose child has a specific string value.
+     */
+    public record Filter(String key, String value) implements Step {
+
+        /**
+         * Checks whether an element of a list is selected by this filter.
+         * @param element The element.
+         * @return True, if the element is a compound with a matching child.
+         */
+        public boolean matches(NbtElement element) {
+            if (!(element instanceof NbtCompound compound)) return false;
+
+            final NbtElement child = compound.get(key);
+            return child != null && value.equals(child.asString());
+        }
+    }
+
+    private static class Parser {
+
+        private final String path;
+        private final List<Step> steps = new ArrayList<>();
+        private int position = 0;
+
+        Parser(String path) {
+            this.path = path;
+        }
+
+        List<Step> parse() {
+            if (path.isEmpty()) throw error("Path is empty");
+
+            while (true) {
+                steps.add(new Key(readName("[.")));
+
+                while (peek() == '[') {
+                    position++;
+                    steps.add(readSelector());
+                    expect(']');
+                }
+
+                if (position == path.length()) return steps;
+
+                expect('.');
+            }
+        }
+
+        private Step readSelector() {
+            if (peek() == '*') {
+                position++;
+                return new AllElements();
+            }
+
+            final char c = peek();
+
+            if (c == '-' || Character.isDigit(c)) {
+                final int start = position++;
+                while (position < path.length() && Character.isDigit(path.charAt(position))) position++;
+
+                try {
+                    return new Index(Integer.parseInt(path.substring(start, position)));
+                } catch (NumberFormatException e) {
+                    throw error("Invalid index");
+                }
+            }
+
+            final String key = readName("=]");
+            expect('=');
+
+            return new Filter(key, readName("]"));
+        }
+
+        private String readName(String terminators) {
+            if (peek() == '"') return readQuoted();
+
+            final int start = position;
+            while (position < path.length() && terminators.indexOf(path.charAt(position)) == -1) position++;
+
+            if (position == start) throw error("Expected a name");
+
+            return path.substring(start, position);
+        }
+
+        private String readQuoted() {
+            final StringBuilder builder = new StringBuilder();
+            position++;
+
+            while (position < path.length()) {
+                char c = path.charAt(position++);
+
+                if (c == '"') return builder.toString();
+
+                if (c == '\\' && position < path.length()) c = path.charAt(position++);
+
+                builder.append(c);
+            }
+
+            throw error("Unterminated quote");
+        }
+
+        private char peek() {
+            return position < path.length() ? path.charAt(position) : '\0';
+        }
+
+        private void expect(char c) {
+            if (peek() != c) throw error("Expected '%s'".formatted(c));
+            position++;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("%s at position %s of path '%s'".formatted(message, position, path));
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package work.lclpnet.mcct.nbt;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtList;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.UnaryOperator;
+
+/**
+ * Binds functions to the nodes selected by {@link NbtPath}s and evaluates all of them in a single traversal.
+ * Paths with a common prefix share the nodes of the prefix, so e.g. the <code>sections</code> list is only iterated once,
+ * no matter how many paths start with <code>sections[*]</code>.
+ * Only the nodes on the bound paths are visited, the rest of the compound is never touched.
+ *
+ * A function receives the current value of a selected node and returns its new value, or null if it should not be modified.
+ * Functions bound to the same node are applied in the order they were bound, each receiving the result of the previous one.
+ * A function bound to a list element must return an element of the same type as the list.
+ *
+ * Paths have to be bound before the tree is applied for the first time; it can then be applied by multiple threads at once.
+ */
+public final class NbtPathTree {
+
+    private final Node root = new Node();
+    private NbtSelection selection = NbtSelection.none();
+
+    /**
+     * Bind a function to the nodes selected by a path.
+     * @param path The path.
+     * @param function A function that maps the current value of a node to its new value, or to null if it should not be modified.
+     */
+    public void bind(NbtPath path, UnaryOperator<NbtElement> function) {
+        Objects.requireNonNull(path);
+        Objects.requireNonNull(function);
+
+        Node node = root;
+
+        for (NbtPath.Step step : path.getSteps()) {
+            if (step instanceof NbtPath.Key key) node = node.keys.computeIfAbsent(key.name(), k -> new Node());
+            else node = node.elements.computeIfAbsent(step, s -> new Node());
+        }
+
+        node.functions.add(function);
+        selection = selection.union(path.toSelection());
+    }
+
+    /**
+     * Create a tree that contains the paths and functions of multiple trees.
+     * Functions bound to the same node are applied in the order of the trees.
+     * @param trees The trees to merge; they are not modified.
+     * @return The merged tree.
+     */
+    public static NbtPathTree merge(Iterable<NbtPathTree> trees) {
+        final NbtPathTree merged = new NbtPathTree();
+
+        for (NbtPathTree tree : trees) {
+            mergeNode(merged.root, tree.root);
+            merged.selection = merged.selection.union(tree.selection);
+        }
+
+        return merged;
+    }
+
+    private static void mergeNode(Node target, Node source) {
+        target.functions.addAll(source.functions);
+
+        for (var entry : source.keys.entrySet())
+            mergeNode(target.keys.computeIfAbsent(entry.getKey(), k -> new Node()), entry.getValue());
+
+        for (var entry : source.elements.entrySet())
+            mergeNode(target.elements.computeIfAbsent(entry.getKey(), s -> new Node()), entry.getValue());
+    }
+
+    /**
+     * @return True, if no path was bound yet.
+     */
+    public boolean isEmpty() {
+        return root.keys.isEmpty();
+    }
+
+    /**
+     * @return The parts of a compound that are read by this tree; the union of the selections of every bound path.
+     */
+    public NbtSelection getSelection() {
+        return selection;
+    }
+
+    /**
+     * Apply every bound function to the nodes of a compound.
+     * @param compound The compound; modified in place.
+     * @return True, if the compound was modified.
+     */
+    public boolean apply(NbtCompound compound) {
+        return visitCompound(root, compound);
+    }
+
+    private static boolean visitChildren(Node node, NbtElement element) {
+        if (element instanceof NbtCompound compound && !node.keys.isEmpty()) return visitCompound(node, compound);
+        if (element instanceof NbtList list && !node.elements.isEmpty()) return visitList(node, list);
+        return false;
+    }
+
+    private static boolean visitCompound(Node node, NbtCompound compound) {
+        boolean modified = false;
+
+        for (var entry : node.keys.entrySet()) {
+            final String key = entry.getKey();
+            final Node child = entry.getValue();
+
+            NbtElement element = compound.get(key);
+            if (element == null) continue;
+
+            final NbtElement result = applyFunctions(child, element);
+
+            if (result != element) {
+                compound.put(key, result);
+                element = result;
+                modified = true;
+            }
+
+            modified |= visitChildren(child, element);
+        }
+
+        return modified;
+    }
+
+    private static boolean visitList(Node node, NbtList list) {
+        final int size = list.size();
+        boolean modified = false;
+
+        for (var entry : node.elements.entrySet()) {
+            final NbtPath.Step step = entry.getKey();
+            final Node child = entry.getValue();
+
+            if (step instanceof NbtPath.Index index) {
+                final int i = index.index() < 0 ? size + index.index() : index.index();
+                if (i >= 0 && i < size) modified |= visitElement(child, list, i);
+                continue;
+            }
+
+            final NbtPath.Filter filter = step instanceof NbtPath.Filter f ? f : null;
+
+            for (int i = 0; i < size; i++) {
+                if (filter == null || filter.matches(list.get(i)))
+                    modified |= visitElement(child, list, i);
+            }
+        }
+
+        return modified;
+    }
+
+    private static boolean visitElement(Node node, NbtList list, int index) {
+        NbtElement element = list.get(index);
+        final NbtElement result = applyFunctions(node, element);
+        boolean modified = false;
+
+        if (result != element) {
+            list.set(index, result);
+            element = result;
+            modified = true;
+        }
+
+        return visitChildren(node, element) || modified;
+    }
+
+    /**
+     * @return The new value of the element, or the element itself if no function modified it.
+     */
+    private static NbtElement applyFunctions(Node node, NbtElement element) {
+        NbtElement current = element;
+
+        for (UnaryOperator<NbtElement> function : node.functions) {
+            @Nullable NbtElement result = function.apply(current);
+            if (result != null && !result.equals(current)) current = result;
+        }
+
+        return current;
+    }
+
+    private static class Node {
+        final List<UnaryOperator<NbtElement>> functions = new ArrayList<>(1);
+        final Map<String, Node> keys = new LinkedHashMap<>();
+        /** The list selectors of this node, which are all steps except keys. */
+        final Map<NbtPath.Step, Node> elements = new LinkedHashMap<>();
+    }
+}
@@ -0,0 +1,148 @@
+package work.lclpnet.mcct.nbt;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Describes which parts of an nbt compound are of interest.
+ * A selection either selects a whole subtree, or a set of compound keys with a selection for each of them.
+ * Lists are transparent: a selection applied to a list is applied to each of its elements.
+ *
+ * <br><br>
+ * Example:
+ * <pre>
+ * {@code
+ * NbtSelection.of("sections.block_states", "block_entities");
+ * }
+ * </pre>
+ * This selects the <code>block_states</code> compound of every entry of the <code>sections</code> list,
+ * as well as the whole <code>block_entities</code> list.
+ */
+public final class NbtSelection {
+
+    private static final NbtSelection ALL = new NbtSelection(null);
+    private static final NbtSelection NONE = new NbtSelection(Collections.emptyMap());
+
+    /** The selected keys, or null if the whole subtree is selected. */
+    @Nullable
+    private final Map<String, NbtSelection> children;
+
+    private NbtSelection(@Nullable Map<String, NbtSelection> children) {
+        this.children = children;
+    }
+
+    /**
+     * @return A selection that selects everything.
+     */
+    public static NbtSelection all() {
+        return ALL;
+    }
+
+    /**
+     * @return A selection that selects nothing.
+     */
+    public static NbtSelection none() {
+        return NONE;
+    }
+
+    /**
+     * Create a selection from dot separated key paths.
+     * Every path selects the whole subtree at its end.
+     * @param paths The key paths to select, e.g. <code>"sections.block_states.palette"</code>.
+     * @return A selection containing every given path.
+     */
+    public static NbtSelection of(String... paths) {
+        NbtSelection selection = NONE;
+
+        for (String path : paths) {
+            Objects.requireNonNull(path);
+
+            String[] keys = path.split("\\.");
+            NbtSelection pathSelection = ALL;
+
+            for (int i = keys.length - 1; i >= 0; i--) {
+                if (keys[i].isEmpty()) throw new IllegalArgumentException("Invalid path '%s'".formatted(path));
+                pathSelection = new NbtSelection(Map.of(keys[i], pathSelection));
+            }
+
+            selection = selection.union(pathSelection);
+        }
+
+        return selection;
+    }
+
+    /**
+     * @return True, if the whole subtree is selected.
+     */
+    public boolean isAll() {
+        return children == null;
+    }
+
+    /**
+     * @return True, if nothing is selected.
+     */
+    public boolean isEmpty() {
+        return children != null && children.isEmpty();
+    }
+
+    /**
+     * Get the selection of a child of a compound.
+     * @param key The key of the child.
+     * @return The selection of the child or null, if the child is not selected.
+     */
+    @Nullable
+    public NbtSelection get(String key) {
+        if (children == null) return ALL;
+        return children.get(key);
+    }
+
+    /**
+     * Get the selected keys of a compound.
+     * @return The selected keys.
+     * @throws IllegalStateException If the whole subtree is selected.
+     */
+    public Set<String> keys() {
+        if (children == null) throw new IllegalStateException("Every key is selected");
+        return children.keySet();
+    }
+
+    /**
+     * Combine this selection with another.
+     * @param other The other selection.
+     * @return A selection that selects everything that is selected by either selection.
+     */
+    public NbtSelection union(NbtSelection other) {
+        Objects.requireNonNull(other);
+
+        if (this.children == null || other.children == null) return ALL;
+        if (this.children.isEmpty()) return other;
+        if (other.children.isEmpty()) return this;
+
+        Map<String, NbtSelection> merged = new HashMap<>(this.children);
+        other.children.forEach((key, selection) -> merged.merge(key, selection, NbtSelection::union));
+
+        return new NbtSelection(Collections.unmodifiableMap(merged));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        NbtSelection that = (NbtSelection) o;
+        return Objects.equals(children, that.children);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(children);
+    }
+
+    @Override
+    public String toString() {
+        return children == null ? "*" : children.toString();
+    }
+}
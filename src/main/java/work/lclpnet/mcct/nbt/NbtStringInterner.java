@@ -0,0 +1,75 @@
+package work.lclpnet.mcct.nbt;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import net.minecraft.nbt.NbtString;
+
+/**
+ * A bounded pool of {@link NbtString}s, which returns the same instance for equal values.
+ * Chunk data is very repetitive, the same block, entity and item ids occur in almost every chunk.
+ * Sharing one instance per distinct value keeps the heap flat, when many chunks are held in memory at once.
+ *
+ * Strings are immutable, so interned instances may be shared by any amount of compounds and threads.
+ * Once the pool is full, the least recently used values are evicted. Long strings, e.g. sign texts or book pages,
+ * are rarely repeated and are never interned.
+ */
+public class NbtStringInterner {
+
+    /** A pool size that holds the distinct ids of a typical world. */
+    public static final int DEFAULT_SIZE = 16384;
+    /** Longer strings are not interned. */
+    public static final int MAX_LENGTH = 256;
+
+    private static final NbtStringInterner SHARED = new NbtStringInterner(DEFAULT_SIZE);
+
+    private final Cache<String, NbtString> strings;
+
+    /**
+     * Create a new pool.
+     * @param maximumSize The maximum amount of interned strings.
+     */
+    public NbtStringInterner(int maximumSize) {
+        if (maximumSize <= 0) throw new IllegalArgumentException("Maximum size must be positive");
+
+        this.strings = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @return The pool shared by every reader and transformation of MCCT.
+     */
+    public static NbtStringInterner get() {
+        return SHARED;
+    }
+
+    /**
+     * Get the pooled instance of a string, or create and pool it.
+     * @param value The value of the string.
+     * @return An nbt string with the given value.
+     */
+    public NbtString intern(String value) {
+        if (value.length() > MAX_LENGTH) return NbtString.of(value);
+
+        NbtString interned = strings.getIfPresent(value);
+
+        if (interned == null) {
+            // concurrent misses may create two instances, which is cheaper than locking
+            interned = NbtString.of(value);
+            strings.put(value, interned);
+        }
+
+        return interned;
+    }
+
+    /**
+     * Get the hit and miss statistics of the pool, since it was created.
+     * @return The pool statistics.
+     */
+    public CacheStats stats() {
+        return strings.stats();
+    }
+}
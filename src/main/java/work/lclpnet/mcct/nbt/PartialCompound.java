@@ -0,0 +1,138 @@
+package work.lclpnet.mcct.nbt;
+
+import net.fabricmc.fabric.api.util.NbtType;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtList;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A compound of which only the selected parts were read.
+ * The original binary data is kept, so that the parts that were never read can be written back
+ * byte by byte, without parsing and re-encoding them.
+ */
+public class PartialCompound {
+
+    protected final NbtCompound compound;
+    protected final NbtSelection selection;
+    protected final byte[] data;
+    protected final int headerLength;
+    protected final NbtLayout.CompoundNode layout;
+
+    PartialCompound(NbtCompound compound, NbtSelection selection, byte[] data, int headerLength, NbtLayout.CompoundNode layout) {
+        this.compound = Objects.requireNonNull(compound);
+        this.selection = Objects.requireNonNull(selection);
+        this.data = Objects.requireNonNull(data);
+        this.headerLength = headerLength;
+        this.layout = Objects.requireNonNull(layout);
+    }
+
+    /**
+     * Get the selected parts of the compound.
+     * Modifications to this compound will be included by {@link #write(DataOutput)}.
+     * @return The partial compound.
+     */
+    public NbtCompound getCompound() {
+        return compound;
+    }
+
+    public NbtSelection getSelection() {
+        return selection;
+    }
+
+    /**
+     * Write the complete compound in the format of {@link NbtIo#write(NbtCompound, DataOutput)}.
+     * Entries that were skipped while reading are copied from the original data,
+     * while the selected parts are encoded from the (possibly modified) partial compound.
+     *
+     * @param output The output to write to.
+     * @throws IOException If there was an I/O error.
+     * @throws IllegalStateException If a list on a partially selected path changed its size.
+     */
+    public void write(DataOutput output) throws IOException {
+        // root type and name
+        output.write(data, 0, headerLength);
+        writeCompound(output, compound, layout);
+    }
+
+    protected void writeCompound(DataOutput output, NbtCompound compound, NbtLayout.CompoundNode layout) throws IOException {
+        final Set<String> written = new HashSet<>();
+
+        for (NbtLayout.Entry entry : layout.entries) {
+            final String key = entry.key();
+
+            if (entry instanceof NbtLayout.RawEntry raw) {
+                // entries added by transformations win over the unread original
+                if (compound.contains(key)) continue;
+
+                output.write(data, raw.start(), raw.end() - raw.start());
+                continue;
+            }
+
+            NbtElement element = compound.get(key);
+            if (element == null) continue;  // removed
+
+            written.add(key);
+            writeEntry(output, key, element, ((NbtLayout.SelectedEntry) entry).child());
+        }
+
+        for (String key : compound.getKeys()) {
+            if (written.contains(key)) continue;
+
+            NbtElement element = compound.get(key);
+            if (element != null) writeEntry(output, key, element, null);
+        }
+
+        output.writeByte(NbtType.END);
+    }
+
+    protected void writeEntry(DataOutput output, String key, NbtElement element, NbtLayout.Node layout) throws IOException {
+        output.writeByte(element.getType());
+        output.writeUTF(key);
+        writePayload(output, element, layout);
+    }
+
+    protected void writePayload(DataOutput output, NbtElement element, NbtLayout.Node layout) throws IOException {
+        if (layout instanceof NbtLayout.CompoundNode compoundLayout && element instanceof NbtCompound childCompound) {
+            writeCompound(output, childCompound, compoundLayout);
+        } else if (layout instanceof NbtLayout.ListNode listLayout && element instanceof NbtList list) {
+            writeList(output, list, listLayout);
+        } else {
+            element.write(output);
+        }
+    }
+
+    protected void writeList(DataOutput output, NbtList list, NbtLayout.ListNode layout) throws IOException {
+        final int size = list.size();
+
+        if (size != layout.elements.size())
+            throw new IllegalStateException("Partially selected list changed its size from %s to %s".formatted(layout.elements.size(), size));
+
+        output.writeByte(size == 0 ? layout.elementType : list.getHeldType());
+        output.writeInt(size);
+
+        for (int i = 0; i < size; i++) {
+            writePayload(output, list.get(i), layout.elements.get(i));
+        }
+    }
+
+    /**
+     * Parse the original data again and apply the modifications of the selected parts.
+     * @return The complete compound.
+     * @throws IOException If the original data could not be parsed.
+     */
+    public NbtCompound toCompleteCompound() throws IOException {
+        NbtCompound complete = NbtIo.read(new DataInputStream(new ByteArrayInputStream(data)));
+        SelectiveNbtIo.merge(complete, compound, selection);
+
+        return complete;
+    }
+}
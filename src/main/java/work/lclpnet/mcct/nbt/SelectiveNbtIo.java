@@ -0,0 +1,290 @@
+package work.lclpnet.mcct.nbt;
+
+import net.fabricmc.fabric.api.util.NbtType;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtTagSizeTracker;
+import net.minecraft.nbt.NbtTypes;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * Reads only the selected parts of binary nbt data.
+ * Unselected subtrees are skipped on byte level and never turned into {@link NbtElement}s.
+ * Selected string values are deduplicated through the {@link NbtStringInterner}.
+ */
+public class SelectiveNbtIo {
+
+    private static final int MAX_DEPTH = 512;
+
+    /**
+     * Read the selected parts of a named root compound, as written by {@link net.minecraft.nbt.NbtIo#write(NbtCompound, java.io.DataOutput)}.
+     * @param input The input to read from.
+     * @param selection The parts of the compound to read.
+     * @return A compound that only contains the selected parts.
+     * @throws IOException If there was an I/O error or the data is malformed.
+     */
+    public static NbtCompound read(DataInput input, NbtSelection selection) throws IOException {
+        readHeader(input);
+        return readCompound(input, null, selection, 0, null);
+    }
+
+    /**
+     * Read the selected parts of a named root compound and remember where the unread parts are located.
+     * The returned {@link PartialCompound} can write the complete compound without parsing the unread parts.
+     * @param data The binary data of the compound, as written by {@link net.minecraft.nbt.NbtIo#write(NbtCompound, java.io.DataOutput)}.
+     * @param selection The parts of the compound to read.
+     * @return The partially read compound.
+     * @throws IOException If the data is malformed.
+     */
+    public static PartialCompound readPartial(byte[] data, NbtSelection selection) throws IOException {
+        final PositionedInputStream stream = new PositionedInputStream(data);
+        final DataInputStream input = new DataInputStream(stream);
+
+        readHeader(input);
+        final int headerLength = stream.position();
+
+        final NbtLayout.CompoundNode layout = new NbtLayout.CompoundNode();
+        final NbtCompound compound = readCompound(input, stream, selection, 0, layout);
+
+        return new PartialCompound(compound, selection, data, headerLength, layout);
+    }
+
+    private static void readHeader(DataInput input) throws IOException {
+        byte type = input.readByte();
+        if (type != NbtType.COMPOUND) throw new IOException("Root tag must be a named compound tag");
+
+        skipString(input);
+    }
+
+    protected static NbtCompound readCompound(DataInput input, @Nullable PositionedInputStream stream, NbtSelection selection,
+                                              int depth, @Nullable NbtLayout.CompoundNode layout) throws IOException {
+        checkDepth(depth);
+
+        NbtCompound compound = new NbtCompound();
+
+        while (true) {
+            final int start = stream != null ? stream.position() : -1;
+
+            byte type = input.readByte();
+            if (type == NbtType.END) break;
+
+            String key = input.readUTF();
+            NbtSelection child = selection.get(key);
+
+            if (child == null) {
+                skip(input, type, depth + 1);
+                if (layout != null) layout.entries.add(new NbtLayout.RawEntry(key, start, stream.position()));
+                continue;
+            }
+
+            NbtLayout.Node childLayout = layout != null ? createLayout(type, child) : null;
+            compound.put(key, readElement(input, stream, type, child, depth + 1, childLayout));
+
+            if (layout != null) layout.entries.add(new NbtLayout.SelectedEntry(key, childLayout));
+        }
+
+        return compound;
+    }
+
+    @Nullable
+    private static NbtLayout.Node createLayout(byte type, NbtSelection selection) {
+        if (selection.isAll()) return null;
+
+        return switch (type) {
+            case NbtType.COMPOUND -> new NbtLayout.CompoundNode();
+            case NbtType.LIST -> new NbtLayout.ListNode();
+            default -> null;
+        };
+    }
+
+    protected static NbtElement readElement(DataInput input, @Nullable PositionedInputStream stream, byte type, NbtSelection selection,
+                                            int depth, @Nullable NbtLayout.Node layout) throws IOException {
+        if (!selection.isAll()) {
+            if (type == NbtType.COMPOUND) return readCompound(input, stream, selection, depth, (NbtLayout.CompoundNode) layout);
+            if (type == NbtType.LIST) return readList(input, stream, selection, depth, (NbtLayout.ListNode) layout);
+        }
+
+        // selected strings are mostly ids, which occur in almost every chunk
+        if (type == NbtType.STRING) return NbtStringInterner.get().intern(input.readUTF());
+
+        return NbtTypes.byId(type).read(input, depth, NbtTagSizeTracker.EMPTY);
+    }
+
+    protected static NbtList readList(DataInput input, @Nullable PositionedInputStream stream, NbtSelection selection,
+                                      int depth, @Nullable NbtLayout.ListNode layout) throws IOException {
+        checkDepth(depth);
+
+        byte elementType = input.readByte();
+        int size = input.readInt();
+
+        if (layout != null) layout.elementType = elementType;
+
+        NbtList list = new NbtList();
+        for (int i = 0; i < size; i++) {
+            NbtLayout.Node elementLayout = layout != null ? createLayout(elementType, selection) : null;
+            list.add(readElement(input, stream, elementType, selection, depth + 1, elementLayout));
+
+            if (layout != null) layout.elements.add(elementLayout);
+        }
+
+        return list;
+    }
+
+    /**
+     * Skip the payload of an nbt element.
+     * @param input The input to skip bytes of.
+     * @param type The type of the element.
+     * @param depth The current nesting depth.
+     * @throws IOException If there was an I/O error or the data is malformed.
+     */
+    public static void skip(DataInput input, byte type, int depth) throws IOException {
+        checkDepth(depth);
+
+        switch (type) {
+            case NbtType.BYTE -> skipFully(input, 1);
+            case NbtType.SHORT -> skipFully(input, 2);
+            case NbtType.INT, NbtType.FLOAT -> skipFully(input, 4);
+            case NbtType.LONG, NbtType.DOUBLE -> skipFully(input, 8);
+            case NbtType.BYTE_ARRAY -> skipFully(input, input.readInt());
+            case NbtType.INT_ARRAY -> skipFully(input, 4L * input.readInt());
+            case NbtType.LONG_ARRAY -> skipFully(input, 8L * input.readInt());
+            case NbtType.STRING -> skipString(input);
+            case NbtType.LIST -> {
+                byte elementType = input.readByte();
+                int size = input.readInt();
+
+                int width = fixedWidth(elementType);
+                if (width >= 0) {
+                    skipFully(input, (long) width * size);
+                } else {
+                    for (int i = 0; i < size; i++) skip(input, elementType, depth + 1);
+                }
+            }
+            case NbtType.COMPOUND -> {
+                byte childType;
+                while ((childType = input.readByte()) != NbtType.END) {
+                    skipString(input);
+                    skip(input, childType, depth + 1);
+                }
+            }
+            case NbtType.END -> {}
+            default -> throw new IOException("Invalid nbt type " + type);
+        }
+    }
+
+    private static int fixedWidth(byte type) {
+        return switch (type) {
+            case NbtType.END -> 0;
+            case NbtType.BYTE -> 1;
+            case NbtType.SHORT -> 2;
+            case NbtType.INT, NbtType.FLOAT -> 4;
+            case NbtType.LONG, NbtType.DOUBLE -> 8;
+            default -> -1;
+        };
+    }
+
+    private static void skipString(DataInput input) throws IOException {
+        skipFully(input, input.readUnsignedShort());
+    }
+
+    private static void skipFully(DataInput input, long bytes) throws IOException {
+        if (bytes < 0) throw new IOException("Negative length");
+
+        while (bytes > 0) {
+            int skipped = input.skipBytes((int) Math.min(bytes, Integer.MAX_VALUE));
+            if (skipped <= 0) {
+                // skipBytes() may skip less than requested, without reaching the end of input
+                input.readByte();
+                skipped = 1;
+            }
+
+            bytes -= skipped;
+        }
+    }
+
+    private static void checkDepth(int depth) throws IOException {
+        if (depth > MAX_DEPTH) throw new IOException("Tried to read nbt tag with too high complexity, depth > " + MAX_DEPTH);
+    }
+
+    /**
+     * Write the selected parts of a partially read compound back into the complete compound.
+     * Selected elements that are missing in <code>partial</code> are removed from <code>target</code>.
+     * @param target The complete compound.
+     * @param partial The compound that was read with the given selection and maybe modified afterwards.
+     * @param selection The selection the partial compound was read with.
+     * @throws IllegalStateException If a list on a partially selected path changed its size.
+     */
+    public static void merge(NbtCompound target, NbtCompound partial, NbtSelection selection) {
+        if (selection.isAll()) {
+            target.getKeys().removeIf(key -> !partial.contains(key));
+            partial.getKeys().forEach(key -> target.put(key, partial.get(key)));
+            return;
+        }
+
+        for (String key : selection.keys()) {
+            NbtSelection child = selection.get(key);
+            NbtElement partialElement = partial.get(key);
+
+            if (partialElement == null) {
+                target.remove(key);
+                continue;
+            }
+
+            NbtElement targetElement = target.get(key);
+            if (child == null || child.isAll() || targetElement == null || targetElement.getType() != partialElement.getType()) {
+                target.put(key, partialElement);
+            } else {
+                target.put(key, mergeElement(targetElement, partialElement, child));
+            }
+        }
+    }
+
+    protected static NbtElement mergeElement(NbtElement target, NbtElement partial, NbtSelection selection) {
+        if (partial instanceof NbtCompound partialCompound) {
+            merge((NbtCompound) target, partialCompound, selection);
+            return target;
+        }
+
+        if (partial instanceof NbtList partialList) {
+            NbtList targetList = (NbtList) target;
+            int size = partialList.size();
+
+            if (targetList.size() != size)
+                throw new IllegalStateException("Partially selected list changed its size from %s to %s".formatted(targetList.size(), size));
+
+            for (int i = 0; i < size; i++) {
+                NbtElement targetElement = targetList.get(i), partialElement = partialList.get(i);
+
+                if (targetElement.getType() == partialElement.getType())
+                    targetList.set(i, mergeElement(targetElement, partialElement, selection));
+                else
+                    targetList.set(i, partialElement);
+            }
+
+            return targetList;
+        }
+
+        return partial;
+    }
+
+    /**
+     * An in-memory input stream that exposes its current position.
+     * {@link DataInputStream} does not buffer, so the position is exact between reads.
+     */
+    protected static class PositionedInputStream extends ByteArrayInputStream {
+
+        PositionedInputStream(byte[] data) {
+            super(data);
+        }
+
+        int position() {
+            return pos;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package work.lclpnet.mcct.region;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * The buffers, {@link Inflater} and {@link Deflater} of a single thread, which are reused for every chunk it reads or writes.
+ * Buffers grow as needed and are never shrunk, so that a thread stops allocating once it has seen its largest chunk.
+ */
+final class ChunkCodec {
+
+    private static final ThreadLocal<ChunkCodec> CODECS = ThreadLocal.withInitial(ChunkCodec::new);
+    private static final int INITIAL_COMPRESSED_SIZE = 64 * 1024, INITIAL_UNCOMPRESSED_SIZE = 256 * 1024;
+
+    private final Inflater inflater = new Inflater();
+    private final Deflater deflater = new Deflater();
+    /** Compressed chunk data, read from or written to the region file. */
+    private ByteBuffer compressed = ByteBuffer.allocateDirect(INITIAL_COMPRESSED_SIZE);
+    /** Uncompressed chunk data that was read. */
+    private byte[] uncompressed = new byte[INITIAL_UNCOMPRESSED_SIZE];
+    private final ArrayInputStream uncompressedIn = new ArrayInputStream();
+    private final DataInputStream dataIn = new DataInputStream(uncompressedIn);
+    /** Uncompressed chunk data that is written. */
+    private final ArrayOutputStream uncompressedOut = new ArrayOutputStream(INITIAL_UNCOMPRESSED_SIZE);
+
+    private ChunkCodec() {}
+
+    static ChunkCodec get() {
+        return CODECS.get();
+    }
+
+    /**
+     * Get the compressed buffer, cleared and with at least the given capacity.
+     * @param capacity The required capacity.
+     * @return The compressed buffer of this thread.
+     */
+    ByteBuffer compressedBuffer(int capacity) {
+        if (compressed.capacity() < capacity)
+            compressed = ByteBuffer.allocateDirect(Math.max(capacity, compressed.capacity() * 2));
+
+        return compressed.clear();
+    }
+
+    /**
+     * Decompress zlib data into the uncompressed buffer of this thread.
+     * @param input The compressed data, from its position to its limit.
+     * @return A stream of the decompressed data, which is only valid until this thread reads the next chunk.
+     * @throws IOException If the data is malformed.
+     */
+    DataInputStream inflate(ByteBuffer input) throws IOException {
+        inflater.reset();
+        inflater.setInput(input);
+
+        int length = 0;
+
+        try {
+            while (!inflater.finished()) {
+                if (length == uncompressed.length) uncompressed = Arrays.copyOf(uncompressed, length * 2);
+
+                int inflated = inflater.inflate(uncompressed, length, uncompressed.length - length);
+
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    throw new ZipException("Truncated or invalid chunk data");
+
+                length += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        }
+
+        uncompressedIn.reset(uncompressed, length);
+        return dataIn;
+    }
+
+    /**
+     * Copy uncompressed data into the uncompressed buffer of this thread.
+     * @param input The uncompressed data, from its position to its limit.
+     * @return A stream of the data, which is only valid until this thread reads the next chunk.
+     */
+    DataInputStream copy(ByteBuffer input) {
+        final int length = input.remaining();
+        if (uncompressed.length < length) uncompressed = new byte[Math.max(length, uncompressed.length * 2)];
+
+        input.get(uncompressed, 0, length);
+
+        uncompressedIn.reset(uncompressed, length);
+        return dataIn;
+    }
+
+    /**
+     * Get the output for uncompressed chunk data of this thread, without any data.
+     * @return The uncompressed output of this thread.
+     */
+    ArrayOutputStream uncompressedOutput() {
+        uncompressedOut.reset();
+        return uncompressedOut;
+    }
+
+    /**
+     * Compress data with zlib into the compressed buffer of this thread.
+     * @param data The uncompressed data.
+     * @param length The amount of bytes to compress.
+     * @param offset The amount of bytes to keep free at the start of the buffer, e.g. for a header.
+     * @return The compressed buffer, positioned at 0 and limited to the end of the compressed data.
+     */
+    ByteBuffer deflate(byte[] data, int length, int offset) {
+        deflater.reset();
+        deflater.setInput(data, 0, length);
+        deflater.finish();
+
+        ByteBuffer output = compressedBuffer(offset + length / 2 + 64);
+        output.position(offset);
+
+        while (!deflater.finished()) {
+            if (!output.hasRemaining()) {
+                ByteBuffer previous = output.flip();
+                output = compressedBuffer(previous.capacity() * 2);
+                output.put(previous);
+            }
+
+            deflater.deflate(output);
+        }
+
+        return output.flip();
+    }
+
+    /**
+     * A byte array output stream, whose buffer can be accessed without copying it.
+     */
+    static class ArrayOutputStream extends ByteArrayOutputStream {
+
+        ArrayOutputStream(int size) {
+            super(size);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+
+    /**
+     * An input stream over a byte array, which can be reset to other data.
+     */
+    private static class ArrayInputStream extends InputStream {
+
+        private byte[] data = new byte[0];
+        private int position = 0, length = 0;
+
+        void reset(byte[] data, int length) {
+            this.data = data;
+            this.position = 0;
+            this.length = length;
+        }
+
+        @Override
+        public int read() {
+            return position < length ? data[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (position >= length) return -1;
+
+            final int read = Math.min(len, length - position);
+            System.arraycopy(data, position, b, off, read);
+            position += read;
+
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            final int skipped = (int) Math.max(0L, Math.min(n, length - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return length - position;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package work.lclpnet.mcct.region;
+
+import net.minecraft.util.math.ChunkPos;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Rewrites a region file into a fresh, tightly packed file next to it.
+ * Modified chunks are written through {@link #getChunkOutputStream(ChunkPos)}, while every other chunk is copied
+ * as raw compressed sectors by {@link #commit()}, without decompressing it.
+ * The new file then atomically replaces the original, so a crash leaves either the old or the new region file.
+ *
+ * Chunk data is always written with zlib compression, just like vanilla does. The buffers and the {@link java.util.zip.Deflater}
+ * used to compress chunks are reused by every chunk a thread writes, and unmodified chunks are copied from file to file
+ * with {@link FileChannel#transferFrom(java.nio.channels.ReadableByteChannel, long, long)}.
+ * If the writer is closed without being committed, the new file is deleted and the original stays untouched.
+ */
+public class CompactRegionWriter implements Closeable {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final byte COMPRESSION_DEFLATE = 2;
+    private static final int EXTERNAL_FLAG = 0x80;
+    private static final int MAX_SECTOR_COUNT = 0xFF;
+    /** The length of the chunk data, followed by the compression type. */
+    private static final int CHUNK_HEADER_SIZE = 5;
+
+    protected final Path file, tempFile, directory;
+    /** The suffix of the temporary files, which are moved to their final location on commit. */
+    protected final String tempSuffix;
+    protected final FileChannel out;
+    protected final int[] locations = new int[RegionHeader.CHUNK_COUNT];
+    protected final int[] timestamps = new int[RegionHeader.CHUNK_COUNT];
+    protected final BitSet written = new BitSet(RegionHeader.CHUNK_COUNT);
+    /** External chunk files to move to their final location, or to delete if the value is null. */
+    protected final Map<Path, Path> externalFiles = new LinkedHashMap<>();
+    protected int nextSector = RegionHeader.HEADER_SIZE / RegionHeader.SECTOR_SIZE;
+    private final ByteBuffer lengthBuffer = ByteBuffer.allocate(4), padding = ByteBuffer.allocate(1);
+    private boolean committed = false, closed = false;
+
+    protected CompactRegionWriter(Path file, String tempSuffix, Path directory, FileChannel out) {
+        this.file = Objects.requireNonNull(file);
+        this.tempSuffix = Objects.requireNonNull(tempSuffix);
+        this.tempFile = file.resolveSibling(file.getFileName() + tempSuffix);
+        this.directory = Objects.requireNonNull(directory);
+        this.out = Objects.requireNonNull(out);
+    }
+
+    /**
+     * Start rewriting a region file.
+     * @param file The region file.
+     * @param directory The directory of external chunk files, usually the directory of the region file.
+     * @return The writer.
+     * @throws IOException If the new file could not be created.
+     */
+    public static CompactRegionWriter open(Path file, Path directory) throws IOException {
+        return open(file, directory, ".tmp");
+    }
+
+    /**
+     * Start rewriting a region file, with temporary files that no other writer uses.
+     * Writers in different processes that may rewrite the same region file at the same time need different suffixes.
+     * @param file The region file.
+     * @param directory The directory of external chunk files, usually the directory of the region file.
+     * @param tempSuffix The suffix appended to the names of the temporary files, e.g. <code>.tmp</code>.
+     * @return The writer.
+     * @throws IOException If the new file could not be created.
+     */
+    public static CompactRegionWriter open(Path file, Path directory, String tempSuffix) throws IOException {
+        final Path tempFile = file.resolveSibling(file.getFileName() + tempSuffix);
+        final FileChannel out = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+
+        return new CompactRegionWriter(file, tempSuffix, directory, out);
+    }
+
+    /**
+     * Get an output stream for the uncompressed data of a modified chunk.
+     * The chunk is compressed and written to the new file once the stream is closed.
+     * The stream uses the buffers of the calling thread, so every thread may only write one chunk at a time.
+     * @param chunkPos The position of the chunk.
+     * @return The chunk output stream.
+     */
+    public DataOutputStream getChunkOutputStream(ChunkPos chunkPos) {
+        return new ChunkOutputStream(chunkPos, ChunkCodec.get());
+    }
+
+    /**
+     * Checks whether any modified chunk was written.
+     * @return True, if at least one chunk was written.
+     */
+    public synchronized boolean hasWrittenChunks() {
+        return !written.isEmpty();
+    }
+
+    /**
+     * Write compressed chunk data to the new file.
+     * @param chunkPos The position of the chunk.
+     * @param data The compressed data, from {@link #CHUNK_HEADER_SIZE} to its limit. The bytes before are overwritten with the chunk header.
+     * @throws IOException If the data could not be written.
+     */
+    protected synchronized void writeChunk(ChunkPos chunkPos, ByteBuffer data) throws IOException {
+        if (committed || closed) throw new IllegalStateException("Region writer is already closed");
+
+        final int chunkIndex = getChunkIndex(chunkPos);
+        final int length = data.limit();
+
+        final Path externalFile = directory.resolve("c.%s.%s.mcc".formatted(chunkPos.x, chunkPos.z));
+
+        if (getSectorCount(length) > MAX_SECTOR_COUNT) {
+            // too large for the region file; vanilla stores such chunks in a separate file
+            final Path tempExternalFile = externalFile.resolveSibling(externalFile.getFileName() + tempSuffix);
+
+            try (FileChannel external = FileChannel.open(tempExternalFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE)) {
+                data.position(CHUNK_HEADER_SIZE);
+                while (data.hasRemaining()) external.write(data);
+            }
+
+            externalFiles.put(externalFile, tempExternalFile);
+
+            data.clear().putInt(1).put((byte) (COMPRESSION_DEFLATE | EXTERNAL_FLAG)).flip();
+        } else {
+            externalFiles.put(externalFile, null);
+
+            data.putInt(0, length - 4).put(4, COMPRESSION_DEFLATE).position(0);
+        }
+
+        locations[chunkIndex] = append(data);
+        timestamps[chunkIndex] = (int) (System.currentTimeMillis() / 1000L);
+        written.set(chunkIndex);
+    }
+
+    /**
+     * Copy every chunk of the original file that was not written, write the header and replace the original file.
+     * @throws IOException If the new file could not be written or moved.
+     */
+    public synchronized void commit() throws IOException {
+        if (committed || closed) throw new IllegalStateException("Region writer is already closed");
+
+        final RegionHeader header = RegionHeader.read(file);
+
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (int i = 0; i < RegionHeader.CHUNK_COUNT; i++) {
+                if (!written.get(i) && header.hasChunk(i)) copyChunk(in, header, i);
+            }
+        }
+
+        final ByteBuffer headerBuffer = ByteBuffer.allocate(RegionHeader.HEADER_SIZE);
+        final IntBuffer ints = headerBuffer.asIntBuffer();
+        ints.put(locations);
+        ints.put(timestamps);
+
+        while (headerBuffer.hasRemaining()) out.write(headerBuffer, headerBuffer.position());
+
+        out.force(true);
+        out.close();
+
+        // chunks stored in external files are valid with both the old and the new region file
+        for (Map.Entry<Path, Path> entry : externalFiles.entrySet()) {
+            if (entry.getValue() != null) move(entry.getValue(), entry.getKey());
+        }
+
+        move(tempFile, file);
+        committed = true;
+
+        for (Map.Entry<Path, Path> entry : externalFiles.entrySet()) {
+            if (entry.getValue() == null) Files.deleteIfExists(entry.getKey());
+        }
+    }
+
+    protected void copyChunk(FileChannel in, RegionHeader header, int chunkIndex) throws IOException {
+        final long position = (long) header.getSectorOffset(chunkIndex) * RegionHeader.SECTOR_SIZE;
+        final int sectorBytes = header.getSectorCount(chunkIndex) * RegionHeader.SECTOR_SIZE;
+        final long available = in.size() - position;
+
+        if (position < RegionHeader.HEADER_SIZE || available <= 0) {
+            LOGGER.warn("Chunk {} of region file {} has an invalid location, dropping it", chunkIndex, file.getFileName());
+            return;
+        }
+
+        lengthBuffer.clear();
+        read(in, lengthBuffer, position);
+
+        // copy only the used bytes; unexpected lengths are copied sector by sector, so that no data is lost
+        final int length = lengthBuffer.hasRemaining() ? 0 : lengthBuffer.getInt(0) + 4;
+        final int bytes = (int) Math.min(length > 4 && length <= sectorBytes ? length : sectorBytes, available);
+
+        final int sectorCount = getSectorCount(bytes);
+        final long target = (long) nextSector * RegionHeader.SECTOR_SIZE;
+
+        // let the operating system copy the data, without passing it through the heap
+        in.position(position);
+        long copied = 0;
+
+        while (copied < bytes) {
+            long transferred = out.transferFrom(in, target + copied, bytes - copied);
+            if (transferred <= 0)
+                throw new IOException("Copied only %s of %s bytes of chunk %s of region file %s".formatted(copied, bytes, chunkIndex, file.getFileName()));
+
+            copied += transferred;
+        }
+
+        locations[chunkIndex] = nextSector << 8 | sectorCount;
+        timestamps[chunkIndex] = header.getTimestamp(chunkIndex);
+        nextSector += sectorCount;
+
+        pad();
+    }
+
+    /**
+     * Append data at the next free sector and pad it to full sectors.
+     * @return The location of the data, as stored in the region header.
+     */
+    protected int append(ByteBuffer data) throws IOException {
+        final int sector = nextSector;
+        final int sectorCount = getSectorCount(data.remaining());
+
+        long position = (long) sector * RegionHeader.SECTOR_SIZE;
+        while (data.hasRemaining()) position += out.write(data, position);
+
+        nextSector += sectorCount;
+        pad();
+
+        return sector << 8 | sectorCount;
+    }
+
+    /**
+     * Extend the file to the next free sector, as transfers can only append at the end of the file.
+     * The gap is filled with zeros.
+     */
+    private void pad() throws IOException {
+        final long size = (long) nextSector * RegionHeader.SECTOR_SIZE;
+        if (out.size() >= size) return;
+
+        padding.clear();
+        out.write(padding, size - 1);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+
+        if (committed) return;
+
+        out.close();
+        Files.deleteIfExists(tempFile);
+
+        for (Path tempExternalFile : externalFiles.values()) {
+            if (tempExternalFile != null) Files.deleteIfExists(tempExternalFile);
+        }
+    }
+
+    private static void read(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer, position + buffer.position()) == -1) break;
+        }
+    }
+
+    private static int getSectorCount(int bytes) {
+        return (bytes + RegionHeader.SECTOR_SIZE - 1) / RegionHeader.SECTOR_SIZE;
+    }
+
+    private static int getChunkIndex(ChunkPos chunkPos) {
+        return (chunkPos.x & 31) | ((chunkPos.z & 31) << 5);
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Collects the uncompressed data of a chunk in the buffer of its thread, and compresses and writes it once closed.
+     */
+    private class ChunkOutputStream extends DataOutputStream {
+
+        private final ChunkPos chunkPos;
+        private final ChunkCodec codec;
+        private boolean closed = false;
+
+        ChunkOutputStream(ChunkPos chunkPos, ChunkCodec codec) {
+            super(codec.uncompressedOutput());
+            this.chunkPos = chunkPos;
+            this.codec = codec;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+
+            final ChunkCodec.ArrayOutputStream uncompressed = (ChunkCodec.ArrayOutputStream) out;
+            writeChunk(chunkPos, codec.deflate(uncompressed.buffer(), uncompressed.size(), CHUNK_HEADER_SIZE));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package work.lclpnet.mcct.region;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The header of an anvil region file, which holds the sector location and the last modification time of every chunk.
+ * Reading the header only requires the first 8 KiB of the file; no chunk data is read.
+ */
+public class RegionHeader {
+
+    public static final int CHUNK_COUNT = 1024;
+    public static final int SECTOR_SIZE = 4096;
+    public static final int HEADER_SIZE = 2 * SECTOR_SIZE;
+
+    protected final int[] locations;
+    protected final int[] timestamps;
+
+    protected RegionHeader(int[] locations, int[] timestamps) {
+        this.locations = locations;
+        this.timestamps = timestamps;
+    }
+
+    /**
+     * Read the header of a region file.
+     * Missing bytes of a truncated header are treated as zero, just like vanilla does.
+     * @param file The region file.
+     * @return The header.
+     * @throws IOException If the file could not be read.
+     */
+    public static RegionHeader read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read(channel);
+        }
+    }
+
+    /**
+     * Read the header of an open region file.
+     * Missing bytes of a truncated header are treated as zero, just like vanilla does.
+     * @param channel The channel of the region file. Its position is not changed.
+     * @return The header.
+     * @throws IOException If the file could not be read.
+     */
+    public static RegionHeader read(FileChannel channel) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) == -1) break;
+        }
+
+        buffer.clear();
+        final IntBuffer ints = buffer.asIntBuffer();
+
+        final int[] locations = new int[CHUNK_COUNT], timestamps = new int[CHUNK_COUNT];
+        ints.get(locations);
+        ints.get(timestamps);
+
+        return new RegionHeader(locations, timestamps);
+    }
+
+    /**
+     * @param chunkIndex The index of the chunk inside the region.
+     * @return True, if the region file contains data for the chunk.
+     */
+    public boolean hasChunk(int chunkIndex) {
+        return locations[chunkIndex] != 0;
+    }
+
+    /**
+     * @param chunkIndex The index of the chunk inside the region.
+     * @return The first sector of the chunk data.
+     */
+    public int getSectorOffset(int chunkIndex) {
+        return locations[chunkIndex] >>> 8;
+    }
+
+    /**
+     * @param chunkIndex The index of the chunk inside the region.
+     * @return The amount of sectors the chunk data occupies.
+     */
+    public int getSectorCount(int chunkIndex) {
+        return locations[chunkIndex] & 0xFF;
+    }
+
+    /**
+     * Get the time the chunk was last written, in seconds since the epoch.
+     * @param chunkIndex The index of the chunk inside the region.
+     * @return The modification time, or 0 if it is unknown.
+     */
+    public int getTimestamp(int chunkIndex) {
+        return timestamps[chunkIndex];
+    }
+}
@@ -0,0 +1,118 @@
+package work.lclpnet.mcct.region;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Objects;
+
+/**
+ * Remembers the modification time of every chunk of a region file right after it was transformed.
+ * If the timestamp in the region header still matches in a later run with the same transformer fingerprint,
+ * the chunk was not written since and is already transformed; it can be skipped without reading its data.
+ *
+ * The index of a region is only saved once the whole region was processed. It is replaced atomically,
+ * so an interrupted run leaves the previous index intact.
+ */
+public class RegionIndex {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final int MAGIC = 0x4D434349;  // MCCI
+    private static final int VERSION = 1;
+
+    protected final Path file;
+    protected final String fingerprint;
+    /** The timestamps of the transformed chunks, or 0 if the chunk was not transformed. */
+    protected final int[] timestamps;
+    protected final BitSet transformed = new BitSet(RegionHeader.CHUNK_COUNT);
+
+    protected RegionIndex(Path file, String fingerprint, int[] timestamps) {
+        this.file = Objects.requireNonNull(file);
+        this.fingerprint = Objects.requireNonNull(fingerprint);
+        this.timestamps = timestamps;
+    }
+
+    /**
+     * Load the index of a region.
+     * If the index does not exist, is corrupt or was created with another fingerprint, an empty index is returned.
+     * @param file The index file.
+     * @param fingerprint The fingerprint of the current transformation.
+     * @return The loaded index.
+     */
+    public static RegionIndex load(Path file, String fingerprint) {
+        final int[] timestamps = new int[RegionHeader.CHUNK_COUNT];
+
+        if (Files.isRegularFile(file)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                if (in.readInt() == MAGIC && in.readInt() == VERSION && fingerprint.equals(in.readUTF())) {
+                    for (int i = 0; i < timestamps.length; i++) timestamps[i] = in.readInt();
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Failed to read region index {}, ignoring it", file, e);
+                Arrays.fill(timestamps, 0);
+            }
+        }
+
+        return new RegionIndex(file, fingerprint, timestamps);
+    }
+
+    /**
+     * Checks whether a chunk was not modified since it was transformed with the same fingerprint.
+     * @param chunkIndex The index of the chunk inside the region.
+     * @param timestamp The current modification time of the chunk, from the {@link RegionHeader}.
+     * @return True, if the chunk is already transformed.
+     */
+    public boolean isUnchanged(int chunkIndex, int timestamp) {
+        return timestamp != 0 && timestamps[chunkIndex] == timestamp;
+    }
+
+    /**
+     * Mark a chunk as transformed in the current run.
+     * @param chunkIndex The index of the chunk inside the region.
+     */
+    public synchronized void markTransformed(int chunkIndex) {
+        transformed.set(chunkIndex);
+    }
+
+    /**
+     * Save the index after the region file was closed.
+     * Chunks transformed in this run are stored with their new timestamps; previously indexed chunks are kept,
+     * as long as they were not modified.
+     * @param header The header of the region file, as it is after the transformation.
+     * @throws IOException If the index could not be written.
+     */
+    public synchronized void save(RegionHeader header) throws IOException {
+        Files.createDirectories(file.getParent());
+
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(fingerprint);
+
+            for (int i = 0; i < RegionHeader.CHUNK_COUNT; i++) {
+                int timestamp = header.getTimestamp(i);
+                boolean indexed = transformed.get(i) || isUnchanged(i, timestamp);
+
+                out.writeInt(indexed && header.hasChunk(i) ? timestamp : 0);
+            }
+        }
+
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
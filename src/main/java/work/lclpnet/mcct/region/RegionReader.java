@@ -0,0 +1,182 @@
+package work.lclpnet.mcct.region;
+
+import net.minecraft.util.math.ChunkPos;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads chunks from a region file without going through {@link net.minecraft.world.storage.RegionFile}.
+ * The header is read once when the file is opened. The sectors of each chunk are then read with a single positional read
+ * into a direct buffer and inflated by an {@link java.util.zip.Inflater}; both are reused by every chunk a thread reads.
+ * Once a thread has read its largest chunk, reading a chunk allocates almost nothing.
+ *
+ * The reader may be used by multiple threads at once. It must not be used for chunks that were written
+ * since it was opened, as their location in the header would be outdated; use {@link #getCurrentChunkInputStream(ChunkPos)} for them.
+ */
+public class RegionReader implements Closeable {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final int COMPRESSION_GZIP = 1, COMPRESSION_DEFLATE = 2, COMPRESSION_NONE = 3;
+    private static final int EXTERNAL_FLAG = 0x80;
+
+    protected final Path file, directory;
+    protected final FileChannel channel;
+    protected final RegionHeader header;
+
+    protected RegionReader(Path file, Path directory, FileChannel channel, RegionHeader header) {
+        this.file = Objects.requireNonNull(file);
+        this.directory = Objects.requireNonNull(directory);
+        this.channel = Objects.requireNonNull(channel);
+        this.header = Objects.requireNonNull(header);
+    }
+
+    /**
+     * Open a region file for reading.
+     * @param file The region file.
+     * @param directory The directory of external chunk files, usually the directory of the region file.
+     * @return The reader.
+     * @throws IOException If the file could not be opened or its header could not be read.
+     */
+    public static RegionReader open(Path file, Path directory) throws IOException {
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+
+        try {
+            return new RegionReader(file, directory, channel, RegionHeader.read(channel));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public RegionHeader getHeader() {
+        return header;
+    }
+
+    /**
+     * Get a stream of the decompressed data of a chunk.
+     * The stream is owned by the calling thread and only valid until the thread reads the next chunk.
+     * @param chunkPos The position of the chunk.
+     * @return The chunk data, or null if the chunk does not exist or could not be read.
+     * @throws IOException If there was an I/O error or the data is malformed.
+     */
+    @Nullable
+    public DataInputStream getChunkInputStream(ChunkPos chunkPos) throws IOException {
+        final int chunkIndex = (chunkPos.x & 31) | ((chunkPos.z & 31) << 5);
+        if (!header.hasChunk(chunkIndex)) return null;
+
+        return readChunk(chunkPos, header.getSectorOffset(chunkIndex), header.getSectorCount(chunkIndex));
+    }
+
+    /**
+     * Get a stream of the decompressed data of a chunk, whose location is read from the file instead of the header
+     * that was read when the file was opened. Use this for region files that are written while they are read.
+     * The caller has to make sure that the chunk is not written during the call.
+     * @param chunkPos The position of the chunk.
+     * @return The chunk data, or null if the chunk does not exist or could not be read.
+     * @throws IOException If there was an I/O error or the data is malformed.
+     * @see #getChunkInputStream(ChunkPos)
+     */
+    @Nullable
+    public DataInputStream getCurrentChunkInputStream(ChunkPos chunkPos) throws IOException {
+        final int chunkIndex = (chunkPos.x & 31) | ((chunkPos.z & 31) << 5);
+        final ByteBuffer location = ByteBuffer.allocate(4);
+
+        while (location.hasRemaining()) {
+            if (channel.read(location, chunkIndex * 4L + location.position()) == -1) return null;
+        }
+
+        final int value = location.getInt(0);
+        if (value == 0) return null;
+
+        return readChunk(chunkPos, value >>> 8, value & 0xFF);
+    }
+
+    @Nullable
+    private DataInputStream readChunk(ChunkPos chunkPos, int sectorOffset, int sectorCount) throws IOException {
+        final long position = (long) sectorOffset * RegionHeader.SECTOR_SIZE;
+        final int sectorBytes = sectorCount * RegionHeader.SECTOR_SIZE;
+
+        if (position < RegionHeader.HEADER_SIZE || sectorBytes == 0) {
+            LOGGER.error("Chunk {} of region file {} has an invalid location", chunkPos, file.getFileName());
+            return null;
+        }
+
+        final ChunkCodec codec = ChunkCodec.get();
+        final ByteBuffer buffer = codec.compressedBuffer(sectorBytes);
+        buffer.limit(sectorBytes);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) break;
+        }
+
+        buffer.flip();
+
+        if (buffer.remaining() < 5) {
+            LOGGER.error("Chunk {} of region file {} is truncated", chunkPos, file.getFileName());
+            return null;
+        }
+
+        final int length = buffer.getInt();
+        final int compression = buffer.get() & 0xFF;
+
+        if (length <= 0 || length - 1 > buffer.remaining()) {
+            LOGGER.error("Chunk {} of region file {} has an invalid length of {}", chunkPos, file.getFileName(), length);
+            return null;
+        }
+
+        buffer.limit(buffer.position() + length - 1);
+
+        if ((compression & EXTERNAL_FLAG) != 0) {
+            // chunks that don't fit into 255 sectors are stored in a separate file; they are rare enough to not pool them
+            final Path externalFile = directory.resolve("c.%s.%s.mcc".formatted(chunkPos.x, chunkPos.z));
+
+            if (!Files.isRegularFile(externalFile)) {
+                LOGGER.error("External file {} of chunk {} is missing", externalFile.getFileName(), chunkPos);
+                return null;
+            }
+
+            return decompress(codec, ByteBuffer.wrap(Files.readAllBytes(externalFile)), compression & ~EXTERNAL_FLAG, chunkPos);
+        }
+
+        return decompress(codec, buffer, compression, chunkPos);
+    }
+
+    @Nullable
+    private DataInputStream decompress(ChunkCodec codec, ByteBuffer data, int compression, ChunkPos chunkPos) throws IOException {
+        switch (compression) {
+            case COMPRESSION_DEFLATE:
+                return codec.inflate(data);
+            case COMPRESSION_NONE:
+                return codec.copy(data);
+            case COMPRESSION_GZIP:
+                // vanilla never writes gzip compressed chunks, so there is no pooled path for them
+                byte[] bytes = new byte[data.remaining()];
+                data.get(bytes);
+
+                try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+                    return codec.copy(ByteBuffer.wrap(in.readAllBytes()));
+                }
+            default:
+                LOGGER.error("Chunk {} of region file {} has an unknown compression type {}", chunkPos, file.getFileName(), compression);
+                return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
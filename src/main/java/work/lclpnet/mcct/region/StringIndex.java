@@ -0,0 +1,334 @@
+package work.lclpnet.mcct.region;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtString;
+import net.minecraft.util.math.ChunkPos;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * An inverted index of the string values in the chunks of a region file.
+ * Every distinct string maps to the set of chunks it occurs in, so that a find and replace can determine
+ * which chunks may contain a match without reading them.
+ *
+ * Like the {@link RegionIndex}, the modification time of every indexed chunk is stored.
+ * Chunks that were written since they were indexed, e.g. by the game, are always treated as possible matches.
+ * Strings longer than {@link #MAX_STRING_LENGTH} are not indexed; chunks containing them always match, too.
+ * The index of a region is replaced atomically when it is saved.
+ */
+public class StringIndex {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final int MAGIC = 0x4D435349;  // MCSI
+    private static final int VERSION = 1;
+    /** Longer strings, e.g. the pages of books, are rarely searched and would bloat the index. */
+    public static final int MAX_STRING_LENGTH = 256;
+    /** Chunk sets with fewer chunks are stored as a list of chunk indices, instead of a bitmap. */
+    private static final int SPARSE_LIMIT = RegionHeader.CHUNK_COUNT / Short.SIZE;
+    private static final byte SPARSE = 0, DENSE = 1;
+
+    protected final Path file;
+    /** The timestamps of the indexed chunks, or 0 if the chunk is not indexed. */
+    protected final int[] timestamps;
+    protected final Map<String, BitSet> chunks;
+    /** Chunks with strings that are too long to be indexed. */
+    protected final BitSet overflow;
+    /** Chunks that were indexed again, or invalidated, since the index was loaded. */
+    protected final BitSet updated = new BitSet(RegionHeader.CHUNK_COUNT);
+
+    protected StringIndex(Path file, int[] timestamps, Map<String, BitSet> chunks, BitSet overflow) {
+        this.file = Objects.requireNonNull(file);
+        this.timestamps = Objects.requireNonNull(timestamps);
+        this.chunks = Objects.requireNonNull(chunks);
+        this.overflow = Objects.requireNonNull(overflow);
+    }
+
+    /**
+     * Create an empty index.
+     * @param file The index file.
+     * @return The new index.
+     */
+    public static StringIndex create(Path file) {
+        return new StringIndex(file, new int[RegionHeader.CHUNK_COUNT], new HashMap<>(), new BitSet(RegionHeader.CHUNK_COUNT));
+    }
+
+    /**
+     * Get the file of the string index of a region file.
+     * The index is stored in the <code>mcct/strings</code> directory of the dimension.
+     * @param regionFile The region file.
+     * @return The index file.
+     */
+    public static Path getFile(Path regionFile) {
+        final String name = regionFile.getFileName().toString();
+        final String baseName = name.endsWith(".mca") ? name.substring(0, name.length() - 4) : name;
+
+        return regionFile.toAbsolutePath().getParent().resolveSibling("mcct").resolve("strings").resolve(baseName + ".sidx");
+    }
+
+    /**
+     * Load the index of a region.
+     * @param file The index file.
+     * @return The loaded index, or null if it does not exist or is corrupt.
+     */
+    @Nullable
+    public static StringIndex load(Path file) {
+        if (!Files.isRegularFile(file)) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOGGER.warn("String index {} has an unknown format, ignoring it", file);
+                return null;
+            }
+
+            final int[] timestamps = new int[RegionHeader.CHUNK_COUNT];
+            for (int i = 0; i < timestamps.length; i++) timestamps[i] = in.readInt();
+
+            final BitSet overflow = readChunks(in);
+            final int count = in.readInt();
+            final Map<String, BitSet> chunks = new HashMap<>(count * 4 / 3 + 1);
+
+            for (int i = 0; i < count; i++) chunks.put(in.readUTF(), readChunks(in));
+
+            return new StringIndex(file, timestamps, chunks, overflow);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read string index {}, ignoring it", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Index every chunk of a region file.
+     * The file must not be written while it is indexed.
+     * @param regionFile The region file.
+     * @param directory The directory of external chunk files, usually the directory of the region file.
+     * @param chunkX The x coordinate of the first chunk of the region, which is the region x coordinate times 32.
+     * @param chunkZ The z coordinate of the first chunk of the region.
+     * @return The new index, which still has to be {@link #save(RegionHeader) saved}.
+     * @throws IOException If the region file could not be read.
+     */
+    public static StringIndex build(Path regionFile, Path directory, int chunkX, int chunkZ) throws IOException {
+        final StringIndex index = create(getFile(regionFile));
+        final Set<String> strings = new HashSet<>();
+
+        try (RegionReader reader = RegionReader.open(regionFile, directory)) {
+            final RegionHeader header = reader.getHeader();
+
+            for (int i = 0; i < RegionHeader.CHUNK_COUNT; i++) {
+                if (!header.hasChunk(i)) continue;
+
+                // external chunk files are named after the absolute chunk coordinates
+                final ChunkPos chunkPos = new ChunkPos(chunkX + (i & 31), chunkZ + (i >> 5));
+                strings.clear();
+
+                // chunks that can't be read are not indexed and always treated as possible matches
+                try {
+                    final DataInputStream in = reader.getChunkInputStream(chunkPos);
+                    if (in == null) continue;
+
+                    collectStrings(NbtIo.read(in), strings);
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to read chunk {} of region file {}, not indexing it", chunkPos, regionFile.getFileName(), e);
+                    continue;
+                }
+
+                index.indexChunk(i, strings);
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Collect every string value in an element, including the values of nested compounds and lists.
+     * Keys are not collected.
+     * @param element The element.
+     * @param strings The collection to add the strings to.
+     */
+    public static void collectStrings(@Nullable NbtElement element, Collection<String> strings) {
+        if (element instanceof NbtString) {
+            strings.add(element.asString());
+        } else if (element instanceof NbtCompound compound) {
+            for (String key : compound.getKeys()) collectStrings(compound.get(key), strings);
+        } else if (element instanceof NbtList list) {
+            for (NbtElement child : list) collectStrings(child, strings);
+        }
+    }
+
+    /**
+     * Replace the strings of a chunk, after it was transformed.
+     * @param chunkIndex The index of the chunk inside the region.
+     * @param strings Every string value of the chunk.
+     */
+    public synchronized void indexChunk(int chunkIndex, Collection<String> strings) {
+        // chunks that were never indexed are in no chunk set, which is always the case while building an index
+        if (timestamps[chunkIndex] != 0 || updated.get(chunkIndex)) removeChunk(chunkIndex);
+
+        for (String string : strings) {
+            if (string.length() > MAX_STRING_LENGTH) overflow.set(chunkIndex);
+            else chunks.computeIfAbsent(string, s -> new BitSet(RegionHeader.CHUNK_COUNT)).set(chunkIndex);
+        }
+
+        updated.set(chunkIndex);
+    }
+
+    /**
+     * Remove a chunk from the index, e.g. if it was modified but its strings are not known.
+     * The chunk will be treated as possible match, until it is indexed again.
+     * @param chunkIndex The index of the chunk inside the region.
+     */
+    public synchronized void invalidateChunk(int chunkIndex) {
+        removeChunk(chunkIndex);
+        timestamps[chunkIndex] = 0;
+        updated.clear(chunkIndex);
+    }
+
+    private void removeChunk(int chunkIndex) {
+        chunks.values().removeIf(set -> {
+            set.clear(chunkIndex);
+            return set.isEmpty();
+        });
+
+        overflow.clear(chunkIndex);
+    }
+
+    /**
+     * Get every chunk of the region that may contain a string accepted by a predicate.
+     * @param predicate The predicate, usually whether a transformation modifies a string.
+     * @param header The current header of the region file.
+     * @return The chunks that may match, by their index inside the region.
+     */
+    public synchronized BitSet findChunks(Predicate<String> predicate, RegionHeader header) {
+        final BitSet result = (BitSet) overflow.clone();
+
+        for (Map.Entry<String, BitSet> entry : chunks.entrySet()) {
+            if (predicate.test(entry.getKey())) result.or(entry.getValue());
+        }
+
+        for (int i = 0; i < RegionHeader.CHUNK_COUNT; i++) {
+            if (header.hasChunk(i) && !isIndexed(i, header.getTimestamp(i))) result.set(i);
+        }
+
+        return result;
+    }
+
+    /**
+     * Checks whether a chunk was indexed and not written since.
+     * @param chunkIndex The index of the chunk inside the region.
+     * @param timestamp The current modification time of the chunk, from the {@link RegionHeader}.
+     * @return True, if the strings of the chunk are known.
+     */
+    public synchronized boolean isIndexed(int chunkIndex, int timestamp) {
+        return timestamp != 0 && timestamps[chunkIndex] == timestamp;
+    }
+
+    /**
+     * Save the index after the region file was closed.
+     * Chunks indexed since the index was loaded are stored with their new timestamps.
+     * @param header The header of the region file, as it is after the chunks were written.
+     * @throws IOException If the index could not be written.
+     */
+    public synchronized void save(RegionHeader header) throws IOException {
+        for (int i = updated.nextSetBit(0); i >= 0; i = updated.nextSetBit(i + 1)) timestamps[i] = header.getTimestamp(i);
+
+        updated.clear();
+
+        // drop chunks that were deleted from the region file
+        final BitSet present = new BitSet(RegionHeader.CHUNK_COUNT);
+
+        for (int i = 0; i < RegionHeader.CHUNK_COUNT; i++) {
+            if (header.hasChunk(i)) present.set(i);
+        }
+
+        chunks.values().removeIf(set -> {
+            set.and(present);
+            return set.isEmpty();
+        });
+
+        overflow.and(present);
+
+        Files.createDirectories(file.getParent());
+
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            for (int i = 0; i < RegionHeader.CHUNK_COUNT; i++) out.writeInt(header.hasChunk(i) ? timestamps[i] : 0);
+
+            writeChunks(out, overflow);
+            out.writeInt(chunks.size());
+
+            for (Map.Entry<String, BitSet> entry : chunks.entrySet()) {
+                out.writeUTF(entry.getKey());
+                writeChunks(out, entry.getValue());
+            }
+        }
+
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void writeChunks(DataOutputStream out, BitSet set) throws IOException {
+        final int count = set.cardinality();
+
+        // most strings occur in a few chunks only, such a list is smaller than the bitmap of the whole region
+        if (count < SPARSE_LIMIT) {
+            out.writeByte(SPARSE);
+            out.writeByte(count);
+
+            for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) out.writeShort(i);
+            return;
+        }
+
+        out.writeByte(DENSE);
+
+        final long[] words = set.toLongArray();
+        for (int i = 0; i < RegionHeader.CHUNK_COUNT / Long.SIZE; i++) out.writeLong(i < words.length ? words[i] : 0L);
+    }
+
+    private static BitSet readChunks(DataInputStream in) throws IOException {
+        final byte type = in.readByte();
+
+        if (type == SPARSE) {
+            final int count = in.readUnsignedByte();
+            final BitSet set = new BitSet(RegionHeader.CHUNK_COUNT);
+
+            for (int i = 0; i < count; i++) set.set(in.readUnsignedShort() & (RegionHeader.CHUNK_COUNT - 1));
+
+            return set;
+        }
+
+        if (type != DENSE) throw new IOException("Unknown chunk set type %s".formatted(type));
+
+        final long[] words = new long[RegionHeader.CHUNK_COUNT / Long.SIZE];
+        for (int i = 0; i < words.length; i++) words[i] = in.readLong();
+
+        return BitSet.valueOf(words);
+    }
+}
@@ -0,0 +1,214 @@
+package work.lclpnet.mcct.server;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.SaveProperties;
+import net.minecraft.world.level.storage.LevelStorage;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import work.lclpnet.mcct.asm.type.IMinecraftServer;
+import work.lclpnet.mcct.transform.ChunkTransformer;
+import work.lclpnet.mcct.transform.MCCT;
+import work.lclpnet.mcct.transform.TransformMetrics;
+import work.lclpnet.mcct.transform.TransformOptions;
+import work.lclpnet.mcct.transform.WorldTransformer;
+import work.lclpnet.mcct.transform.impl.DataFixerChunkTransformer;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Transforms the world of a server without any user interaction, e.g. on build servers.
+ * The transformation is configured with system properties:
+ * <ul>
+ *     <li><code>mcct.transform</code> - set to <code>true</code> to transform the world when a dedicated server starts</li>
+ *     <li><code>mcct.threads</code> - the amount of region files transformed in parallel, defaults to the amount of cores</li>
+ *     <li><code>mcct.pipeline</code> - optional queue capacities of the chunk pipeline, as <code>read,write</code></li>
+ *     <li><code>mcct.compact</code> - whether to rewrite modified region files into compacted copies, defaults to <code>false</code>, always enabled for sharded runs</li>
+ *     <li><code>mcct.durability</code> - when written chunks are synced to disk, <code>chunk</code>, <code>region</code> or <code>run</code>, defaults to <code>chunk</code></li>
+ *     <li><code>mcct.upgrade</code> - whether to upgrade every chunk to the current game version before the other transformers run, defaults to <code>false</code></li>
+ *     <li><code>mcct.index</code> - whether to build the string index of the world before the transformation, defaults to <code>false</code></li>
+ *     <li><code>mcct.shard</code> - optional id of a sharded run, whose regions are shared with every worker started with the same id</li>
+ *     <li><code>mcct.worker</code> - the id of this worker in a sharded run, defaults to the process id and host name</li>
+ *     <li><code>mcct.leases</code> - optional directory of the lease files of sharded runs, which has to be shared by every worker</li>
+ *     <li><code>mcct.summary</code> - optional path of a file the json summary is written to</li>
+ *     <li><code>mcct.stop</code> - whether to stop the server after the transformation, defaults to <code>true</code></li>
+ * </ul>
+ *
+ * <br>
+ * Example:
+ * <pre>
+ * {@code
+ * java -Dmcct.transform=true -Dmcct.threads=32 -Dmcct.summary=mcct-summary.json -jar server.jar nogui
+ * }
+ * </pre>
+ */
+public class HeadlessTransformer implements WorldTransformer.ProgressListener {
+
+    public static final String PROPERTY_TRANSFORM = "mcct.transform", PROPERTY_THREADS = "mcct.threads",
+            PROPERTY_PIPELINE = "mcct.pipeline", PROPERTY_COMPACT = "mcct.compact",
+            PROPERTY_DURABILITY = "mcct.durability", PROPERTY_INDEX = "mcct.index",
+            PROPERTY_UPGRADE = "mcct.upgrade", PROPERTY_SHARD = "mcct.shard", PROPERTY_WORKER = "mcct.worker",
+            PROPERTY_LEASES = "mcct.leases", PROPERTY_SUMMARY = "mcct.summary", PROPERTY_STOP = "mcct.stop";
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    protected int steps = 0, currentStep = 0;
+    protected int lastPercent = -1;
+
+    /**
+     * Transform the world of a server, configured by system properties.
+     * Stops the server afterwards, before its worlds are loaded, unless <code>mcct.stop</code> is false.
+     * @param server The server, before it was set up.
+     */
+    public static void runFromProperties(MinecraftServer server) {
+        final TransformOptions.Builder options = new TransformOptions.Builder()
+                .parallelism(Math.max(1, Integer.getInteger(PROPERTY_THREADS, Runtime.getRuntime().availableProcessors())))
+                .compact(Boolean.getBoolean(PROPERTY_COMPACT));
+
+        final String pipeline = System.getProperty(PROPERTY_PIPELINE);
+        if (pipeline != null) {
+            String[] capacities = pipeline.split(",");
+            if (capacities.length != 2) throw new IllegalArgumentException("Invalid value of %s, expected read,write".formatted(PROPERTY_PIPELINE));
+
+            options.pipeline(Integer.parseInt(capacities[0].trim()), Integer.parseInt(capacities[1].trim()));
+        }
+
+        final String durability = System.getProperty(PROPERTY_DURABILITY);
+        if (durability != null) options.durability(TransformOptions.Durability.valueOf(durability.trim().toUpperCase(Locale.ROOT)));
+
+        final String shard = System.getProperty(PROPERTY_SHARD);
+        if (shard != null) {
+            final String worker = System.getProperty(PROPERTY_WORKER);
+            if (worker != null) options.shard(shard, worker);
+            else options.shard(shard);
+
+            // sharded regions are replaced atomically, so that a worker that lost its lease can't write to them
+            options.compact(true);
+
+            final String leases = System.getProperty(PROPERTY_LEASES);
+            if (leases != null) options.leaseDirectory(Path.of(leases));
+        }
+
+        if (Boolean.getBoolean(PROPERTY_UPGRADE)) registerUpgrade();
+
+        final String summary = System.getProperty(PROPERTY_SUMMARY);
+
+        run(server, options.create(), summary != null ? Path.of(summary) : null);
+
+        if (Boolean.parseBoolean(System.getProperty(PROPERTY_STOP, "true"))) {
+            LOGGER.info("Stopping the server after the transformation");
+            ((IMinecraftServer) server).mcct$halt();
+        }
+    }
+
+    /**
+     * Register a transformer that upgrades every chunk with the DataFixer, before every other transformer.
+     */
+    protected static void registerUpgrade() {
+        final ChunkTransformer upgrade = new ChunkTransformer.Builder()
+                .addTransformation(new DataFixerChunkTransformer())
+                .create();
+
+        MCCT.registerTransformerBefore(upgrade, MCCT.getChunkTransformers().findFirst().orElse(null));
+    }
+
+    /**
+     * Transform the world of a server.
+     * Must be called before the server loads its worlds.
+     * The level data file is backed up first, as the server rewrites it once the worlds are loaded.
+     * @param server The server.
+     * @param options The transform options.
+     * @param summaryFile A file the json summary is written to, or null.
+     * @return True, if the transformation finished without errors.
+     */
+    public static boolean run(MinecraftServer server, TransformOptions options, @Nullable Path summaryFile) {
+        Objects.requireNonNull(server);
+
+        final LevelStorage.Session session = ((IMinecraftServer) server).mcct$getSession();
+        final SaveProperties saveProperties = server.getSaveProperties();
+
+        session.backupLevelDataFile(server.getRegistryManager(), saveProperties);
+
+        return run(session, saveProperties, options, summaryFile);
+    }
+
+    /**
+     * Transform a world headlessly.
+     * @param session The session of the world.
+     * @param saveProperties The loaded save properties of the world.
+     * @param options The transform options.
+     * @param summaryFile A file the json summary is written to, or null.
+     * @return True, if the transformation finished without errors.
+     */
+    public static boolean run(LevelStorage.Session session, SaveProperties saveProperties, TransformOptions options, @Nullable Path summaryFile) {
+        LOGGER.info("Transforming world {} with {} threads...", session.getDirectoryName(), options.getParallelism());
+
+        final WorldTransformer worldTransformer = WorldTransformer.create(session, saveProperties, new HeadlessTransformer(), options);
+
+        Throwable error = null;
+        try {
+            if (Boolean.getBoolean(PROPERTY_INDEX)) worldTransformer.indexStrings().join();
+
+            worldTransformer.transform().join();
+        } catch (Throwable t) {
+            LOGGER.error("World transformation failed", t);
+            error = t;
+        }
+
+        final TransformMetrics metrics = worldTransformer.getMetrics();
+        final boolean success = error == null && (metrics == null || metrics.getRegionsFailed() == 0 && metrics.getChunksFailed() == 0);
+
+        final JsonObject summary = metrics != null ? metrics.toJson() : new JsonObject();
+        summary.addProperty("world", session.getDirectoryName());
+        summary.addProperty("threads", options.getParallelism());
+        summary.addProperty("success", success);
+        if (error != null) summary.addProperty("error", String.valueOf(error.getMessage()));
+
+        final String json = GSON.toJson(summary);
+        LOGGER.info("World transformation summary:\n{}", json);
+
+        if (summaryFile != null) {
+            try {
+                Path parent = summaryFile.toAbsolutePath().getParent();
+                if (parent != null) Files.createDirectories(parent);
+
+                Files.writeString(summaryFile, json, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                LOGGER.error("Failed to write the transformation summary to {}", summaryFile, e);
+            }
+        }
+
+        return success;
+    }
+
+    @Override
+    public void setSteps(int steps) {
+        this.steps = steps;
+    }
+
+    @Override
+    public void updateCurrentStep(int currentStep) {
+        this.currentStep = currentStep;
+        this.lastPercent = -1;
+    }
+
+    @Override
+    public void updateProgress(float progress) {
+        int percent = (int) (progress * 100F);
+
+        // log every 5 percent, instead of every chunk
+        if (percent / 5 <= lastPercent / 5 && lastPercent != -1) return;
+        lastPercent = percent;
+
+        LOGGER.info("Transforming dimension {}/{}: {}%", currentStep, steps, percent);
+    }
+}
@@ -0,0 +1,30 @@
+package work.lclpnet.mcct.server;
+
+import net.fabricmc.api.DedicatedServerModInitializer;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import work.lclpnet.mcct.transform.LazyTransformer;
+
+/**
+ * Runs the registered chunk transformers on dedicated servers, before the worlds are loaded.
+ * The transformation is enabled with the <code>mcct.transform</code> system property, see {@link HeadlessTransformer}.
+ * Alternatively, chunks are transformed when they are loaded, if the <code>mcct.lazy</code> system property is set, see {@link LazyTransformer}.
+ */
+public class MCCTServer implements DedicatedServerModInitializer {
+
+    public static final String PROPERTY_LAZY = "mcct.lazy";
+
+    @Override
+    public void onInitializeServer() {
+        if (Boolean.getBoolean(HeadlessTransformer.PROPERTY_TRANSFORM)) {
+            // worlds are loaded after this event, so no chunk is in use during the transformation
+            ServerLifecycleEvents.SERVER_STARTING.register(HeadlessTransformer::runFromProperties);
+        }
+
+        if (Boolean.getBoolean(PROPERTY_LAZY)) {
+            // transformers are registered by other mods during initialization, so wait until the server starts.
+            // listeners are called in the order they were registered, so transformers registered by the headless transformation are included
+            ServerLifecycleEvents.SERVER_STARTING.register(server -> LazyTransformer.enable());
+            ServerLifecycleEvents.SERVER_STOPPED.register(server -> LazyTransformer.disable());
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package work.lclpnet.mcct.transform;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtIo;
+import work.lclpnet.mcct.nbt.NbtSelection;
+import work.lclpnet.mcct.nbt.PartialCompound;
+import work.lclpnet.mcct.nbt.SelectiveNbtIo;
+
+import javax.annotation.Nullable;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Chunk data that was read from a region file.
+ * If only parts of the chunk were read, the unread parts are kept as raw bytes,
+ * so that they can be copied verbatim when the chunk is written.
+ */
+public class ChunkData {
+
+    protected final NbtCompound compound;
+    @Nullable
+    protected final PartialCompound partial;
+    /** The time spent processing this chunk so far, for {@link TransformMetrics}. */
+    long processingNanos = 0L;
+    /** Whether the chunk was modified by a region transformation, see {@link RegionTransformContext#markDirty(net.minecraft.util.math.ChunkPos)}. */
+    boolean modified = false;
+
+    protected ChunkData(NbtCompound compound) {
+        this.compound = compound;
+        this.partial = null;
+    }
+
+    protected ChunkData(PartialCompound partial) {
+        this.compound = partial.getCompound();
+        this.partial = partial;
+    }
+
+    /**
+     * Read the complete chunk data.
+     * @param input The decompressed chunk data.
+     * @return The chunk data.
+     * @throws IOException If there was an I/O error or the data is malformed.
+     */
+    public static ChunkData read(DataInputStream input) throws IOException {
+        return new ChunkData(NbtIo.read(input));
+    }
+
+    /**
+     * Read the selected parts of the chunk data.
+     * @param input The decompressed chunk data.
+     * @param selection The parts of the chunk to read.
+     * @return The chunk data.
+     * @throws IOException If there was an I/O error or the data is malformed.
+     */
+    public static ChunkData read(DataInputStream input, NbtSelection selection) throws IOException {
+        if (selection.isAll()) return read(input);
+
+        return new ChunkData(SelectiveNbtIo.readPartial(input.readAllBytes(), selection));
+    }
+
+    /**
+     * Get the chunk data that should be passed to transformations.
+     * If the chunk was read partially, only the selected parts are present.
+     * @return The (partial) chunk data.
+     */
+    public NbtCompound getCompound() {
+        return compound;
+    }
+
+    public boolean isPartial() {
+        return partial != null;
+    }
+
+    /**
+     * Write the complete chunk data, including the modifications to the selected parts.
+     * Parts of partially read chunks that were never read are copied from the original data without re-encoding them.
+     * @param output The output to write to.
+     * @throws IOException If there was an I/O error.
+     */
+    public void write(DataOutput output) throws IOException {
+        if (partial != null) partial.write(output);
+        else NbtIo.write(compound, output);
+    }
+
+    /**
+     * Get the complete chunk data, including the modifications to the selected parts.
+     * For partially read chunks, the original data is parsed again and the selected parts are replaced.
+     * @return The complete chunk data.
+     * @throws IOException If the original data could not be parsed.
+     */
+    public NbtCompound toCompleteCompound() throws IOException {
+        if (partial == null) return compound;
+        return partial.toCompleteCompound();
+    }
+}
@@ -0,0 +1,215 @@
+package work.lclpnet.mcct.transform;
+
+import net.minecraft.util.math.ChunkPos;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleConsumer;
+
+/**
+ * A staged pipeline that transforms the chunks of a single region file.
+ * Chunks are read (and decompressed and parsed) on one thread, transformed on the calling thread and
+ * serialized, compressed and written on another thread.
+ * The stages are connected by bounded queues, so at most <code>readCapacity + writeCapacity</code> chunks
+ * (plus the ones currently processed by each stage) are held in memory at a time.
+ *
+ * Failures of a single chunk are logged, counted and do not stop the pipeline.
+ * A failing {@link Checkpoint}, which is passed before every batch of {@link #CHECKPOINT_INTERVAL} chunks, stops the pipeline;
+ * chunks that wait to be written are discarded then.
+ * @param <T> The type of chunk data passed between the stages.
+ */
+class ChunkPipeline<T> {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final long OFFER_TIMEOUT_MS = 100L;
+    /** The amount of chunks between two checkpoints, one row of a region. */
+    static final int CHECKPOINT_INTERVAL = 32;
+
+    private final Executor executor;
+    private final int readCapacity, writeCapacity;
+    private final Reader<T> reader;
+    private final Transformer<T> transformer;
+    private final Writer<T> writer;
+    @Nullable
+    private final Checkpoint checkpoint;
+    private final AtomicInteger failures = new AtomicInteger(0);
+    private volatile boolean cancelled = false;
+
+    ChunkPipeline(Executor executor, int readCapacity, int writeCapacity, Reader<T> reader, Transformer<T> transformer, Writer<T> writer,
+                  @Nullable Checkpoint checkpoint) {
+        this.executor = Objects.requireNonNull(executor);
+        this.readCapacity = readCapacity;
+        this.writeCapacity = writeCapacity;
+        this.reader = Objects.requireNonNull(reader);
+        this.transformer = Objects.requireNonNull(transformer);
+        this.writer = Objects.requireNonNull(writer);
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Run every chunk through the pipeline and wait until the last chunk was written.
+     * @param chunks The positions of the chunks to transform.
+     * @param progress Receives the transformation progress of the given chunks, from 0 to 1.
+     * @return The amount of chunks that could not be read, transformed or written.
+     */
+    int run(List<ChunkPos> chunks, DoubleConsumer progress) {
+        final BlockingQueue<Entry<T>> readQueue = new ArrayBlockingQueue<>(readCapacity);
+        final BlockingQueue<Entry<T>> writeQueue = new ArrayBlockingQueue<>(writeCapacity);
+
+        final CompletableFuture<Void> readStage = CompletableFuture.runAsync(() -> read(chunks, readQueue), executor);
+        final CompletableFuture<Void> writeStage = CompletableFuture.runAsync(() -> write(writeQueue), executor);
+
+        try {
+            transform(readQueue, writeQueue, chunks.size(), progress);
+        } catch (Throwable t) {
+            cancelled = true;
+            throw t;
+        } finally {
+            // the write stage drains its queue until the end marker arrives, so this will never block forever
+            try {
+                writeQueue.put(Entry.end());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            CompletableFuture.allOf(readStage, writeStage).join();
+        }
+
+        return failures.get();
+    }
+
+    private void read(List<ChunkPos> chunks, BlockingQueue<Entry<T>> readQueue) {
+        try {
+            for (ChunkPos chunkPos : chunks) {
+                if (cancelled) return;
+
+                T data;
+                try {
+                    data = reader.read(chunkPos);
+                } catch (Exception e) {
+                    LOGGER.warn("Could not read chunk {}", chunkPos, e);
+                    failures.incrementAndGet();
+                    data = null;
+                }
+
+                // null entries are forwarded, so that the transform stage can report progress for them
+                if (!offer(readQueue, new Entry<>(chunkPos, data))) return;
+            }
+        } finally {
+            offer(readQueue, Entry.end());
+        }
+    }
+
+    private void transform(BlockingQueue<Entry<T>> readQueue, BlockingQueue<Entry<T>> writeQueue, int chunkCount, DoubleConsumer progress) {
+        int done = 0;
+
+        while (true) {
+            Entry<T> entry;
+            try {
+                entry = readQueue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for chunk data", e);
+            }
+
+            if (entry.isEnd()) return;
+
+            if (checkpoint != null && done % CHECKPOINT_INTERVAL == 0) {
+                try {
+                    checkpoint.check();
+                } catch (Exception e) {
+                    throw new IllegalStateException("Checkpoint failed, stopping the pipeline", e);
+                }
+            }
+
+            if (entry.data != null) {
+                boolean dirty;
+                try {
+                    dirty = transformer.transform(entry.data, entry.chunkPos);
+                } catch (Exception e) {
+                    LOGGER.warn("Could not transform chunk {}", entry.chunkPos, e);
+                    failures.incrementAndGet();
+                    dirty = false;
+                }
+
+                if (dirty && !offer(writeQueue, entry)) return;
+            }
+
+            progress.accept(++done / (double) chunkCount);
+        }
+    }
+
+    private void write(BlockingQueue<Entry<T>> writeQueue) {
+        while (true) {
+            Entry<T> entry;
+            try {
+                entry = writeQueue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            if (entry.isEnd()) return;
+
+            // the queue is still drained, but nothing is written after a stage failed
+            if (cancelled) continue;
+
+            try {
+                writer.write(Objects.requireNonNull(entry.data), entry.chunkPos);
+            } catch (Exception e) {
+                LOGGER.warn("Could not write chunk {}", entry.chunkPos, e);
+                failures.incrementAndGet();
+            }
+        }
+    }
+
+    private boolean offer(BlockingQueue<Entry<T>> queue, Entry<T> entry) {
+        try {
+            // poll the cancellation flag, so that a failed stage can never block the others forever
+            while (!queue.offer(entry, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                if (cancelled) return false;
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private record Entry<T>(@Nullable ChunkPos chunkPos, @Nullable T data) {
+
+        static <T> Entry<T> end() {
+            return new Entry<>(null, null);
+        }
+
+        boolean isEnd() {
+            return chunkPos == null;
+        }
+    }
+
+    interface Reader<T> {
+        @Nullable
+        T read(ChunkPos chunkPos) throws Exception;
+    }
+
+    interface Transformer<T> {
+        boolean transform(T data, ChunkPos chunkPos);
+    }
+
+    interface Writer<T> {
+        void write(T data, ChunkPos chunkPos) throws Exception;
+    }
+
+    interface Checkpoint {
+        void check() throws Exception;
+    }
+}
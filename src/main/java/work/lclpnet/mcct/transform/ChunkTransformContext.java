@@ -3,19 +3,31 @@ package work.lclpnet.mcct.transform;
 import net.minecraft.nbt.NbtCompound;
 import net.minecraft.util.math.ChunkPos;
 
+import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.Objects;
 
 public class ChunkTransformContext {
 
     private NbtCompound compound;
+    /** The compound the context was created with, which is serialized by the caller. */
+    private final NbtCompound original;
     public final ChunkPos chunkPos;
     public final WorldTransformer.RegionFileLocation region;
+    @Nullable
+    final TransformMetrics metrics;
     private boolean dirty = false;
 
     ChunkTransformContext(NbtCompound compound, ChunkPos chunkPos, WorldTransformer.RegionFileLocation region) {
+        this(compound, chunkPos, region, null);
+    }
+
+    ChunkTransformContext(NbtCompound compound, ChunkPos chunkPos, WorldTransformer.RegionFileLocation region, @Nullable TransformMetrics metrics) {
         this.compound = Objects.requireNonNull(compound);
+        this.original = compound;
         this.chunkPos = chunkPos;
         this.region = region;
+        this.metrics = metrics;
     }
 
     /**
@@ -58,4 +70,24 @@ public class ChunkTransformContext {
     public boolean isDirty() {
         return dirty;
     }
+
+    /**
+     * Finishes the transformation of the chunk.
+     * If the chunk data was replaced with {@link #setCompound(NbtCompound)}, the entries of the new chunk data replace
+     * the entries of the compound the context was created with, as callers only hold a reference to that one.
+     * @return Whether the chunk was modified.
+     */
+    boolean finish() {
+        if (compound != original) {
+            for (String key : new ArrayList<>(original.getKeys()))
+                original.remove(key);
+
+            for (String key : compound.getKeys())
+                original.put(key, compound.get(key));
+
+            compound = original;
+        }
+
+        return dirty;
+    }
 }
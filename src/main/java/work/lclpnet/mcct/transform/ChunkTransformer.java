@@ -3,9 +3,12 @@ package work.lclpnet.mcct.transform;
 import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.registry.RegistryKey;
 import net.minecraft.world.World;
+import work.lclpnet.mcct.nbt.NbtSelection;
 
 import javax.annotation.Nullable;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.function.BiPredicate;
@@ -19,17 +22,43 @@ public class ChunkTransformer {
     @Nullable
     protected final Runnable onComplete;
     protected final Set<IChunkTransformation> transformations;
+    protected final List<IRegionTransformation> regionTransformations;
+    @Nullable
+    protected final String fingerprint;
+    private final TransformationSequence sequence;
 
     protected ChunkTransformer(Predicate<RegistryKey<World>> dimensionTarget,
                                Predicate<WorldTransformer.RegionFileLocation> regionTarget,
                                BiPredicate<ChunkPos, WorldTransformer.RegionFileLocation> chunkTarget,
                                Set<IChunkTransformation> transformations,
                                @Nullable Runnable onComplete) {
+        this(dimensionTarget, regionTarget, chunkTarget, transformations, onComplete, null);
+    }
+
+    protected ChunkTransformer(Predicate<RegistryKey<World>> dimensionTarget,
+                               Predicate<WorldTransformer.RegionFileLocation> regionTarget,
+                               BiPredicate<ChunkPos, WorldTransformer.RegionFileLocation> chunkTarget,
+                               Set<IChunkTransformation> transformations,
+                               @Nullable Runnable onComplete,
+                               @Nullable String fingerprint) {
+        this(dimensionTarget, regionTarget, chunkTarget, transformations, onComplete, fingerprint, List.of());
+    }
+
+    protected ChunkTransformer(Predicate<RegistryKey<World>> dimensionTarget,
+                               Predicate<WorldTransformer.RegionFileLocation> regionTarget,
+                               BiPredicate<ChunkPos, WorldTransformer.RegionFileLocation> chunkTarget,
+                               Set<IChunkTransformation> transformations,
+                               @Nullable Runnable onComplete,
+                               @Nullable String fingerprint,
+                               List<IRegionTransformation> regionTransformations) {
         this.dimensionTarget = Objects.requireNonNull(dimensionTarget);
         this.regionTarget = Objects.requireNonNull(regionTarget);
         this.chunkTarget = Objects.requireNonNull(chunkTarget);
         this.transformations = Objects.requireNonNull(transformations);
+        this.regionTransformations = Objects.requireNonNull(regionTransformations);
         this.onComplete = onComplete;
+        this.fingerprint = fingerprint;
+        this.sequence = TransformationSequence.of(this);
     }
 
     public boolean shouldTransformDimension(RegistryKey<World> dimension) {
@@ -44,8 +73,108 @@ public class ChunkTransformer {
         return chunkTarget.test(chunk, region);
     }
 
+    /**
+     * Get the parts of the chunk data that are needed by at least one transformation.
+     * @return The union of the selections of every transformation, including the region transformations.
+     */
+    public NbtSelection getSelection() {
+        NbtSelection selection = NbtSelection.none();
+
+        for (IChunkTransformation transformation : transformations)
+            selection = selection.union(transformation.getSelection());
+
+        for (IRegionTransformation transformation : regionTransformations)
+            selection = selection.union(transformation.getSelection());
+
+        return selection;
+    }
+
+    /**
+     * Get a string that identifies this transformer and its configuration across game restarts.
+     * @return The fingerprint, or null if the transformer can't be identified.
+     * @see IChunkTransformation#getFingerprint()
+     */
+    @Nullable
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Derive a fingerprint from the fingerprints of the transformations.
+     * @param transformations The transformations, in the order they are applied.
+     * @return The combined fingerprint, or null if any transformation has no fingerprint.
+     */
+    @Nullable
+    protected static String deriveFingerprint(Set<IChunkTransformation> transformations) {
+        final StringBuilder builder = new StringBuilder();
+
+        for (IChunkTransformation transformation : transformations) {
+            String fingerprint = transformation.getFingerprint();
+            if (fingerprint == null) return null;
+
+            builder.append(fingerprint).append('\n');
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Derive a fingerprint from the fingerprints of the chunk and region transformations.
+     * @param transformations The chunk transformations, in the order they are applied.
+     * @param regionTransformations The region transformations, in the order they are applied.
+     * @return The combined fingerprint, or null if any transformation has no fingerprint.
+     */
+    @Nullable
+    protected static String deriveFingerprint(Set<IChunkTransformation> transformations, List<IRegionTransformation> regionTransformations) {
+        final String fingerprint = deriveFingerprint(transformations);
+        if (fingerprint == null || regionTransformations.isEmpty()) return fingerprint;
+
+        final StringBuilder builder = new StringBuilder(fingerprint);
+
+        for (IRegionTransformation transformation : regionTransformations) {
+            String regionFingerprint = transformation.getFingerprint();
+            if (regionFingerprint == null) return null;
+
+            builder.append("region:").append(regionFingerprint).append('\n');
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Apply every transformation of this transformer to a chunk, in the order they were added.
+     * Consecutive {@link INbtVisitorTransformation}s are applied in a single traversal of the chunk data.
+     * @param ctx The context of the chunk.
+     */
     public void applyTransformations(ChunkTransformContext ctx) {
-        transformations.forEach(transformation -> transformation.transform(ctx, this));
+        sequence.apply(ctx);
+    }
+
+    /**
+     * @return True, if this transformer has transformations that are applied to whole regions.
+     */
+    public boolean hasRegionTransformations() {
+        return !regionTransformations.isEmpty();
+    }
+
+    /**
+     * Apply every region transformation of this transformer to a region, in the order they were added.
+     * @param ctx The context of the region.
+     */
+    public void applyRegionTransformations(RegionTransformContext ctx) {
+        for (IRegionTransformation transformation : regionTransformations)
+            transformation.transform(ctx, this);
+    }
+
+    /**
+     * Checks whether the transformations of this transformer may be fused with the transformations of other transformers,
+     * into a single traversal of the chunk data. Otherwise, {@link #applyTransformations(ChunkTransformContext)} is called
+     * for every chunk this transformer is applied to.
+     * Subclasses that prepare something around {@link #applyTransformations(ChunkTransformContext)} must return false.
+     * @return True, if the transformations can be fused; this is the default.
+     */
+    public boolean canFuseTransformations() {
+        return true;
     }
 
     public void complete() {
@@ -56,21 +185,39 @@ public class ChunkTransformer {
         private Predicate<RegistryKey<World>> dimensionTarget = dimension -> true;
         private Predicate<WorldTransformer.RegionFileLocation> regionTarget = region -> true;
         private BiPredicate<ChunkPos, WorldTransformer.RegionFileLocation> chunkTarget = (chunk, region) -> true;
-        private final Set<IChunkTransformation> transformations = new HashSet<>();
+        private final Set<IChunkTransformation> transformations = new LinkedHashSet<>();
+        private final List<IRegionTransformation> regionTransformations = new ArrayList<>();
         private Runnable onComplete = null;
+        private String fingerprint = null;
+        private boolean customTargets = false;
 
         public Builder targetDimensions(Predicate<RegistryKey<World>> dimensionTarget) {
             this.dimensionTarget = Objects.requireNonNull(dimensionTarget);
+            this.customTargets = true;
             return this;
         }
 
         public Builder targetRegions(Predicate<WorldTransformer.RegionFileLocation> regionTarget) {
             this.regionTarget = Objects.requireNonNull(regionTarget);
+            this.customTargets = true;
             return this;
         }
 
         public Builder targetChunks(BiPredicate<ChunkPos, WorldTransformer.RegionFileLocation> chunkTarget) {
             this.chunkTarget = Objects.requireNonNull(chunkTarget);
+            this.customTargets = true;
+            return this;
+        }
+
+        /**
+         * Identify this transformer, including its targets, across game restarts.
+         * Change the fingerprint whenever the transformer produces different results.
+         * If no fingerprint is set, it is derived from the transformations, unless custom targets are used.
+         * @param fingerprint The fingerprint of the transformer.
+         * @return This builder.
+         */
+        public Builder fingerprint(String fingerprint) {
+            this.fingerprint = Objects.requireNonNull(fingerprint);
             return this;
         }
 
@@ -84,8 +231,24 @@ public class ChunkTransformer {
             return this;
         }
 
+        /**
+         * Add a transformation that is applied once per targeted region, before the chunk transformations.
+         * The chunk target does not apply to region transformations.
+         * @param transformation The region transformation.
+         * @return This builder.
+         * @see IRegionTransformation
+         */
+        public Builder addRegionTransformation(IRegionTransformation transformation) {
+            this.regionTransformations.add(Objects.requireNonNull(transformation));
+            return this;
+        }
+
         public ChunkTransformer create() {
-            return new ChunkTransformer(dimensionTarget, regionTarget, chunkTarget, transformations, onComplete);
+            String fingerprint = this.fingerprint;
+            if (fingerprint == null && !customTargets) fingerprint = deriveFingerprint(transformations, regionTransformations);
+
+            return new ChunkTransformer(dimensionTarget, regionTarget, chunkTarget, transformations, onComplete, fingerprint,
+                    List.copyOf(regionTransformations));
         }
     }
 }
@@ -0,0 +1,191 @@
+package work.lclpnet.mcct.transform;
+
+import com.google.common.cache.CacheStats;
+import net.minecraft.nbt.AbstractNbtNumber;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtString;
+import work.lclpnet.mcct.nbt.NbtSelection;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Applies multiple {@link INbtVisitorTransformation}s in a single depth first traversal of the chunk data.
+ * Which visitors are still interested in the current subtree is tracked with a bit mask, so a subtree is only entered
+ * while at least one visitor wants to see it. At most {@link #MAX_VISITORS} visitors can be fused.
+ */
+final class FusedVisitorTransformation implements IChunkTransformation {
+
+    static final int MAX_VISITORS = Long.SIZE;
+
+    private final INbtVisitorTransformation[] visitors;
+
+    FusedVisitorTransformation(INbtVisitorTransformation[] visitors) {
+        if (visitors.length == 0 || visitors.length > MAX_VISITORS)
+            throw new IllegalArgumentException("Can only fuse 1 to %s visitors".formatted(MAX_VISITORS));
+
+        this.visitors = visitors;
+    }
+
+    @Override
+    public void transform(ChunkTransformContext ctx, ChunkTransformer transformer) {
+        visit(visitors, ctx);
+    }
+
+    @Override
+    public NbtSelection getSelection() {
+        NbtSelection selection = NbtSelection.none();
+
+        for (INbtVisitorTransformation visitor : visitors)
+            selection = selection.union(visitor.getSelection());
+
+        return selection;
+    }
+
+    @Override
+    public String getName() {
+        return Arrays.stream(visitors).map(IChunkTransformation::getName).collect(Collectors.joining(" + "));
+    }
+
+    /**
+     * @return The combined cache statistics of every visitor that uses a cache, or null if none does.
+     */
+    @Nullable
+    @Override
+    public CacheStats getCacheStats() {
+        CacheStats combined = null;
+
+        for (INbtVisitorTransformation visitor : visitors) {
+            final CacheStats stats = visitor.getCacheStats();
+            if (stats != null) combined = combined != null ? combined.plus(stats) : stats;
+        }
+
+        return combined;
+    }
+
+    /**
+     * Traverse the chunk data once and call every visitor for each node.
+     * @param visitors The visitors, in the order they are applied; at most {@link #MAX_VISITORS}.
+     * @param ctx The context of the chunk.
+     */
+    static void visit(INbtVisitorTransformation[] visitors, ChunkTransformContext ctx) {
+        final Traversal traversal = new Traversal(visitors, ctx);
+        final NbtCompound compound = ctx.getCompound();
+
+        final long active = traversal.enterCompound(compound, visitors.length == MAX_VISITORS ? -1L : (1L << visitors.length) - 1L);
+        if (active != 0L) traversal.visitEntries(compound, active);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FusedVisitorTransformation that = (FusedVisitorTransformation) o;
+        return Arrays.equals(visitors, that.visitors);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(visitors);
+    }
+
+    private static class Traversal {
+        private final INbtVisitorTransformation[] visitors;
+        private final ChunkTransformContext ctx;
+        private final NbtVisitPath path = new NbtVisitPath();
+
+        Traversal(INbtVisitorTransformation[] visitors, ChunkTransformContext ctx) {
+            this.visitors = Objects.requireNonNull(visitors);
+            this.ctx = Objects.requireNonNull(ctx);
+        }
+
+        /**
+         * @return The visitors that want to visit the entries of the compound.
+         */
+        long enterCompound(NbtCompound compound, long active) {
+            long descend = 0L;
+
+            for (long bits = active; bits != 0L; bits &= bits - 1L) {
+                final int i = Long.numberOfTrailingZeros(bits);
+                if (visitors[i].onCompound(path, compound, ctx)) descend |= 1L << i;
+            }
+
+            return descend;
+        }
+
+        void visitEntries(NbtCompound compound, long active) {
+            // replacing the value of an existing key does not invalidate the iterator
+            for (String key : compound.getKeys()) {
+                final NbtElement element = compound.get(key);
+
+                path.pushKey(key);
+                final NbtElement result = visit(element, active);
+                path.pop();
+
+                if (result != element) {
+                    compound.put(key, result);
+                    ctx.markDirty();
+                }
+            }
+        }
+
+        void visitElements(NbtList list, long active) {
+            for (int i = 0; i < list.size(); i++) {
+                final NbtElement element = list.get(i);
+
+                path.pushIndex(i);
+                final NbtElement result = visit(element, active);
+                path.pop();
+
+                if (result != element) {
+                    list.set(i, result);
+                    ctx.markDirty();
+                }
+            }
+        }
+
+        /**
+         * @return The new value of the element, or the element itself if it was not replaced.
+         */
+        NbtElement visit(NbtElement element, long active) {
+            if (element instanceof NbtCompound compound) {
+                final long descend = enterCompound(compound, active);
+                if (descend != 0L) visitEntries(compound, descend);
+
+                return element;
+            }
+
+            if (element instanceof NbtList list) {
+                long descend = 0L;
+
+                for (long bits = active; bits != 0L; bits &= bits - 1L) {
+                    final int i = Long.numberOfTrailingZeros(bits);
+                    if (visitors[i].onList(path, list, ctx)) descend |= 1L << i;
+                }
+
+                if (descend != 0L) visitElements(list, descend);
+
+                return element;
+            }
+
+            NbtElement current = element;
+
+            for (long bits = active; bits != 0L; bits &= bits - 1L) {
+                final int i = Long.numberOfTrailingZeros(bits);
+                final NbtElement result;
+
+                if (current instanceof NbtString string) result = visitors[i].onString(path, string, ctx);
+                else if (current instanceof AbstractNbtNumber number) result = visitors[i].onNumber(path, number, ctx);
+                else break;
+
+                if (result != null && !result.equals(current)) current = result;
+            }
+
+            return current;
+        }
+    }
+}
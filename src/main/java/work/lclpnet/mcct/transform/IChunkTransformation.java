@@ -1,6 +1,51 @@
 package work.lclpnet.mcct.transform;
 
+import com.google.common.cache.CacheStats;
+import work.lclpnet.mcct.nbt.NbtSelection;
+
+import javax.annotation.Nullable;
+
 public interface IChunkTransformation {
 
     void transform(ChunkTransformContext ctx, ChunkTransformer transformer);
+
+    /**
+     * Declares which parts of the chunk data this transformation reads or modifies.
+     * If every registered transformation only needs a part of the chunk data, the remaining data is skipped while reading.
+     * Transformations will only see the selected parts, so the selection has to include everything that is accessed.
+     *
+     * @return The parts of the chunk data this transformation needs; everything by default.
+     */
+    default NbtSelection getSelection() {
+        return NbtSelection.all();
+    }
+
+    /**
+     * Get a human-readable name of this transformation, which is used in {@link TransformMetrics}.
+     * @return The name of the transformation; the class name by default.
+     */
+    default String getName() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * Get a string that identifies this transformation and its configuration across game restarts.
+     * Two transformations with the same fingerprint must produce the same results.
+     * Fingerprints are used to recognize chunks that were already transformed in an earlier run.
+     *
+     * @return The fingerprint, or null if the transformation can't be identified; this is the default.
+     */
+    @Nullable
+    default String getFingerprint() {
+        return null;
+    }
+
+    /**
+     * Get the statistics of the cache this transformation uses, which are reported in {@link TransformMetrics}.
+     * @return The cache statistics since the transformation was created, or null if it does not use a cache; this is the default.
+     */
+    @Nullable
+    default CacheStats getCacheStats() {
+        return null;
+    }
 }
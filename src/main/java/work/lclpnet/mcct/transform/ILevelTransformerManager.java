@@ -4,6 +4,9 @@ import net.minecraft.nbt.NbtCompound;
 import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.registry.RegistryKey;
 import net.minecraft.world.World;
+import work.lclpnet.mcct.nbt.NbtSelection;
+
+import javax.annotation.Nullable;
 
 public interface ILevelTransformerManager {
 
@@ -16,4 +19,67 @@ public interface ILevelTransformerManager {
     boolean shouldTransformChunk(ChunkPos chunkPos, WorldTransformer.RegionFileLocation region);
 
     boolean transformChunk(NbtCompound chunkTag, ChunkPos chunkPos, WorldTransformer.RegionFileLocation region);
+
+    /**
+     * Transform a chunk and record the time spent in each transformation.
+     * By default, no times are recorded.
+     * @param chunkTag The chunk data.
+     * @param chunkPos The position of the chunk.
+     * @param region The region the chunk is a part of.
+     * @param metrics The metrics to record the transformation times in, or null.
+     * @return True, if the chunk data was modified.
+     */
+    default boolean transformChunk(NbtCompound chunkTag, ChunkPos chunkPos, WorldTransformer.RegionFileLocation region, @Nullable TransformMetrics metrics) {
+        return transformChunk(chunkTag, chunkPos, region);
+    }
+
+    /**
+     * Decide once per region which chunks have to be transformed.
+     * By default, the returned plan delegates to {@link #shouldTransformChunk(ChunkPos, WorldTransformer.RegionFileLocation)}
+     * and {@link #transformChunk(NbtCompound, ChunkPos, WorldTransformer.RegionFileLocation, TransformMetrics)}.
+     * @param region The region to transform.
+     * @return The plan for the chunks of the region.
+     */
+    default IRegionTransformPlan planRegion(WorldTransformer.RegionFileLocation region) {
+        return new IRegionTransformPlan() {
+            @Override
+            public boolean shouldTransformChunk(ChunkPos chunkPos) {
+                return ILevelTransformerManager.this.shouldTransformChunk(chunkPos, region);
+            }
+
+            @Override
+            public boolean transformChunk(NbtCompound chunkTag, ChunkPos chunkPos, @Nullable TransformMetrics metrics) {
+                return ILevelTransformerManager.this.transformChunk(chunkTag, chunkPos, region, metrics);
+            }
+        };
+    }
+
+    /**
+     * Checks whether chunks of different regions may be transformed by multiple threads at the same time.
+     * If not, region files are transformed one at a time, regardless of {@link TransformOptions#getParallelism()}.
+     * By default, the transformation is assumed to be thread safe.
+     * @return True, if the transformation is thread safe.
+     */
+    default boolean isThreadSafe() {
+        return true;
+    }
+
+    /**
+     * Get the parts of the chunk data that have to be read for the transformation.
+     * The chunk data passed to {@link #transformChunk(NbtCompound, ChunkPos, WorldTransformer.RegionFileLocation)} will only contain these parts.
+     * @return The parts of the chunk data to read.
+     */
+    default NbtSelection getSelection() {
+        return NbtSelection.all();
+    }
+
+    /**
+     * Get a string that identifies the complete transformation across game restarts.
+     * It is used to resume interrupted transformations.
+     * @return The fingerprint, or null if the transformation can't be identified.
+     */
+    @Nullable
+    default String getFingerprint() {
+        return null;
+    }
 }
@@ -0,0 +1,35 @@
+package work.lclpnet.mcct.transform;
+
+import work.lclpnet.mcct.nbt.NbtPathTree;
+import work.lclpnet.mcct.nbt.NbtSelection;
+
+/**
+ * A chunk transformation that only modifies the nodes selected by the paths of an {@link NbtPathTree}.
+ * The trees of consecutive path transformations, even of different transformers, are merged into a single tree,
+ * see {@link NbtPathTree#merge(Iterable)}, so that every chunk is traversed only once along the paths of all of them.
+ *
+ * The result is the same as applying the transformations one after another, as long as no function depends on nodes
+ * below the node it is bound to, which functions bound by other transformations modify.
+ */
+public interface INbtPathTransformation extends IChunkTransformation {
+
+    /**
+     * Get the paths and functions of this transformation. The tree must not be modified afterwards.
+     * @return The path tree.
+     */
+    NbtPathTree getPathTree();
+
+    @Override
+    default NbtSelection getSelection() {
+        return getPathTree().getSelection();
+    }
+
+    /**
+     * Apply the tree of only this transformation.
+     * This is only called if the transformation could not be merged with others.
+     */
+    @Override
+    default void transform(ChunkTransformContext ctx, ChunkTransformer transformer) {
+        if (getPathTree().apply(ctx.getCompound())) ctx.markDirty();
+    }
+}
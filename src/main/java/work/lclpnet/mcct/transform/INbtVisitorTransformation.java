@@ -0,0 +1,90 @@
+package work.lclpnet.mcct.transform;
+
+import net.minecraft.nbt.AbstractNbtNumber;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtString;
+
+import javax.annotation.Nullable;
+
+/**
+ * A chunk transformation that is called for the nodes of the chunk data, while the chunk is traversed depth first.
+ * Consecutive visitor transformations, even of different transformers, are fused into a single traversal of the chunk,
+ * see {@link MCCT#transformChunkNbt}. Every visitor is called for a node in the order the transformations are applied,
+ * and receives the node as modified by the visitors before it.
+ *
+ * The result is the same as applying the visitors one after another, as long as every visitor only decides based on the node
+ * it is called for and its path. Transformations that need to look at other parts of the chunk should implement
+ * {@link IChunkTransformation} instead; they are applied between the traversals of the visitors before and after them.
+ *
+ * Byte, int and long arrays are not visited.
+ */
+public interface INbtVisitorTransformation extends IChunkTransformation {
+
+    /**
+     * Called for a compound, before its entries are visited. The chunk compound itself is visited with an empty path.
+     * The compound may be modified here, e.g. by adding or removing entries; call {@link ChunkTransformContext#markDirty()} then.
+     * @param path The path of the compound.
+     * @param compound The compound.
+     * @param ctx The context of the chunk.
+     * @return True, if the entries of the compound should be visited by this transformation.
+     */
+    default boolean onCompound(NbtVisitPath path, NbtCompound compound, ChunkTransformContext ctx) {
+        return true;
+    }
+
+    /**
+     * Called for a list, before its elements are visited.
+     * The list may be modified here; call {@link ChunkTransformContext#markDirty()} then.
+     * @param path The path of the list.
+     * @param list The list.
+     * @param ctx The context of the chunk.
+     * @return True, if the elements of the list should be visited by this transformation.
+     */
+    default boolean onList(NbtVisitPath path, NbtList list, ChunkTransformContext ctx) {
+        return true;
+    }
+
+    /**
+     * Called for a string value.
+     * @param path The path of the string.
+     * @param string The string.
+     * @param ctx The context of the chunk.
+     * @return The new value, or null if the string should not be modified. List elements must keep the type of the list.
+     */
+    @Nullable
+    default NbtElement onString(NbtVisitPath path, NbtString string, ChunkTransformContext ctx) {
+        return null;
+    }
+
+    /**
+     * Called for a numeric value.
+     * @param path The path of the number.
+     * @param number The number.
+     * @param ctx The context of the chunk.
+     * @return The new value, or null if the number should not be modified. List elements must keep the type of the list.
+     */
+    @Nullable
+    default NbtElement onNumber(NbtVisitPath path, AbstractNbtNumber number, ChunkTransformContext ctx) {
+        return null;
+    }
+
+    /**
+     * Checks whether this visitor may share a traversal with other visitors.
+     * Visitors that can't be fused are applied on their own, through {@link #transform(ChunkTransformContext, ChunkTransformer)}.
+     * @return True, if this visitor can be fused.
+     */
+    default boolean canFuse() {
+        return true;
+    }
+
+    /**
+     * Traverse the chunk with only this visitor.
+     * This is only called if the transformation could not be fused with others.
+     */
+    @Override
+    default void transform(ChunkTransformContext ctx, ChunkTransformer transformer) {
+        FusedVisitorTransformation.visit(new INbtVisitorTransformation[] {this}, ctx);
+    }
+}
@@ -0,0 +1,45 @@
+package work.lclpnet.mcct.transform;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.util.math.ChunkPos;
+
+import javax.annotation.Nullable;
+
+/**
+ * Decides which transformers apply to the chunks of a single region.
+ * A plan is created once per region by {@link ILevelTransformerManager#planRegion(WorldTransformer.RegionFileLocation)}
+ * and may be used by multiple threads at once.
+ */
+public interface IRegionTransformPlan {
+
+    /**
+     * Checks whether any transformer targets a chunk of the region.
+     * @param chunkPos The position of the chunk.
+     * @return True, if the chunk has to be transformed.
+     */
+    boolean shouldTransformChunk(ChunkPos chunkPos);
+
+    /**
+     * Transform a chunk of the region, using only the transformers that target it.
+     * @param chunkTag The chunk data.
+     * @param chunkPos The position of the chunk.
+     * @param metrics The metrics to record the transformation times in, or null.
+     * @return True, if the chunk data was modified.
+     */
+    boolean transformChunk(NbtCompound chunkTag, ChunkPos chunkPos, @Nullable TransformMetrics metrics);
+
+    /**
+     * Checks whether any transformer has to see the whole region, see {@link IRegionTransformation}.
+     * @return True, if {@link #transformRegion(RegionTransformContext)} has to be called; false by default.
+     */
+    default boolean hasRegionTransformations() {
+        return false;
+    }
+
+    /**
+     * Apply the region transformations of every transformer that targets the region.
+     * This is called before any chunk of the region is transformed.
+     * @param ctx The context of the region.
+     */
+    default void transformRegion(RegionTransformContext ctx) {}
+}
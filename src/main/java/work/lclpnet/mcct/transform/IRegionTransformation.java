@@ -0,0 +1,38 @@
+package work.lclpnet.mcct.transform;
+
+import work.lclpnet.mcct.nbt.NbtSelection;
+
+import javax.annotation.Nullable;
+
+/**
+ * A transformation that is called once for every region, with access to all chunks of the region
+ * and read-only access to the chunks of the 8 neighboring regions, see {@link RegionTransformContext}.
+ * Use it for modifications that span multiple chunks, e.g. structure references or blocks at chunk borders.
+ *
+ * The region transformations of all transformers are applied before the chunk transformations of the region,
+ * in the order the transformers were registered. Chunks are only decoded once, also if chunk transformations are applied to them afterwards.
+ * Region transformations are only applied by the {@link WorldTransformer}, not while chunks are loaded by the game.
+ */
+public interface IRegionTransformation {
+
+    void transform(RegionTransformContext ctx, ChunkTransformer transformer);
+
+    /**
+     * Declares which parts of the chunk data this transformation reads or modifies, also of the neighboring chunks.
+     * @return The parts of the chunk data this transformation needs; everything by default.
+     * @see IChunkTransformation#getSelection()
+     */
+    default NbtSelection getSelection() {
+        return NbtSelection.all();
+    }
+
+    /**
+     * Get a string that identifies this transformation and its configuration across game restarts.
+     * @return The fingerprint, or null if the transformation can't be identified; this is the default.
+     * @see IChunkTransformation#getFingerprint()
+     */
+    @Nullable
+    default String getFingerprint() {
+        return null;
+    }
+}
@@ -3,6 +3,8 @@ package work.lclpnet.mcct.transform;
 /**
  * Stateful transformation interface.
  * <b>Careful!</b> Using this interface can be unsafe. Only use it if you must!
+ * Unless the transformer uses {@link StatefulChunkTransformer.Builder#perWorkerState per worker state},
+ * the state is shared by every region thread.
  * @param <State> The state type of the transformation.
  */
 public interface IStatefulChunkTransformation<State> extends IChunkTransformation {
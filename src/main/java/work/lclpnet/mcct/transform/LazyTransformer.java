@@ -0,0 +1,214 @@
+package work.lclpnet.mcct.transform;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.ChunkPos;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import work.lclpnet.mcct.asm.type.IMinecraftServer;
+
+import javax.annotation.Nullable;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Applies the registered transformers lazily, whenever the server loads a chunk from disk, instead of transforming the whole world at once.
+ * Every chunk that is saved while the lazy transformation is enabled is marked with the fingerprint of the transformers,
+ * so that each chunk is transformed exactly once, even across restarts. Chunks that are never loaded are never transformed.
+ *
+ * The transformation happens while the chunk is deserialized, which vanilla does on the server thread.
+ * The time spent is recorded in the {@link #getMetrics() metrics}, and chunks that exceed the tick budget are logged.
+ * The targets of the transformers are evaluated once per region, see {@link ILevelTransformerManager#planRegion(WorldTransformer.RegionFileLocation)}.
+ * The plans of recently loaded regions are kept, as the chunks around players are loaded region by region.
+ *
+ * A lazy transformation never completes, so {@link ILevelTransformerManager#complete()} is never called.
+ * When the lazy transformation is disabled, the states of {@link StatefulChunkTransformer}s with per worker states
+ * are combined into their shared state, without running their completion callbacks.
+ */
+public class LazyTransformer {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    /** The key of the fingerprint marker in the chunk data. */
+    public static final String MARKER_KEY = "mcct:fingerprint";
+    /** A single chunk should not take up a considerable part of the 50 ms of a tick. */
+    private static final long SLOW_CHUNK_NANOS = 5_000_000L;
+    /** Enough regions for the loaded chunks of a few dozen players. */
+    private static final int MAX_CACHED_PLANS = 64;
+
+    @Nullable
+    private static volatile LazyTransformer instance = null;
+
+    protected final ILevelTransformerManager manager;
+    protected final String fingerprint;
+    protected final TransformMetrics metrics = new TransformMetrics();
+    /** Chunks whose transformation failed; they must not be marked as transformed. */
+    protected final Set<FailedChunk> failedChunks = ConcurrentHashMap.newKeySet();
+    /** The plans of the regions whose chunks were loaded recently. */
+    protected final Cache<WorldTransformer.RegionFileLocation, IRegionTransformPlan> plans = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_PLANS)
+            .build();
+
+    protected LazyTransformer(ILevelTransformerManager manager, String fingerprint) {
+        this.manager = Objects.requireNonNull(manager);
+        this.fingerprint = Objects.requireNonNull(fingerprint);
+    }
+
+    /**
+     * Enable the lazy transformation with the level transformer manager of the configured provider,
+     * see {@link MCCT#setLevelTransformProvider(java.util.function.Function)}.
+     * Call this after every transformer was registered and before the first world is loaded.
+     * @return True, if the lazy transformation was enabled. False, if the transformation has no fingerprint.
+     * @see ChunkTransformer#getFingerprint()
+     */
+    public static boolean enable() {
+        return enable(MCCT.createTransformer(null));
+    }
+
+    /**
+     * Enable the lazy transformation with a level transformer manager.
+     * Call this after every transformer was registered and before the first world is loaded.
+     * @param manager The manager that transforms the chunks.
+     * @return True, if the lazy transformation was enabled. False, if the manager has no fingerprint.
+     * @see ILevelTransformerManager#getFingerprint()
+     */
+    public static boolean enable(ILevelTransformerManager manager) {
+        Objects.requireNonNull(manager);
+        final String fingerprint = manager.getFingerprint();
+
+        if (fingerprint == null) {
+            LOGGER.warn("Not every transformer has a fingerprint, lazy transformation can't be enabled");
+            return false;
+        }
+
+        instance = new LazyTransformer(manager, fingerprint);
+        LOGGER.info("Enabled lazy chunk transformation");
+        return true;
+    }
+
+    /**
+     * Disable the lazy transformation. Chunks are no longer transformed or marked when they are loaded or saved.
+     */
+    public static void disable() {
+        final LazyTransformer transformer = instance;
+        if (transformer == null) return;
+
+        instance = null;
+        transformer.plans.invalidateAll();
+
+        // per worker states are only combined on completion, which never happens; combine them so that the worker threads are released
+        MCCT.getChunkTransformers().forEach(chunkTransformer -> {
+            if (chunkTransformer instanceof StatefulChunkTransformer<?> stateful && stateful.isPerWorkerState())
+                stateful.combineStates();
+        });
+
+        transformer.metrics.finish();
+        LOGGER.info("Disabled lazy chunk transformation, summary: {}", transformer.metrics);
+    }
+
+    /**
+     * @return The active lazy transformer, or null if the lazy transformation is disabled.
+     */
+    @Nullable
+    public static LazyTransformer get() {
+        return instance;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public TransformMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Transform chunk data that was loaded from disk, unless it is already marked with the current fingerprint.
+     * Failures are logged and leave the chunk data untouched, so that the chunk can still be loaded.
+     * @param world The world of the chunk.
+     * @param chunkPos The position of the chunk.
+     * @param nbt The chunk data, after it was upgraded to the current game version.
+     * @return True, if the chunk data was modified and the chunk has to be saved.
+     */
+    public boolean transformChunk(ServerWorld world, ChunkPos chunkPos, NbtCompound nbt) {
+        if (fingerprint.equals(nbt.getString(MARKER_KEY))) {
+            metrics.chunksSkipped(1);
+            return false;
+        }
+
+        final WorldTransformer.RegionFileLocation region = getRegion(world, chunkPos);
+        final long start = System.nanoTime();
+        final boolean dirty;
+
+        try {
+            if (manager.shouldTransformDimension(region.world()) && manager.shouldTransformRegion(region)) {
+                final IRegionTransformPlan plan = getPlan(region);
+                dirty = plan.shouldTransformChunk(chunkPos) && plan.transformChunk(nbt, chunkPos, metrics);
+            } else {
+                dirty = false;
+            }
+        } catch (Throwable t) {
+            LOGGER.error("Failed to transform chunk {} of {} lazily, loading it untransformed", chunkPos, world.getRegistryKey().getValue(), t);
+            failedChunks.add(new FailedChunk(world.getRegistryKey().getValue().toString(), chunkPos.toLong()));
+            metrics.chunksFailed(1);
+            return false;
+        }
+
+        final long nanos = System.nanoTime() - start;
+
+        metrics.transformTime(nanos);
+        metrics.chunkTransformed();
+        metrics.chunkCompleted(region, chunkPos, nanos);
+        if (dirty) metrics.chunkWritten();
+
+        if (nanos > SLOW_CHUNK_NANOS)
+            LOGGER.warn("Lazy transformation of chunk {} took {} ms, which exceeds the tick budget", chunkPos, nanos / 1_000_000L);
+
+        return dirty;
+    }
+
+    /**
+     * Mark chunk data that is about to be saved as transformed.
+     * Every chunk in memory was either transformed when it was loaded, or generated after the transformers were registered.
+     * @param world The world of the chunk.
+     * @param chunkPos The position of the chunk.
+     * @param nbt The serialized chunk data.
+     */
+    public void markChunk(ServerWorld world, ChunkPos chunkPos, NbtCompound nbt) {
+        if (!failedChunks.isEmpty() && failedChunks.contains(new FailedChunk(world.getRegistryKey().getValue().toString(), chunkPos.toLong())))
+            return;
+
+        nbt.putString(MARKER_KEY, fingerprint);
+    }
+
+    /**
+     * Get the plan of a region, or create it once the first chunk of the region is loaded.
+     * @param region The region.
+     * @return The plan of the region.
+     */
+    protected IRegionTransformPlan getPlan(WorldTransformer.RegionFileLocation region) {
+        IRegionTransformPlan plan = plans.getIfPresent(region);
+
+        if (plan == null) {
+            // chunks are usually loaded on the server thread, two plans of the same region are rare and harmless
+            plan = manager.planRegion(region);
+            plans.put(region, plan);
+        }
+
+        return plan;
+    }
+
+    protected WorldTransformer.RegionFileLocation getRegion(ServerWorld world, ChunkPos chunkPos) {
+        final int regionX = chunkPos.x >> 5, regionZ = chunkPos.z >> 5;
+
+        final Path worldDirectory = ((IMinecraftServer) world.getServer()).mcct$getSession().getWorldDirectory(world.getRegistryKey());
+        final Path file = worldDirectory.resolve("region").resolve("r.%s.%s.mca".formatted(regionX, regionZ));
+
+        return new WorldTransformer.RegionFileLocation(file, regionX << 5, regionZ << 5, world.getRegistryKey());
+    }
+
+    protected record FailedChunk(String dimension, long chunkPos) {}
+}
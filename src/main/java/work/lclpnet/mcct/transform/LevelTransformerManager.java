@@ -1,9 +1,14 @@
 package work.lclpnet.mcct.transform;
 
+import com.google.common.hash.Hashing;
 import net.minecraft.nbt.NbtCompound;
 import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.registry.RegistryKey;
 import net.minecraft.world.World;
+import work.lclpnet.mcct.nbt.NbtSelection;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
 
 public class LevelTransformerManager implements ILevelTransformerManager {
 
@@ -31,8 +36,50 @@ public class LevelTransformerManager implements ILevelTransformerManager {
                 .anyMatch(transformer -> transformer.shouldTransformChunk(chunkPos, region));
     }
 
+    @Override
+    public IRegionTransformPlan planRegion(WorldTransformer.RegionFileLocation region) {
+        return new RegionTransformPlan(MCCT.getChunkTransformers().toList(), region);
+    }
+
+    /**
+     * Stateful transformers whose state is shared by every worker are not synchronized, see {@link StatefulChunkTransformer#getState()}.
+     * @return False, if any registered transformer has a shared state.
+     */
+    @Override
+    public boolean isThreadSafe() {
+        return MCCT.getChunkTransformers().noneMatch(transformer ->
+                transformer instanceof StatefulChunkTransformer<?> stateful && !stateful.isPerWorkerState());
+    }
+
+    @Override
+    public NbtSelection getSelection() {
+        return MCCT.getChunkTransformers()
+                .map(ChunkTransformer::getSelection)
+                .reduce(NbtSelection.none(), NbtSelection::union);
+    }
+
+    @Nullable
+    @Override
+    public String getFingerprint() {
+        final StringBuilder builder = new StringBuilder();
+
+        for (ChunkTransformer transformer : MCCT.getChunkTransformers().toList()) {
+            String fingerprint = transformer.getFingerprint();
+            if (fingerprint == null) return null;
+
+            builder.append(fingerprint).append('\0');
+        }
+
+        return Hashing.sha256().hashString(builder, StandardCharsets.UTF_8).toString();
+    }
+
     @Override
     public boolean transformChunk(NbtCompound chunkTag, ChunkPos chunkPos, WorldTransformer.RegionFileLocation region) {
         return MCCT.transformChunkNbt(chunkTag, chunkPos, region);
     }
+
+    @Override
+    public boolean transformChunk(NbtCompound chunkTag, ChunkPos chunkPos, WorldTransformer.RegionFileLocation region, @Nullable TransformMetrics metrics) {
+        return MCCT.transformChunkNbt(chunkTag, chunkPos, region, metrics);
+    }
 }
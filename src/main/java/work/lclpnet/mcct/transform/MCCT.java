@@ -4,6 +4,7 @@ import net.minecraft.nbt.NbtCompound;
 import net.minecraft.util.math.ChunkPos;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -14,12 +15,29 @@ public class MCCT {
 
     private static Function<WorldTransformer, ILevelTransformerManager> levelTransformProvider = transformer -> new LevelTransformerManager();
     private static final List<ChunkTransformer> transformers = new ArrayList<>();
+    private static TransformOptions transformOptions = TransformOptions.DEFAULT;
 
+    /**
+     * Set the provider of the level transformer managers used by world transformations and by the {@link LazyTransformer}.
+     * @param levelTransformProvider The provider. It is passed the world transformer, or null for the lazy transformation.
+     */
     public static void setLevelTransformProvider(@Nonnull Function<WorldTransformer, ILevelTransformerManager> levelTransformProvider) {
         MCCT.levelTransformProvider = Objects.requireNonNull(levelTransformProvider);
     }
 
-    static ILevelTransformerManager createTransformer(WorldTransformer transformer) {
+    /**
+     * Set the options that are used for world transformations started from the edit world screen.
+     * @param transformOptions The options to use.
+     */
+    public static void setTransformOptions(@Nonnull TransformOptions transformOptions) {
+        MCCT.transformOptions = Objects.requireNonNull(transformOptions);
+    }
+
+    public static TransformOptions getTransformOptions() {
+        return transformOptions;
+    }
+
+    static ILevelTransformerManager createTransformer(@Nullable WorldTransformer transformer) {
         return levelTransformProvider.apply(transformer);
     }
 
@@ -65,8 +83,36 @@ public class MCCT {
      * @return True, if the chunk data was modified.
      */
     public static boolean transformChunkNbt(NbtCompound compound, ChunkPos chunkPos, WorldTransformer.RegionFileLocation region) {
-        ChunkTransformContext ctx = new ChunkTransformContext(compound, chunkPos, region);
-        transformers.forEach(transformer -> transformer.applyTransformations(ctx));
-        return ctx.isDirty();
+        return transformChunkNbt(compound, chunkPos, region, null);
+    }
+
+    /**
+     * Transforms chunk data by applying transformations from registered transformers.
+     * Only transformers that target the dimension, region and chunk are applied, in the order they were registered.
+     * Consecutive {@link INbtVisitorTransformation}s of all these transformers are fused into a single traversal of the chunk data.
+     * To transform many chunks of the same region, use a {@link RegionTransformPlan} instead.
+     * @param compound The chunk data to transform.
+     * @param chunkPos The position of the chunk.
+     * @param region Information about the region the chunk is a part of.
+     * @param metrics Metrics to record the time spent in each transformation, or null.
+     * @return True, if the chunk data was modified.
+     */
+    public static boolean transformChunkNbt(NbtCompound compound, ChunkPos chunkPos, WorldTransformer.RegionFileLocation region,
+                                            @Nullable TransformMetrics metrics) {
+        final List<ChunkTransformer> targeting = new ArrayList<>(transformers.size());
+
+        for (ChunkTransformer transformer : transformers) {
+            if (transformer.shouldTransformDimension(region.world())
+                    && transformer.shouldTransformRegion(region)
+                    && transformer.shouldTransformChunk(chunkPos, region))
+                targeting.add(transformer);
+        }
+
+        if (targeting.isEmpty()) return false;
+
+        ChunkTransformContext ctx = new ChunkTransformContext(compound, chunkPos, region, metrics);
+        TransformationSequence.of(targeting).apply(ctx);
+
+        return ctx.finish();
     }
 }
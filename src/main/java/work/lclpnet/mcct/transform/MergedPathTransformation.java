@@ -0,0 +1,52 @@
+package work.lclpnet.mcct.transform;
+
+import work.lclpnet.mcct.nbt.NbtPathTree;
+import work.lclpnet.mcct.nbt.NbtSelection;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * Applies multiple {@link INbtPathTransformation}s with a single tree, which contains the paths of all of them.
+ * Functions bound to the same node are applied in the order of the transformations.
+ */
+final class MergedPathTransformation implements IChunkTransformation {
+
+    private final INbtPathTransformation[] transformations;
+    private final NbtPathTree tree;
+
+    MergedPathTransformation(INbtPathTransformation[] transformations) {
+        if (transformations.length == 0) throw new IllegalArgumentException("Can't merge zero transformations");
+
+        this.transformations = transformations;
+        this.tree = NbtPathTree.merge(Arrays.stream(transformations).map(INbtPathTransformation::getPathTree).toList());
+    }
+
+    @Override
+    public void transform(ChunkTransformContext ctx, ChunkTransformer transformer) {
+        if (tree.apply(ctx.getCompound())) ctx.markDirty();
+    }
+
+    @Override
+    public NbtSelection getSelection() {
+        return tree.getSelection();
+    }
+
+    @Override
+    public String getName() {
+        return Arrays.stream(transformations).map(IChunkTransformation::getName).collect(Collectors.joining(" + "));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        MergedPathTransformation that = (MergedPathTransformation) o;
+        return Arrays.equals(transformations, that.transformations);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(transformations);
+    }
+}
@@ -0,0 +1,119 @@
+package work.lclpnet.mcct.transform;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * The path from the chunk compound to the node an {@link INbtVisitorTransformation} is currently called for.
+ * Every segment is either the key of a compound entry or the index of a list element.
+ *
+ * The path is reused for the whole traversal and changes after the callback returns; use {@link #toString()} to keep it.
+ */
+public final class NbtVisitPath {
+
+    private String[] keys = new String[16];
+    private int[] indices = new int[16];
+    private int depth = 0;
+
+    NbtVisitPath() {}
+
+    /**
+     * @return The amount of segments; 0 for the chunk compound itself.
+     */
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * Checks whether a segment is the index of a list element.
+     * @param segment The segment, from 0 to {@link #depth()} - 1.
+     * @return True, if the segment is a list index. False, if it is a compound key.
+     */
+    public boolean isIndex(int segment) {
+        return keys[checkSegment(segment)] == null;
+    }
+
+    /**
+     * @param segment The segment, from 0 to {@link #depth()} - 1.
+     * @return The key of the segment, or null if the segment is a list index.
+     */
+    @Nullable
+    public String getKey(int segment) {
+        return keys[checkSegment(segment)];
+    }
+
+    /**
+     * @param segment The segment, from 0 to {@link #depth()} - 1.
+     * @return The index of the segment, or -1 if the segment is a compound key.
+     */
+    public int getIndex(int segment) {
+        return indices[checkSegment(segment)];
+    }
+
+    /**
+     * @return The key of the current node in its parent compound, or null if the node is a list element or the chunk compound.
+     */
+    @Nullable
+    public String getKey() {
+        return depth > 0 ? keys[depth - 1] : null;
+    }
+
+    /**
+     * Get the key of the nearest compound entry on the path, skipping list indices.
+     * For the elements of the <code>palette</code> list, this is <code>palette</code>.
+     * @return The last key of the path, or null if there is none.
+     */
+    @Nullable
+    public String getLastKey() {
+        for (int i = depth - 1; i >= 0; i--) {
+            if (keys[i] != null) return keys[i];
+        }
+
+        return null;
+    }
+
+    void pushKey(String key) {
+        ensureCapacity();
+        keys[depth] = key;
+        indices[depth++] = -1;
+    }
+
+    void pushIndex(int index) {
+        ensureCapacity();
+        keys[depth] = null;
+        indices[depth++] = index;
+    }
+
+    void pop() {
+        keys[--depth] = null;
+    }
+
+    private void ensureCapacity() {
+        if (depth < keys.length) return;
+
+        keys = Arrays.copyOf(keys, depth * 2);
+        indices = Arrays.copyOf(indices, depth * 2);
+    }
+
+    private int checkSegment(int segment) {
+        if (segment < 0 || segment >= depth) throw new IndexOutOfBoundsException(segment);
+        return segment;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+
+        for (int i = 0; i < depth; i++) {
+            if (keys[i] == null) {
+                builder.append('[').append(indices[i]).append(']');
+                continue;
+            }
+
+            if (i > 0) builder.append('.');
+            builder.append(keys[i]);
+        }
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,303 @@
+package work.lclpnet.mcct.transform;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coordinates multiple workers, possibly on different machines, that transform the same world through a shared directory.
+ * Before a worker transforms a region, it claims the region with a lease file, which it renews while it works.
+ * Once the region was committed, a marker file records that the region is done.
+ *
+ * Leases are only created with atomic, exclusive file creation. A lease that was not renewed for the lease duration
+ * belongs to a crashed worker and can be taken over, by creating the lease of the next generation.
+ * A worker whose lease was taken over notices it when renewing the lease, or when it checks the lease files
+ * before writing and committing the region, see {@link #isHeld(WorldTransformer.RegionFileLocation)}.
+ * The clocks of all workers have to be synchronized to a fraction of the lease duration.
+ *
+ * The leases of a run are stored in their own directory, so that a run with a new id starts over.
+ */
+public class RegionLeases implements AutoCloseable {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final String COMPLETE_FILE = "complete";
+
+    protected final Path directory;
+    protected final String workerId;
+    protected final Duration duration;
+    /** The leases held by this worker, by the region they belong to. */
+    protected final Map<Path, Lease> leases = new ConcurrentHashMap<>();
+    protected final ScheduledExecutorService renewer;
+
+    protected RegionLeases(Path directory, String workerId, Duration duration) {
+        this.directory = Objects.requireNonNull(directory);
+        this.workerId = Objects.requireNonNull(workerId);
+        this.duration = Objects.requireNonNull(duration);
+
+        this.renewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "MCCT-Lease-Renewer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        final long interval = Math.max(1L, duration.toMillis() / 3L);
+        renewer.scheduleAtFixedRate(this::renewAll, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Start coordinating with the other workers of a run.
+     * @param directory The shared lease directory of the run.
+     * @param workerId The id of this worker, unique among all workers of the run.
+     * @param duration The time after which a lease that was not renewed expires.
+     * @return The leases of this worker.
+     * @throws IOException If the lease directory could not be created.
+     */
+    public static RegionLeases open(Path directory, String workerId, Duration duration) throws IOException {
+        Files.createDirectories(directory);
+        return new RegionLeases(directory, workerId, duration);
+    }
+
+    public String getWorkerId() {
+        return workerId;
+    }
+
+    public Duration getDuration() {
+        return duration;
+    }
+
+    /**
+     * Checks whether a region was committed by any worker.
+     * @param region The region.
+     * @return True, if the region is done.
+     */
+    public boolean isDone(WorldTransformer.RegionFileLocation region) {
+        return Files.exists(getDoneFile(region));
+    }
+
+    /**
+     * Try to claim a region, which was neither claimed by another worker, nor done yet.
+     * Leases of other workers that expired are taken over.
+     * @param region The region.
+     * @return True, if this worker holds the lease of the region now.
+     */
+    public boolean tryAcquire(WorldTransformer.RegionFileLocation region) {
+        if (isDone(region)) return false;
+
+        try {
+            int generation = 0;
+            Path file;
+
+            // find the newest lease; there is only more than one, if a worker crashed
+            while (Files.exists(file = getLeaseFile(region, generation))) generation++;
+
+            if (generation > 0) {
+                final Path current = getLeaseFile(region, generation - 1);
+                final long age = System.currentTimeMillis() - getLastModified(current);
+
+                if (age < duration.toMillis()) return false;
+
+                LOGGER.info("The lease of region file {} expired or was released, taking it over", region.file().getFileName());
+            }
+
+            try {
+                Files.writeString(file, workerId, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            } catch (FileAlreadyExistsException e) {
+                return false;  // another worker was faster
+            }
+
+            // the region may have been completed and its leases deleted, right before the lease was created
+            if (isDone(region)) {
+                Files.deleteIfExists(file);
+                return false;
+            }
+
+            leases.put(region.file(), new Lease(region, generation));
+            return true;
+        } catch (IOException e) {
+            LOGGER.warn("Failed to claim region file {}", region.file().getFileName(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Checks whether this worker still holds the lease of a region, which it claimed before.
+     * The lease files are checked right away, so that a lease that expired or was taken over since it was last renewed is noticed.
+     * @param region The region.
+     * @return True, if the lease was not taken over by another worker and did not expire.
+     */
+    public boolean isHeld(WorldTransformer.RegionFileLocation region) {
+        final Lease lease = leases.get(region.file());
+        return lease != null && verify(lease);
+    }
+
+    /**
+     * Mark a region as done and release its lease.
+     * @param region The region.
+     * @return True, if the region was marked as done. False, if the lease was lost before.
+     */
+    public boolean complete(WorldTransformer.RegionFileLocation region) {
+        final Lease lease = leases.remove(region.file());
+
+        if (lease == null || !verify(lease)) {
+            LOGGER.error("The lease of region file {} was taken over by another worker, not committing it", region.file().getFileName());
+            return false;
+        }
+
+        try {
+            Files.writeString(getDoneFile(region), workerId, StandardCharsets.UTF_8);
+
+            for (int generation = 0; generation <= lease.generation; generation++)
+                Files.deleteIfExists(getLeaseFile(region, generation));
+        } catch (IOException e) {
+            LOGGER.warn("Failed to mark region file {} as done", region.file().getFileName(), e);
+        }
+
+        return true;
+    }
+
+    /**
+     * Release the lease of a region without marking it as done, so that another worker can transform it.
+     * @param region The region.
+     */
+    public void release(WorldTransformer.RegionFileLocation region) {
+        final Lease lease = leases.remove(region.file());
+        if (lease == null || lease.lost) return;
+
+        try {
+            // other workers take over the expired lease, which keeps the generations of the region consistent
+            Files.setLastModifiedTime(getLeaseFile(region, lease.generation), FileTime.fromMillis(0L));
+        } catch (IOException e) {
+            LOGGER.warn("Failed to release the lease of region file {}", region.file().getFileName(), e);
+        }
+    }
+
+    /**
+     * Claim the completion of the run, after every region is done.
+     * Only a single worker of the run succeeds.
+     * @return True, if this worker should complete the transformation.
+     */
+    public boolean tryClaimCompletion() {
+        try {
+            Files.writeString(directory.resolve(COMPLETE_FILE), workerId, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        } catch (IOException e) {
+            LOGGER.warn("Failed to claim the completion of the transformation", e);
+            return false;
+        }
+    }
+
+    /**
+     * Checks the lease files of a lease, without waiting for the next renewal.
+     * A lease is lost, if its file was deleted, if the lease of the next generation exists, or if it was not renewed
+     * for the lease duration, e.g. because this worker was suspended, as another worker may take it over at any time.
+     * @param lease The lease.
+     * @return True, if the lease is still held.
+     */
+    protected boolean verify(Lease lease) {
+        if (lease.lost) return false;
+
+        try {
+            if (Files.exists(getLeaseFile(lease.region, lease.generation + 1))) {
+                lease.lost = true;
+                LOGGER.error("The lease of region file {} was taken over by another worker", lease.region.file().getFileName());
+                return false;
+            }
+
+            final long age = System.currentTimeMillis() - getLastModified(getLeaseFile(lease.region, lease.generation));
+
+            if (age >= duration.toMillis()) {
+                lease.lost = true;
+                LOGGER.error("The lease of region file {} expired or was deleted", lease.region.file().getFileName());
+                return false;
+            }
+
+            return true;
+        } catch (IOException e) {
+            LOGGER.warn("Failed to check the lease of region file {}", lease.region.file().getFileName(), e);
+            return false;
+        }
+    }
+
+    protected void renewAll() {
+        final FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+
+        for (Lease lease : leases.values()) {
+            if (lease.lost) continue;
+
+            try {
+                if (Files.exists(getLeaseFile(lease.region, lease.generation + 1))) {
+                    lease.lost = true;
+                    LOGGER.error("The lease of region file {} was taken over by another worker", lease.region.file().getFileName());
+                    continue;
+                }
+
+                Files.setLastModifiedTime(getLeaseFile(lease.region, lease.generation), now);
+            } catch (NoSuchFileException e) {
+                lease.lost = true;
+                LOGGER.error("The lease of region file {} was deleted", lease.region.file().getFileName());
+            } catch (IOException e) {
+                LOGGER.warn("Failed to renew the lease of region file {}", lease.region.file().getFileName(), e);
+            }
+        }
+    }
+
+    protected Path getRegionDirectory(WorldTransformer.RegionFileLocation region) {
+        final var dimension = region.world().getValue();
+        return directory.resolve(dimension.getNamespace()).resolve(dimension.getPath());
+    }
+
+    protected Path getLeaseFile(WorldTransformer.RegionFileLocation region, int generation) throws IOException {
+        final Path regionDirectory = getRegionDirectory(region);
+        Files.createDirectories(regionDirectory);
+
+        return regionDirectory.resolve("r.%s.%s.%s.lease".formatted(region.getRegionX(), region.getRegionZ(), generation));
+    }
+
+    protected Path getDoneFile(WorldTransformer.RegionFileLocation region) {
+        return getRegionDirectory(region).resolve("r.%s.%s.done".formatted(region.getRegionX(), region.getRegionZ()));
+    }
+
+    private static long getLastModified(Path file) throws IOException {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (NoSuchFileException e) {
+            return 0L;  // deleted after the region was completed
+        }
+    }
+
+    @Override
+    public void close() {
+        renewer.shutdownNow();
+
+        for (Lease lease : leases.values()) release(lease.region);
+    }
+
+    protected static class Lease {
+        protected final WorldTransformer.RegionFileLocation region;
+        protected final int generation;
+        protected volatile boolean lost = false;
+
+        protected Lease(WorldTransformer.RegionFileLocation region, int generation) {
+            this.region = Objects.requireNonNull(region);
+            this.generation = generation;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package work.lclpnet.mcct.transform;
+
+import java.util.Objects;
+
+/**
+ * Aggregates the progress of concurrently transformed region files into a single {@link WorldTransformer.ProgressListener}.
+ * Every region contributes an equal share to the overall progress.
+ */
+class RegionProgressTracker {
+
+    private final WorldTransformer.ProgressListener listener;
+    private final double[] regionProgress;
+    private double total = 0D;
+
+    RegionProgressTracker(WorldTransformer.ProgressListener listener, int regionCount) {
+        this.listener = Objects.requireNonNull(listener);
+        this.regionProgress = new double[regionCount];
+    }
+
+    /**
+     * Update the progress of a single region.
+     * The listener is only notified if the overall progress increased.
+     * @param region The index of the region.
+     * @param progress The progress of the region, from 0 to 1.
+     */
+    synchronized void update(int region, double progress) {
+        progress = Math.min(1D, progress);
+
+        double delta = progress - regionProgress[region];
+        if (delta <= 0D) return;
+
+        regionProgress[region] = progress;
+        total += delta;
+
+        listener.updateProgress((float) (total / regionProgress.length));
+    }
+
+    void complete(int region) {
+        update(region, 1D);
+    }
+}
@@ -0,0 +1,239 @@
+package work.lclpnet.mcct.transform;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.util.math.ChunkPos;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import work.lclpnet.mcct.nbt.NbtSelection;
+import work.lclpnet.mcct.region.RegionReader;
+
+import javax.annotation.Nullable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * The chunks of a region, as seen by {@link IRegionTransformation}s.
+ * Chunks of the region are decoded on first access and kept until the chunk transformations of the region are applied,
+ * so every chunk is decoded only once. Modified chunks have to be marked with {@link #markDirty(ChunkPos)}.
+ *
+ * Chunks of the 8 neighboring regions can be read with {@link #getNeighborChunk(ChunkPos)}. They are read-only and kept
+ * in a small least recently used cache. Neighboring regions may be transformed at the same time by other threads,
+ * so their chunks may or may not be transformed already. The location of a neighbor chunk is read from its region file
+ * on every access, while holding the read lock of the region file, so that chunks are never read while they are written.
+ */
+public class RegionTransformContext implements AutoCloseable {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    /** The amount of decoded neighbor chunks that are kept; enough for the chunks along two borders of a region. */
+    public static final int DEFAULT_NEIGHBOR_CACHE_SIZE = 128;
+    /** Cached for neighbor chunks that don't exist. */
+    private static final NbtCompound MISSING = new NbtCompound();
+
+    public final WorldTransformer.RegionFileLocation region;
+    protected final List<ChunkPos> chunkPositions;
+    protected final Path regionDirectory;
+    protected final NbtSelection selection;
+    private final ChunkPipeline.Reader<ChunkData> reader;
+    private final Function<Path, ReadWriteLock> regionLocks;
+    private final Map<ChunkPos, ChunkData> chunks = new HashMap<>();
+    private final Map<ChunkPos, NbtCompound> neighborChunks;
+    /** The readers of the neighboring regions, by region coordinates; null if the region file does not exist. */
+    private final Map<ChunkPos, RegionReader> neighborReaders = new HashMap<>();
+
+    RegionTransformContext(WorldTransformer.RegionFileLocation region, List<ChunkPos> chunkPositions, Path regionDirectory,
+                           NbtSelection selection, ChunkPipeline.Reader<ChunkData> reader, Function<Path, ReadWriteLock> regionLocks) {
+        this(region, chunkPositions, regionDirectory, selection, reader, regionLocks, DEFAULT_NEIGHBOR_CACHE_SIZE);
+    }
+
+    RegionTransformContext(WorldTransformer.RegionFileLocation region, List<ChunkPos> chunkPositions, Path regionDirectory,
+                           NbtSelection selection, ChunkPipeline.Reader<ChunkData> reader, Function<Path, ReadWriteLock> regionLocks,
+                           int neighborCacheSize) {
+        this.region = Objects.requireNonNull(region);
+        this.chunkPositions = Collections.unmodifiableList(chunkPositions);
+        this.regionDirectory = Objects.requireNonNull(regionDirectory);
+        this.selection = Objects.requireNonNull(selection);
+        this.reader = Objects.requireNonNull(reader);
+        this.regionLocks = Objects.requireNonNull(regionLocks);
+
+        this.neighborChunks = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ChunkPos, NbtCompound> eldest) {
+                return size() > neighborCacheSize;
+            }
+        };
+    }
+
+    /**
+     * @return The positions of every chunk that exists in the region file.
+     */
+    public List<ChunkPos> getChunkPositions() {
+        return chunkPositions;
+    }
+
+    /**
+     * Checks whether a chunk is part of this region.
+     * @param chunkPos The position of the chunk.
+     * @return True, if the chunk is inside this region; it may not exist though.
+     */
+    public boolean isInRegion(ChunkPos chunkPos) {
+        return chunkPos.x >> 5 == region.getRegionX() && chunkPos.z >> 5 == region.getRegionZ();
+    }
+
+    /**
+     * Get the data of a chunk of this region, which may be modified.
+     * Call {@link #markDirty(ChunkPos)} after modifying it.
+     * @param chunkPos The position of the chunk.
+     * @return The chunk data, or null if the chunk does not exist or could not be read.
+     * @throws IllegalArgumentException If the chunk is not part of this region.
+     */
+    @Nullable
+    public synchronized NbtCompound getChunk(ChunkPos chunkPos) {
+        if (!isInRegion(chunkPos)) throw new IllegalArgumentException("Chunk %s is not part of region %s".formatted(chunkPos, region.file().getFileName()));
+
+        final ChunkData chunkData = loadChunk(chunkPos);
+        return chunkData != null ? chunkData.getCompound() : null;
+    }
+
+    /**
+     * Marks a chunk of this region as modified, so that it is written back to the region file.
+     * @param chunkPos The position of the chunk, which was retrieved with {@link #getChunk(ChunkPos)} before.
+     */
+    public synchronized void markDirty(ChunkPos chunkPos) {
+        final ChunkData chunkData = chunks.get(chunkPos);
+        if (chunkData == null) throw new IllegalStateException("Chunk %s was not loaded".formatted(chunkPos));
+
+        chunkData.modified = true;
+    }
+
+    /**
+     * Get the data of a chunk of this region or of one of the 8 neighboring regions.
+     * Chunks of neighboring regions must not be modified.
+     * @param chunkPos The position of the chunk.
+     * @return The chunk data, or null if the chunk does not exist or could not be read.
+     * @throws IllegalArgumentException If the chunk is neither part of this region, nor of a neighboring one.
+     */
+    @Nullable
+    public synchronized NbtCompound getNeighborChunk(ChunkPos chunkPos) {
+        if (isInRegion(chunkPos)) return getChunk(chunkPos);
+
+        final int regionX = chunkPos.x >> 5, regionZ = chunkPos.z >> 5;
+
+        if (Math.abs(regionX - region.getRegionX()) > 1 || Math.abs(regionZ - region.getRegionZ()) > 1)
+            throw new IllegalArgumentException("Chunk %s is not part of a neighboring region of %s".formatted(chunkPos, region.file().getFileName()));
+
+        NbtCompound compound = neighborChunks.get(chunkPos);
+
+        if (compound == null) {
+            compound = readNeighborChunk(chunkPos, new ChunkPos(regionX, regionZ));
+            neighborChunks.put(chunkPos, compound != null ? compound : MISSING);
+        }
+
+        return compound != MISSING ? compound : null;
+    }
+
+    @Nullable
+    private ChunkData loadChunk(ChunkPos chunkPos) {
+        if (chunks.containsKey(chunkPos)) return chunks.get(chunkPos);
+
+        ChunkData chunkData = null;
+
+        try {
+            chunkData = reader.read(chunkPos);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to read chunk {} of region file {}", chunkPos, region.file().getFileName(), e);
+        }
+
+        chunks.put(chunkPos, chunkData);
+        return chunkData;
+    }
+
+    @Nullable
+    private NbtCompound readNeighborChunk(ChunkPos chunkPos, ChunkPos regionPos) {
+        final Path file = regionDirectory.resolve("r.%s.%s.mca".formatted(regionPos.x, regionPos.z));
+
+        try {
+            RegionReader neighbor;
+
+            if (neighborReaders.containsKey(regionPos)) {
+                neighbor = neighborReaders.get(regionPos);
+            } else {
+                neighbor = Files.isRegularFile(file) ? RegionReader.open(file, regionDirectory) : null;
+                neighborReaders.put(regionPos, neighbor);
+            }
+
+            if (neighbor == null) return null;
+
+            // the neighbor may be written by another thread, so the header read when it was opened may be outdated
+            final DataInputStream input;
+            final Lock lock = regionLocks.apply(file).readLock();
+            lock.lock();
+
+            try {
+                input = neighbor.getCurrentChunkInputStream(chunkPos);
+            } finally {
+                lock.unlock();
+            }
+
+            if (input == null) return null;
+
+            try (input) {
+                return ChunkData.read(input, selection).getCompound();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read neighbor chunk {} of region file {}", chunkPos, region.file().getFileName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Removes a chunk that was decoded during the region transformations, so that it is passed to the chunk transformations.
+     * @param chunkPos The position of the chunk.
+     * @return The decoded chunk, or null if it was not decoded yet.
+     */
+    @Nullable
+    synchronized ChunkData takeChunk(ChunkPos chunkPos) {
+        return chunks.remove(chunkPos);
+    }
+
+    /**
+     * @return The positions of every chunk that was marked dirty and was not taken yet.
+     */
+    synchronized List<ChunkPos> getDirtyChunks() {
+        final List<ChunkPos> dirty = new ArrayList<>();
+
+        for (var entry : chunks.entrySet()) {
+            if (entry.getValue() != null && entry.getValue().modified) dirty.add(entry.getKey());
+        }
+
+        return dirty;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (RegionReader neighbor : neighborReaders.values()) {
+            if (neighbor == null) continue;
+
+            try {
+                neighbor.close();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to close a neighbor of region file {}", region.file().getFileName(), e);
+            }
+        }
+
+        neighborReaders.clear();
+        neighborChunks.clear();
+        chunks.clear();
+    }
+}
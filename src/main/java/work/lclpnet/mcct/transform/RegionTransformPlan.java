@@ -0,0 +1,131 @@
+package work.lclpnet.mcct.transform;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.util.math.ChunkPos;
+import work.lclpnet.mcct.region.RegionHeader;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A {@link IRegionTransformPlan} that evaluates the targets of every transformer once per region.
+ * For each transformer, the chunks it targets are stored as a mask of 1024 bits, one for every chunk of the region.
+ * Transformers that don't target the dimension or region, or none of its chunks and have no region transformations, are dropped completely.
+ * The transformations of the remaining transformers are fused once per region, see {@link TransformationSequence}.
+ * Chunks that are targeted by the same transformers share a single sequence, which is built when the plan is created.
+ */
+public class RegionTransformPlan implements IRegionTransformPlan {
+
+    private static final int WORDS = RegionHeader.CHUNK_COUNT / Long.SIZE;
+
+    private final WorldTransformer.RegionFileLocation region;
+    private final ChunkTransformer[] transformers;
+    /** The union of the chunk masks of every transformer. */
+    private final long[] targeted = new long[WORDS];
+    /** The fused transformations of the transformers that target a chunk, by chunk index, or null if no transformer does. */
+    private final TransformationSequence[] sequences = new TransformationSequence[RegionHeader.CHUNK_COUNT];
+
+    public RegionTransformPlan(Collection<ChunkTransformer> transformers, WorldTransformer.RegionFileLocation region) {
+        this.region = Objects.requireNonNull(region);
+
+        final List<ChunkTransformer> planned = new ArrayList<>(transformers.size());
+        final List<long[]> plannedMasks = new ArrayList<>(transformers.size());
+
+        for (ChunkTransformer transformer : transformers) {
+            if (!transformer.shouldTransformDimension(region.world()) || !transformer.shouldTransformRegion(region)) continue;
+
+            final long[] mask = new long[WORDS];
+            boolean any = false;
+
+            for (int z = 0; z < 32; z++) {
+                for (int x = 0; x < 32; x++) {
+                    if (!transformer.shouldTransformChunk(new ChunkPos(region.x() + x, region.y() + z), region)) continue;
+
+                    final int chunkIndex = x | (z << 5);
+                    mask[chunkIndex >>> 6] |= 1L << chunkIndex;
+                    any = true;
+                }
+            }
+
+            if (!any && !transformer.hasRegionTransformations()) continue;
+
+            planned.add(transformer);
+            plannedMasks.add(mask);
+
+            for (int i = 0; i < WORDS; i++) targeted[i] |= mask[i];
+        }
+
+        this.transformers = planned.toArray(new ChunkTransformer[0]);
+
+        // usually every chunk is targeted by the same transformers, so only a few distinct sequences are built
+        final Map<BitSet, TransformationSequence> distinct = new HashMap<>();
+
+        for (int chunkIndex = 0; chunkIndex < RegionHeader.CHUNK_COUNT; chunkIndex++) {
+            final int word = chunkIndex >>> 6;
+            final long bit = 1L << chunkIndex;
+
+            if ((targeted[word] & bit) == 0L) continue;
+
+            final BitSet targeting = new BitSet(planned.size());
+
+            for (int i = 0; i < planned.size(); i++) {
+                if ((plannedMasks.get(i)[word] & bit) != 0L) targeting.set(i);
+            }
+
+            sequences[chunkIndex] = distinct.computeIfAbsent(targeting, key -> TransformationSequence.of(
+                    key.stream().mapToObj(planned::get).toList()));
+        }
+    }
+
+    public WorldTransformer.RegionFileLocation getRegion() {
+        return region;
+    }
+
+    /**
+     * Checks whether any transformer targets a chunk of the region, or the region as a whole.
+     * @return True, if nothing in the region has to be transformed.
+     */
+    public boolean isEmpty() {
+        return transformers.length == 0;
+    }
+
+    @Override
+    public boolean hasRegionTransformations() {
+        for (ChunkTransformer transformer : transformers) {
+            if (transformer.hasRegionTransformations()) return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    public void transformRegion(RegionTransformContext ctx) {
+        for (ChunkTransformer transformer : transformers) {
+            if (transformer.hasRegionTransformations())
+                transformer.applyRegionTransformations(ctx);
+        }
+    }
+
+    @Override
+    public boolean shouldTransformChunk(ChunkPos chunkPos) {
+        final int chunkIndex = WorldTransformer.RegionFileLocation.getChunkIndex(chunkPos);
+        return (targeted[chunkIndex >>> 6] & (1L << chunkIndex)) != 0L;
+    }
+
+    @Override
+    public boolean transformChunk(NbtCompound chunkTag, ChunkPos chunkPos, @Nullable TransformMetrics metrics) {
+        final TransformationSequence sequence = sequences[WorldTransformer.RegionFileLocation.getChunkIndex(chunkPos)];
+        if (sequence == null) return false;
+
+        final ChunkTransformContext ctx = new ChunkTransformContext(chunkTag, chunkPos, region, metrics);
+        sequence.apply(ctx);
+
+        return ctx.finish();
+    }
+}
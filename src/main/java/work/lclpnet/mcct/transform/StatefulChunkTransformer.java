@@ -5,15 +5,25 @@ import net.minecraft.util.registry.RegistryKey;
 import net.minecraft.world.World;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiPredicate;
+import java.util.function.BinaryOperator;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 public class StatefulChunkTransformer<State> extends ChunkTransformer {
 
     protected State state;
+    @Nullable
+    protected final Supplier<State> stateSupplier;
+    @Nullable
+    protected final BinaryOperator<State> stateCombiner;
+    /** The states accumulated by each worker thread, if the state is per worker. */
+    protected final Map<Thread, WorkerState<State>> workerStates = new ConcurrentHashMap<>();
 
     protected StatefulChunkTransformer(Predicate<RegistryKey<World>> dimensionTarget,
                                        Predicate<WorldTransformer.RegionFileLocation> regionTarget,
@@ -21,38 +31,181 @@ public class StatefulChunkTransformer<State> extends ChunkTransformer {
                                        Set<IChunkTransformation> transformations,
                                        @Nullable Runnable onComplete,
                                        @Nullable State initialState) {
-        super(dimensionTarget, regionTarget, chunkTarget, transformations, onComplete);
+        this(dimensionTarget, regionTarget, chunkTarget, transformations, onComplete, initialState, null);
+    }
+
+    protected StatefulChunkTransformer(Predicate<RegistryKey<World>> dimensionTarget,
+                                       Predicate<WorldTransformer.RegionFileLocation> regionTarget,
+                                       BiPredicate<ChunkPos, WorldTransformer.RegionFileLocation> chunkTarget,
+                                       Set<IChunkTransformation> transformations,
+                                       @Nullable Runnable onComplete,
+                                       @Nullable State initialState,
+                                       @Nullable String fingerprint) {
+        this(dimensionTarget, regionTarget, chunkTarget, transformations, onComplete, initialState, fingerprint, null, null);
+    }
+
+    protected StatefulChunkTransformer(Predicate<RegistryKey<World>> dimensionTarget,
+                                       Predicate<WorldTransformer.RegionFileLocation> regionTarget,
+                                       BiPredicate<ChunkPos, WorldTransformer.RegionFileLocation> chunkTarget,
+                                       Set<IChunkTransformation> transformations,
+                                       @Nullable Runnable onComplete,
+                                       @Nullable State initialState,
+                                       @Nullable String fingerprint,
+                                       @Nullable Supplier<State> stateSupplier,
+                                       @Nullable BinaryOperator<State> stateCombiner) {
+        super(dimensionTarget, regionTarget, chunkTarget, transformations, onComplete, fingerprint);
         this.state = initialState;
+        this.stateSupplier = stateSupplier;
+        this.stateCombiner = stateCombiner;
     }
 
+    /**
+     * Get the state of this transformer.
+     * If the state is per worker, transformations get the state of the current worker thread,
+     * while {@link #afterComplete(Runnable) afterComplete} gets the combined state of every worker.
+     * <b>Careful!</b> A per worker state is only active while {@link #applyTransformations(ChunkTransformContext)} runs.
+     * Everywhere else, e.g. in {@link IRegionTransformation}s, the shared state is returned, which is not synchronized.
+     * @return The state.
+     */
     public State getState() {
-        return state;
+        final WorkerState<State> workerState = getActiveWorkerState();
+        return workerState != null ? workerState.state : state;
     }
 
+    /**
+     * Replace the state of this transformer.
+     * If the state is per worker and this is called by a transformation, only the state of the current worker thread is replaced.
+     * Everywhere else, the shared state is replaced, see {@link #getState()}.
+     * @param state The new state.
+     */
     public void setState(State state) {
-        this.state = state;
+        final WorkerState<State> workerState = getActiveWorkerState();
+
+        if (workerState != null) workerState.state = state;
+        else this.state = state;
+    }
+
+    /**
+     * Checks whether every worker thread accumulates its own state, which is combined when the transformation completes.
+     * @return True, if the state is per worker.
+     */
+    public boolean isPerWorkerState() {
+        return stateCombiner != null;
+    }
+
+    @Nullable
+    private WorkerState<State> getActiveWorkerState() {
+        if (stateCombiner == null) return null;
+
+        final WorkerState<State> workerState = workerStates.get(Thread.currentThread());
+        return workerState != null && workerState.active ? workerState : null;
+    }
+
+    /**
+     * @return False, if the state is per worker, as the state of the worker is only active during {@link #applyTransformations(ChunkTransformContext)}.
+     */
+    @Override
+    public boolean canFuseTransformations() {
+        return stateCombiner == null;
+    }
+
+    @Override
+    public void applyTransformations(ChunkTransformContext ctx) {
+        if (stateCombiner == null) {
+            super.applyTransformations(ctx);
+            return;
+        }
+
+        // only the first chunk of every worker thread creates its state; get() never locks, unlike computeIfAbsent()
+        final Thread thread = Thread.currentThread();
+        WorkerState<State> workerState = workerStates.get(thread);
+
+        if (workerState == null) {
+            workerState = workerStates.computeIfAbsent(thread, t -> new WorkerState<>(Objects.requireNonNull(stateSupplier).get()));
+        }
+
+        workerState.active = true;
+
+        try {
+            super.applyTransformations(ctx);
+        } finally {
+            workerState.active = false;
+        }
+    }
+
+    @Override
+    public void complete() {
+        if (stateCombiner != null) combineStates();
+
+        super.complete();
+    }
+
+    /**
+     * Combine the states of every worker thread into the state of this transformer.
+     * Afterwards, the worker states are discarded, so that the next transformation starts with fresh worker states.
+     */
+    protected void combineStates() {
+        final BinaryOperator<State> combiner = Objects.requireNonNull(stateCombiner);
+        State combined = state;
+
+        for (WorkerState<State> workerState : workerStates.values())
+            combined = combined == null ? workerState.state : combiner.apply(combined, workerState.state);
+
+        workerStates.clear();
+        state = combined;
+    }
+
+    /**
+     * The state accumulated by a single worker thread.
+     * It is only accessed by its own thread, until the states are combined.
+     */
+    protected static class WorkerState<State> {
+        protected State state;
+        protected boolean active = false;
+
+        protected WorkerState(State state) {
+            this.state = state;
+        }
     }
 
     public static class Builder<State> {
         private Predicate<RegistryKey<World>> dimensionTarget = dimension -> true;
         private Predicate<WorldTransformer.RegionFileLocation> regionTarget = region -> true;
         private BiPredicate<ChunkPos, WorldTransformer.RegionFileLocation> chunkTarget = (chunk, region) -> true;
-        private final Set<IChunkTransformation> transformations = new HashSet<>();
+        private final Set<IChunkTransformation> transformations = new LinkedHashSet<>();
         private Runnable onComplete = null;
         private State initialState = null;
+        private Supplier<State> stateSupplier = null;
+        private BinaryOperator<State> stateCombiner = null;
+        private String fingerprint = null;
+        private boolean customTargets = false;
 
         public Builder<State> targetDimensions(Predicate<RegistryKey<World>> dimensionTarget) {
             this.dimensionTarget = Objects.requireNonNull(dimensionTarget);
+            this.customTargets = true;
             return this;
         }
 
         public Builder<State> targetRegions(Predicate<WorldTransformer.RegionFileLocation> regionTarget) {
             this.regionTarget = Objects.requireNonNull(regionTarget);
+            this.customTargets = true;
             return this;
         }
 
         public Builder<State> targetChunks(BiPredicate<ChunkPos, WorldTransformer.RegionFileLocation> chunkTarget) {
             this.chunkTarget = Objects.requireNonNull(chunkTarget);
+            this.customTargets = true;
+            return this;
+        }
+
+        /**
+         * Identify this transformer, including its targets, across game restarts.
+         * @param fingerprint The fingerprint of the transformer.
+         * @return This builder.
+         * @see ChunkTransformer.Builder#fingerprint(String)
+         */
+        public Builder<State> fingerprint(String fingerprint) {
+            this.fingerprint = Objects.requireNonNull(fingerprint);
             return this;
         }
 
@@ -71,8 +224,26 @@ public class StatefulChunkTransformer<State> extends ChunkTransformer {
             return this;
         }
 
+        /**
+         * Let every worker thread accumulate its own state, like a {@link java.util.stream.Collector}.
+         * No locking is needed in the transformations, so stateful transformers can run on multiple region threads.
+         * Before {@link #afterComplete(Runnable)} is called, the worker states are combined, starting with the initial state, if any.
+         * @param supplier Creates the empty state of a worker thread.
+         * @param combiner Combines two states into one. It may return one of its arguments, after merging the other one into it.
+         * @return This builder.
+         */
+        public Builder<State> perWorkerState(Supplier<State> supplier, BinaryOperator<State> combiner) {
+            this.stateSupplier = Objects.requireNonNull(supplier);
+            this.stateCombiner = Objects.requireNonNull(combiner);
+            return this;
+        }
+
         public StatefulChunkTransformer<State> create() {
-            return new StatefulChunkTransformer<>(dimensionTarget, regionTarget, chunkTarget, transformations, onComplete, initialState);
+            String fingerprint = this.fingerprint;
+            if (fingerprint == null && !customTargets) fingerprint = deriveFingerprint(transformations);
+
+            return new StatefulChunkTransformer<>(dimensionTarget, regionTarget, chunkTarget, transformations, onComplete, initialState,
+                    fingerprint, stateSupplier, stateCombiner);
         }
     }
 }
@@ -0,0 +1,106 @@
+package work.lclpnet.mcct.transform;
+
+import net.minecraft.util.math.ChunkPos;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import work.lclpnet.mcct.region.RegionHeader;
+import work.lclpnet.mcct.region.StringIndex;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+
+/**
+ * A chunk target that only accepts chunks which may contain a string accepted by a predicate, according to the {@link StringIndex}.
+ * Chunks of regions without an index, and chunks that were written since they were indexed, are always accepted.
+ * Chunks that are not accepted are not even read.
+ *
+ * <br><br>
+ * Example:
+ * <pre>
+ * {@code
+ * StringFindReplaceChunkTransformer transformation = new StringFindReplaceChunkTransformer("minecraft:stone_slab", "minecraft:oak_slab");
+ *
+ * new ChunkTransformer.Builder()
+ *         .targetChunks(new StringIndexTarget(transformation::mayModify))
+ *         .addTransformation(transformation)
+ *         .fingerprint("stone_slab -> oak_slab")
+ *         .create();
+ * }
+ * </pre>
+ *
+ * The predicate only sees the strings as they were before the transformation,
+ * so it must not be combined with transformations that produce the strings another transformation searches for.
+ */
+public class StringIndexTarget implements BiPredicate<ChunkPos, WorldTransformer.RegionFileLocation> {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    protected final Predicate<String> predicate;
+    /** The matching chunks of each region, until the region file or its index is modified. */
+    protected final Map<Path, RegionMatches> matches = new ConcurrentHashMap<>();
+
+    /**
+     * Create a new chunk target.
+     * @param predicate Whether a string may be modified by the transformation.
+     */
+    public StringIndexTarget(Predicate<String> predicate) {
+        this.predicate = Objects.requireNonNull(predicate);
+    }
+
+    @Override
+    public boolean test(ChunkPos chunkPos, WorldTransformer.RegionFileLocation region) {
+        final BitSet chunks = getMatchingChunks(region);
+        return chunks == null || chunks.get(WorldTransformer.RegionFileLocation.getChunkIndex(chunkPos));
+    }
+
+    /**
+     * Get the chunks of a region, that may contain a matching string.
+     * @param region The region.
+     * @return The matching chunks, or null if every chunk may match.
+     */
+    @Nullable
+    protected BitSet getMatchingChunks(WorldTransformer.RegionFileLocation region) {
+        final Path indexFile = StringIndex.getFile(region.file());
+        final long regionModified, indexModified;
+
+        try {
+            if (!Files.isRegularFile(indexFile)) return null;
+
+            regionModified = Files.getLastModifiedTime(region.file()).toMillis();
+            indexModified = Files.getLastModifiedTime(indexFile).toMillis();
+        } catch (IOException e) {
+            return null;
+        }
+
+        // the chunk target is tested for every chunk of a region, so the index is only queried once per region
+        final RegionMatches cached = matches.get(region.file());
+        if (cached != null && cached.regionModified() == regionModified && cached.indexModified() == indexModified)
+            return cached.chunks();
+
+        final StringIndex index = StringIndex.load(indexFile);
+        if (index == null) return null;
+
+        final BitSet chunks;
+
+        try {
+            chunks = index.findChunks(predicate, RegionHeader.read(region.file()));
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read the header of {}, can't use its string index", region.file().getFileName(), e);
+            return null;
+        }
+
+        matches.put(region.file(), new RegionMatches(regionModified, indexModified, chunks));
+
+        return chunks;
+    }
+
+    protected record RegionMatches(long regionModified, long indexModified, BitSet chunks) {}
+}
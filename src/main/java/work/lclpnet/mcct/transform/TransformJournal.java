@@ -0,0 +1,355 @@
+package work.lclpnet.mcct.transform;
+
+import com.google.common.io.CountingInputStream;
+import net.minecraft.util.math.ChunkPos;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * An append-only file that records which chunks and regions of a world were already transformed.
+ * If a transformation is interrupted, the next run with the same fingerprint skips everything that was recorded,
+ * without reading the chunk data again.
+ *
+ * A chunk is recorded after it was transformed and, if it was modified, after it was written to its region file.
+ * Every record is flushed to the file system immediately, so it survives a crash of the game.
+ * A partially written record at the end of the file is discarded when the journal is opened.
+ *
+ * Chunks that are written in place, but only journaled after their region file was synced, are announced by a region
+ * record that is synced before the first write. If the run is interrupted before these chunks were journaled,
+ * the region is recognized as interrupted, see {@link #hasUnjournaledWrites(WorldTransformer.RegionFileLocation)}.
+ */
+public class TransformJournal implements AutoCloseable {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final int MAGIC = 0x4D43434A;  // MCCJ
+    private static final int VERSION = 1;
+    private static final byte CHUNK_RECORD = 1, REGION_RECORD = 2, WRITES_STARTED_RECORD = 3, WRITES_JOURNALED_RECORD = 4;
+
+    protected final Path file;
+    protected final String fingerprint;
+    protected final Map<RegionKey, RegionEntry> regions = new HashMap<>();
+    protected FileChannel channel = null;
+    protected OutputStream output = null;
+    protected int resumedChunks = 0, resumedRegions = 0;
+    protected boolean failed = false, incomplete = false;
+
+    protected TransformJournal(Path file, String fingerprint) {
+        this.file = Objects.requireNonNull(file);
+        this.fingerprint = Objects.requireNonNull(fingerprint);
+    }
+
+    /**
+     * Open a journal, resuming the records of a previous run if it used the same fingerprint.
+     * Journals of other fingerprints are discarded.
+     * @param file The journal file.
+     * @param fingerprint The fingerprint of the transformation, see {@link ILevelTransformerManager#getFingerprint()}.
+     * @return The opened journal.
+     * @throws IOException If the journal could not be created.
+     */
+    public static TransformJournal open(Path file, String fingerprint) throws IOException {
+        TransformJournal journal = new TransformJournal(file, fingerprint);
+        journal.load();
+        return journal;
+    }
+
+    protected void load() throws IOException {
+        Files.createDirectories(file.getParent());
+
+        long validLength = Files.exists(file) ? readRecords() : -1L;
+
+        if (validLength < 0L) {
+            regions.clear();
+            resumedChunks = resumedRegions = 0;
+
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DataOutputStream headerOut = new DataOutputStream(header);
+            headerOut.writeInt(MAGIC);
+            headerOut.writeInt(VERSION);
+            headerOut.writeUTF(fingerprint);
+
+            Files.write(file, header.toByteArray());
+        } else {
+            // drop a record that was only partially written when the game crashed
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                if (channel.size() > validLength) channel.truncate(validLength);
+            }
+
+            if (resumedChunks > 0) LOGGER.info("Resuming transformation, skipping {} regions and {} chunks that were already transformed", resumedRegions, resumedChunks);
+        }
+
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        output = Channels.newOutputStream(channel);
+    }
+
+    /**
+     * Read the records of an existing journal.
+     * @return The length of the valid part of the journal, or -1 if the journal can't be resumed.
+     */
+    private long readRecords() throws IOException {
+        try (CountingInputStream counter = new CountingInputStream(new BufferedInputStream(Files.newInputStream(file)));
+             DataInputStream in = new DataInputStream(counter)) {
+
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) return -1L;
+
+                if (!fingerprint.equals(in.readUTF())) {
+                    LOGGER.info("Transformers have changed since the last run, starting from the beginning");
+                    return -1L;
+                }
+            } catch (EOFException e) {
+                return -1L;
+            }
+
+            long validLength = counter.getCount();
+
+            try {
+                while (true) {
+                    byte type = in.readByte();
+                    RegionKey key = new RegionKey(in.readUTF(), in.readInt(), in.readInt());
+
+                    switch (type) {
+                        case CHUNK_RECORD -> {
+                            int index = in.readUnsignedShort();
+                            if (index >= 1024) return validLength;
+
+                            RegionEntry entry = regions.computeIfAbsent(key, k -> new RegionEntry());
+                            if (!entry.chunks.get(index)) {
+                                entry.chunks.set(index);
+                                resumedChunks++;
+                            }
+                        }
+                        case REGION_RECORD -> {
+                            RegionEntry entry = regions.computeIfAbsent(key, k -> new RegionEntry());
+                            if (!entry.complete) {
+                                entry.complete = true;
+                                resumedRegions++;
+                            }
+                        }
+                        case WRITES_STARTED_RECORD -> regions.computeIfAbsent(key, k -> new RegionEntry()).unjournaledWrites = true;
+                        case WRITES_JOURNALED_RECORD -> regions.computeIfAbsent(key, k -> new RegionEntry()).unjournaledWrites = false;
+                        default -> {
+                            return validLength;
+                        }
+                    }
+
+                    validLength = counter.getCount();
+                }
+            } catch (EOFException e) {
+                return validLength;
+            }
+        }
+    }
+
+    /**
+     * @return The amount of chunks that were recorded by previous runs.
+     */
+    public synchronized int getResumedChunkCount() {
+        return resumedChunks;
+    }
+
+    /**
+     * Checks whether a region was transformed completely.
+     * @param region The region.
+     * @return True, if every chunk of the region was transformed.
+     */
+    public synchronized boolean isRegionComplete(WorldTransformer.RegionFileLocation region) {
+        RegionEntry entry = regions.get(RegionKey.of(region));
+        return entry != null && entry.complete;
+    }
+
+    /**
+     * Checks whether any chunk of a region was recorded, by this or by a previous run.
+     * @param region The region.
+     * @return True, if at least one chunk of the region was transformed, or the region is complete.
+     */
+    public synchronized boolean isRegionStarted(WorldTransformer.RegionFileLocation region) {
+        RegionEntry entry = regions.get(RegionKey.of(region));
+        return entry != null && (entry.complete || entry.unjournaledWrites || !entry.chunks.isEmpty());
+    }
+
+    /**
+     * Checks whether chunks of a region may have been written in place by an interrupted run, without being journaled.
+     * These chunks can't be told apart from the chunks that were not transformed yet.
+     * @param region The region.
+     * @return True, if the writes to the region were started, but never journaled.
+     */
+    public synchronized boolean hasUnjournaledWrites(WorldTransformer.RegionFileLocation region) {
+        RegionEntry entry = regions.get(RegionKey.of(region));
+        return entry != null && !entry.complete && entry.unjournaledWrites;
+    }
+
+    /**
+     * Checks whether a chunk was transformed.
+     * @param region The region the chunk is a part of.
+     * @param chunkPos The position of the chunk.
+     * @return True, if the chunk was transformed and written.
+     */
+    public synchronized boolean isChunkComplete(WorldTransformer.RegionFileLocation region, ChunkPos chunkPos) {
+        RegionEntry entry = regions.get(RegionKey.of(region));
+        return entry != null && (entry.complete || entry.chunks.get(WorldTransformer.RegionFileLocation.getChunkIndex(chunkPos)));
+    }
+
+    /**
+     * Record that a chunk was transformed and, if it was modified, written to its region file.
+     * @param region The region the chunk is a part of.
+     * @param chunkPos The position of the chunk.
+     */
+    public synchronized void completeChunk(WorldTransformer.RegionFileLocation region, ChunkPos chunkPos) {
+        final RegionKey key = RegionKey.of(region);
+        final int index = WorldTransformer.RegionFileLocation.getChunkIndex(chunkPos);
+
+        RegionEntry entry = regions.computeIfAbsent(key, k -> new RegionEntry());
+        if (entry.chunks.get(index)) return;
+
+        entry.chunks.set(index);
+
+        append(CHUNK_RECORD, key, index);
+    }
+
+    /**
+     * Record that a region was transformed completely, if every given chunk was recorded.
+     * @param region The region.
+     * @param chunks The chunks of the region that were supposed to be transformed.
+     * @return True, if the region was recorded. False, if any chunk is missing, e.g. because its transformation failed.
+     */
+    public synchronized boolean completeRegion(WorldTransformer.RegionFileLocation region, Collection<ChunkPos> chunks) {
+        final RegionKey key = RegionKey.of(region);
+        RegionEntry entry = regions.computeIfAbsent(key, k -> new RegionEntry());
+        if (entry.complete) return true;
+
+        for (ChunkPos chunkPos : chunks) {
+            if (!entry.chunks.get(WorldTransformer.RegionFileLocation.getChunkIndex(chunkPos))) {
+                incomplete = true;
+                return false;
+            }
+        }
+
+        entry.complete = true;
+
+        append(REGION_RECORD, key, -1);
+        return true;
+    }
+
+    /**
+     * Record that chunks of a region are about to be written in place, but will only be journaled after the region file was synced.
+     * The record is synced to disk before this method returns, so that it is always durable before the chunks are.
+     * @param region The region.
+     * @throws IOException If the record could not be synced. The chunks must not be written in that case.
+     */
+    public synchronized void startUnjournaledWrites(WorldTransformer.RegionFileLocation region) throws IOException {
+        final RegionKey key = RegionKey.of(region);
+
+        RegionEntry entry = regions.computeIfAbsent(key, k -> new RegionEntry());
+        entry.unjournaledWrites = true;
+
+        append(WRITES_STARTED_RECORD, key, -1);
+
+        if (failed) throw new IOException("The transformation journal %s can't be written".formatted(file));
+
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            failed = true;
+            throw e;
+        }
+    }
+
+    /**
+     * Record that the chunks announced by {@link #startUnjournaledWrites(WorldTransformer.RegionFileLocation)} were journaled.
+     * @param region The region.
+     */
+    public synchronized void finishUnjournaledWrites(WorldTransformer.RegionFileLocation region) {
+        final RegionKey key = RegionKey.of(region);
+
+        RegionEntry entry = regions.get(key);
+        if (entry == null || !entry.unjournaledWrites) return;
+
+        entry.unjournaledWrites = false;
+
+        append(WRITES_JOURNALED_RECORD, key, -1);
+    }
+
+    /**
+     * Mark the transformation as incomplete, so that the journal is kept when the transformation finishes.
+     */
+    public synchronized void markIncomplete() {
+        incomplete = true;
+    }
+
+    private void append(byte type, RegionKey key, int chunkIndex) {
+        if (failed) return;
+
+        try {
+            // write each record in a single call, so that a crash can only leave a partial record at the end
+            ByteArrayOutputStream record = new ByteArrayOutputStream(32);
+            DataOutputStream recordOut = new DataOutputStream(record);
+            recordOut.writeByte(type);
+            recordOut.writeUTF(key.world());
+            recordOut.writeInt(key.x());
+            recordOut.writeInt(key.z());
+            if (chunkIndex >= 0) recordOut.writeShort(chunkIndex);
+
+            output.write(record.toByteArray());
+            output.flush();
+        } catch (IOException e) {
+            // the transformation itself is not affected; it just can't be resumed
+            LOGGER.warn("Failed to write transformation journal {}, an interrupted transformation can't be resumed", file, e);
+            failed = true;
+        }
+    }
+
+    /**
+     * Finish the journal after the transformation completed.
+     * The journal is deleted, unless some chunks could not be transformed. In that case, the next run will retry them.
+     * @throws IOException If the journal could not be deleted.
+     */
+    public synchronized void finish() throws IOException {
+        close();
+
+        if (incomplete && !failed) {
+            LOGGER.info("Some chunks could not be transformed, keeping the journal to retry them in the next run");
+            return;
+        }
+
+        Files.deleteIfExists(file);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (output == null) return;
+
+        output.close();
+        output = null;
+        channel = null;
+    }
+
+    protected record RegionKey(String world, int x, int z) {
+        static RegionKey of(WorldTransformer.RegionFileLocation region) {
+            return new RegionKey(region.world().getValue().toString(), region.getRegionX(), region.getRegionZ());
+        }
+    }
+
+    protected static class RegionEntry {
+        protected final BitSet chunks = new BitSet(1024);
+        protected boolean complete = false;
+        protected boolean unjournaledWrites = false;
+    }
+}
@@ -0,0 +1,438 @@
+package work.lclpnet.mcct.transform;
+
+import com.google.common.cache.CacheStats;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import net.minecraft.util.math.ChunkPos;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts what a {@link WorldTransformer} did during a transformation and where the time was spent.
+ * The counters are updated concurrently by the region and pipeline threads.
+ *
+ * Stage times are summed over all threads, so with parallel workers they can exceed the elapsed time.
+ * The stages of a chunk are:
+ * <ol>
+ *     <li>read - fetching the compressed chunk data from the region file</li>
+ *     <li>parse - decompressing and parsing the chunk data</li>
+ *     <li>transform - applying the transformations, see {@link #getTransformationStats()} for the split</li>
+ *     <li>serialize - serializing and compressing modified chunks</li>
+ *     <li>write - writing modified chunks to the region file</li>
+ * </ol>
+ */
+public class TransformMetrics {
+
+    public static final int SLOWEST_CHUNK_COUNT = 10;
+
+    protected final long startTime = System.currentTimeMillis();
+    protected final long startNanos = System.nanoTime();
+    protected volatile long endNanos = -1L;
+    protected volatile int dimensions = 0;
+    protected final LongAdder regionsTransformed = new LongAdder(), regionsSkipped = new LongAdder(), regionsFailed = new LongAdder();
+    protected final LongAdder chunksTransformed = new LongAdder(), chunksWritten = new LongAdder(),
+            chunksSkipped = new LongAdder(), chunksFailed = new LongAdder();
+    protected final LongAdder readNanos = new LongAdder(), parseNanos = new LongAdder(), transformNanos = new LongAdder(),
+            serializeNanos = new LongAdder(), writeNanos = new LongAdder();
+    protected final LongAdder bytesRead = new LongAdder(), bytesWritten = new LongAdder();
+    protected final Map<IChunkTransformation, TransformationStats> transformationStats = new ConcurrentHashMap<>();
+    protected final PriorityQueue<SlowChunk> slowestChunks = new PriorityQueue<>(Comparator.comparingLong(SlowChunk::nanos));
+    protected volatile long slowChunkThreshold = 0L;
+    protected volatile double progress = 0D;
+
+    void setDimensions(int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    void regionTransformed() {
+        regionsTransformed.increment();
+    }
+
+    void regionSkipped() {
+        regionsSkipped.increment();
+    }
+
+    void regionFailed() {
+        regionsFailed.increment();
+    }
+
+    void chunkTransformed() {
+        chunksTransformed.increment();
+    }
+
+    void chunkWritten() {
+        chunksWritten.increment();
+    }
+
+    void chunksSkipped(int amount) {
+        chunksSkipped.add(amount);
+    }
+
+    void chunksFailed(int amount) {
+        chunksFailed.add(amount);
+    }
+
+    void readTime(long nanos) {
+        readNanos.add(nanos);
+    }
+
+    void parseTime(long nanos, long bytes) {
+        parseNanos.add(nanos);
+        bytesRead.add(bytes);
+    }
+
+    void transformTime(long nanos) {
+        transformNanos.add(nanos);
+    }
+
+    void transformationTime(IChunkTransformation transformation, long nanos) {
+        transformationStats.computeIfAbsent(transformation, TransformationStats::new).record(nanos);
+    }
+
+    void serializeTime(long nanos, long bytes) {
+        serializeNanos.add(nanos);
+        bytesWritten.add(bytes);
+    }
+
+    void writeTime(long nanos) {
+        writeNanos.add(nanos);
+    }
+
+    /**
+     * Record the total processing time of a chunk, to find the slowest chunks.
+     */
+    void chunkCompleted(WorldTransformer.RegionFileLocation region, ChunkPos chunkPos, long nanos) {
+        // most chunks are faster than the slowest ones, so avoid locking for them
+        if (nanos <= slowChunkThreshold) return;
+
+        synchronized (slowestChunks) {
+            slowestChunks.add(new SlowChunk(region.world().getValue().toString(), chunkPos.x, chunkPos.z, nanos));
+
+            if (slowestChunks.size() > SLOWEST_CHUNK_COUNT) {
+                slowestChunks.poll();
+                slowChunkThreshold = slowestChunks.element().nanos();
+            }
+        }
+    }
+
+    void setProgress(double progress) {
+        this.progress = progress;
+    }
+
+    void finish() {
+        progress = 1D;
+        endNanos = System.nanoTime();
+    }
+
+    /**
+     * @return The time the transformation started, in milliseconds since the epoch.
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return The duration of the transformation in milliseconds, up to now if it is still running.
+     */
+    public long getElapsedMillis() {
+        long end = endNanos;
+        if (end == -1L) end = System.nanoTime();
+
+        return (end - startNanos) / 1_000_000L;
+    }
+
+    public boolean isFinished() {
+        return endNanos != -1L;
+    }
+
+    /**
+     * @return The amount of dimensions that are transformed.
+     */
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    /**
+     * @return The amount of region files that were processed.
+     */
+    public long getRegionsTransformed() {
+        return regionsTransformed.sum();
+    }
+
+    /**
+     * @return The amount of region files that were skipped, because they were already transformed by a previous run.
+     */
+    public long getRegionsSkipped() {
+        return regionsSkipped.sum();
+    }
+
+    /**
+     * @return The amount of region files that could not be read.
+     */
+    public long getRegionsFailed() {
+        return regionsFailed.sum();
+    }
+
+    /**
+     * @return The amount of chunks that were passed to the transformers.
+     */
+    public long getChunksTransformed() {
+        return chunksTransformed.sum();
+    }
+
+    /**
+     * @return The amount of chunks that were modified and written back.
+     */
+    public long getChunksWritten() {
+        return chunksWritten.sum();
+    }
+
+    /**
+     * @return The amount of chunks that were skipped without reading them, because they were already transformed.
+     */
+    public long getChunksSkipped() {
+        return chunksSkipped.sum();
+    }
+
+    /**
+     * @return The amount of chunks that could not be read, transformed or written.
+     */
+    public long getChunksFailed() {
+        return chunksFailed.sum();
+    }
+
+    /**
+     * @return The amount of decompressed bytes that were parsed.
+     */
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    /**
+     * @return The amount of uncompressed bytes that were serialized.
+     */
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    public long getReadMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(readNanos.sum());
+    }
+
+    public long getParseMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(parseNanos.sum());
+    }
+
+    public long getTransformMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(transformNanos.sum());
+    }
+
+    public long getSerializeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(serializeNanos.sum());
+    }
+
+    public long getWriteMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(writeNanos.sum());
+    }
+
+    /**
+     * @return The share of transformed chunks that were modified, from 0 to 1.
+     */
+    public double getDirtyRatio() {
+        long transformed = getChunksTransformed();
+        return transformed > 0 ? getChunksWritten() / (double) transformed : 0D;
+    }
+
+    /**
+     * Get the time spent in each transformation, ordered from the slowest to the fastest transformation.
+     * @return The transformation statistics.
+     */
+    public List<TransformationStats> getTransformationStats() {
+        final List<TransformationStats> stats = new ArrayList<>(transformationStats.values());
+        stats.sort(Comparator.comparingLong(TransformationStats::getTotalNanos).reversed());
+        return stats;
+    }
+
+    /**
+     * @return The chunks that took the longest to process, from the slowest to the fastest.
+     */
+    public List<SlowChunk> getSlowestChunks() {
+        final List<SlowChunk> chunks;
+        synchronized (slowestChunks) {
+            chunks = new ArrayList<>(slowestChunks);
+        }
+
+        chunks.sort(Comparator.comparingLong(SlowChunk::nanos).reversed());
+        return chunks;
+    }
+
+    /**
+     * Take a snapshot of the current state, e.g. to display the throughput and the remaining time.
+     * @return The snapshot.
+     */
+    public Snapshot snapshot() {
+        final long elapsed = getElapsedMillis();
+        final long chunks = getChunksTransformed();
+        final double progress = this.progress;
+
+        final double chunksPerSecond = elapsed > 0L ? chunks * 1000D / elapsed : 0D;
+        final long eta = progress > 0D && progress < 1D ? (long) (elapsed * (1D - progress) / progress) : (progress >= 1D ? 0L : -1L);
+
+        return new Snapshot(elapsed, progress, chunks, getChunksWritten(), chunksPerSecond, eta);
+    }
+
+    /**
+     * Create a machine-readable summary of the metrics.
+     * @return The summary as json object.
+     */
+    public JsonObject toJson() {
+        final JsonObject json = new JsonObject();
+        json.addProperty("startTime", getStartTime());
+        json.addProperty("elapsedMillis", getElapsedMillis());
+        json.addProperty("finished", isFinished());
+        json.addProperty("dimensions", getDimensions());
+
+        JsonObject regions = new JsonObject();
+        regions.addProperty("transformed", getRegionsTransformed());
+        regions.addProperty("skipped", getRegionsSkipped());
+        regions.addProperty("failed", getRegionsFailed());
+        json.add("regions", regions);
+
+        JsonObject chunks = new JsonObject();
+        chunks.addProperty("transformed", getChunksTransformed());
+        chunks.addProperty("written", getChunksWritten());
+        chunks.addProperty("skipped", getChunksSkipped());
+        chunks.addProperty("failed", getChunksFailed());
+        chunks.addProperty("dirtyRatio", getDirtyRatio());
+        chunks.addProperty("perSecond", snapshot().chunksPerSecond());
+        json.add("chunks", chunks);
+
+        JsonObject bytes = new JsonObject();
+        bytes.addProperty("read", getBytesRead());
+        bytes.addProperty("written", getBytesWritten());
+        json.add("bytes", bytes);
+
+        JsonObject stages = new JsonObject();
+        stages.addProperty("readMillis", getReadMillis());
+        stages.addProperty("parseMillis", getParseMillis());
+        stages.addProperty("transformMillis", getTransformMillis());
+        stages.addProperty("serializeMillis", getSerializeMillis());
+        stages.addProperty("writeMillis", getWriteMillis());
+        json.add("stages", stages);
+
+        JsonArray transformations = new JsonArray();
+        for (TransformationStats stats : getTransformationStats()) {
+            JsonObject entry = new JsonObject();
+            entry.addProperty("name", stats.getName());
+            entry.addProperty("calls", stats.getCalls());
+            entry.addProperty("totalMillis", TimeUnit.NANOSECONDS.toMillis(stats.getTotalNanos()));
+            entry.addProperty("averageMicros", stats.getAverageMicros());
+
+            final CacheStats cacheStats = stats.getCacheStats();
+            if (cacheStats != null) {
+                JsonObject cache = new JsonObject();
+                cache.addProperty("hits", cacheStats.hitCount());
+                cache.addProperty("misses", cacheStats.missCount());
+                cache.addProperty("hitRate", cacheStats.hitRate());
+                cache.addProperty("evictions", cacheStats.evictionCount());
+                entry.add("cache", cache);
+            }
+
+            transformations.add(entry);
+        }
+        json.add("transformations", transformations);
+
+        JsonArray slowest = new JsonArray();
+        for (SlowChunk chunk : getSlowestChunks()) {
+            JsonObject entry = new JsonObject();
+            entry.addProperty("dimension", chunk.dimension());
+            entry.addProperty("x", chunk.x());
+            entry.addProperty("z", chunk.z());
+            entry.addProperty("millis", chunk.nanos() / 1_000_000D);
+            slowest.add(entry);
+        }
+        json.add("slowestChunks", slowest);
+
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return toJson().toString();
+    }
+
+    /**
+     * The time spent in a single transformation.
+     */
+    public static class TransformationStats {
+
+        protected final IChunkTransformation transformation;
+        protected final String name;
+        protected final LongAdder calls = new LongAdder(), nanos = new LongAdder();
+
+        protected TransformationStats(IChunkTransformation transformation) {
+            this.transformation = transformation;
+            this.name = transformation.getName();
+        }
+
+        void record(long nanos) {
+            this.calls.increment();
+            this.nanos.add(nanos);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        public long getTotalNanos() {
+            return nanos.sum();
+        }
+
+        public double getAverageMicros() {
+            long calls = getCalls();
+            return calls > 0 ? getTotalNanos() / 1000D / calls : 0D;
+        }
+
+        /**
+         * @return The current statistics of the cache of the transformation, or null if it does not use a cache.
+         * @see IChunkTransformation#getCacheStats()
+         */
+        @Nullable
+        public CacheStats getCacheStats() {
+            return transformation.getCacheStats();
+        }
+    }
+
+    /**
+     * A chunk that took long to process.
+     * @param dimension The dimension of the chunk.
+     * @param x The x coordinate of the chunk.
+     * @param z The z coordinate of the chunk.
+     * @param nanos The time spent processing the chunk.
+     */
+    public record SlowChunk(String dimension, int x, int z, long nanos) {}
+
+    /**
+     * The state of a transformation at some point in time.
+     * @param elapsedMillis The time since the transformation started.
+     * @param progress The overall progress, from 0 to 1.
+     * @param chunksTransformed The amount of chunks passed to the transformers so far.
+     * @param chunksWritten The amount of modified chunks written so far.
+     * @param chunksPerSecond The average amount of transformed chunks per second.
+     * @param etaMillis The estimated remaining time, or -1 if it is not known yet.
+     */
+    public record Snapshot(long elapsedMillis, double progress, long chunksTransformed, long chunksWritten,
+                           double chunksPerSecond, long etaMillis) {}
+}
@@ -0,0 +1,386 @@
+package work.lclpnet.mcct.transform;
+
+import javax.annotation.Nullable;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Options that control how a {@link WorldTransformer} processes a world.
+ * Instances are immutable; use the {@link Builder} to create them.
+ */
+public class TransformOptions {
+
+    public static final TransformOptions DEFAULT = new Builder().create();
+
+    protected final int parallelism;
+    protected final int readQueueCapacity, writeQueueCapacity;
+    protected final boolean journal;
+    protected final boolean skipUnchanged;
+    @Nullable
+    protected final Path indexDirectory;
+    protected final boolean compact;
+    protected final Durability durability;
+    @Nullable
+    protected final String shardRunId;
+    protected final String workerId;
+    @Nullable
+    protected final Path leaseDirectory;
+    protected final Duration leaseDuration;
+
+    protected TransformOptions(Builder builder) {
+        this.parallelism = builder.parallelism;
+        this.readQueueCapacity = builder.readQueueCapacity;
+        this.writeQueueCapacity = builder.writeQueueCapacity;
+        this.journal = builder.journal;
+        this.skipUnchanged = builder.skipUnchanged;
+        this.indexDirectory = builder.indexDirectory;
+        this.compact = builder.compact;
+        this.durability = Objects.requireNonNull(builder.durability);
+        this.shardRunId = builder.shardRunId;
+        this.workerId = Objects.requireNonNull(builder.workerId);
+        this.leaseDirectory = builder.leaseDirectory;
+        this.leaseDuration = Objects.requireNonNull(builder.leaseDuration);
+    }
+
+    /**
+     * Get the amount of region files that are transformed concurrently.
+     * A value of 1 means that every region file is transformed sequentially on a single thread.
+     * @return The amount of region worker threads.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Checks whether chunks are read, transformed and written by separate pipeline stages.
+     * @return True, if the chunk pipeline is enabled.
+     */
+    public boolean isPipelined() {
+        return readQueueCapacity > 0 && writeQueueCapacity > 0;
+    }
+
+    /**
+     * Get the maximum amount of parsed chunks that wait to be transformed, per region file.
+     * @return The capacity of the read queue, or 0 if the pipeline is disabled.
+     */
+    public int getReadQueueCapacity() {
+        return readQueueCapacity;
+    }
+
+    /**
+     * Get the maximum amount of transformed chunks that wait to be written, per region file.
+     * @return The capacity of the write queue, or 0 if the pipeline is disabled.
+     */
+    public int getWriteQueueCapacity() {
+        return writeQueueCapacity;
+    }
+
+    /**
+     * Checks whether transformed chunks are recorded in a {@link TransformJournal}, so that interrupted transformations can be resumed.
+     * @return True, if the journal is enabled.
+     */
+    public boolean isJournaled() {
+        return journal;
+    }
+
+    /**
+     * Checks whether chunks that were not modified since they were transformed by the same transformers are skipped.
+     * @return True, if unchanged chunks are skipped.
+     * @see work.lclpnet.mcct.region.RegionIndex
+     */
+    public boolean isSkipUnchanged() {
+        return skipUnchanged;
+    }
+
+    /**
+     * Get the directory where the region indices for {@link #isSkipUnchanged()} are stored.
+     * @return The index directory, or null if the indices are stored inside the world directory.
+     */
+    @Nullable
+    public Path getIndexDirectory() {
+        return indexDirectory;
+    }
+
+    /**
+     * Checks whether modified region files are rewritten into a compacted copy, instead of updating their sectors in place.
+     * @return True, if region files are compacted.
+     * @see work.lclpnet.mcct.region.CompactRegionWriter
+     */
+    public boolean isCompact() {
+        return compact;
+    }
+
+    /**
+     * Get when written chunks are synced to disk.
+     * @return The durability mode.
+     */
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Checks whether the regions of the world are shared with other workers, see {@link Builder#shard(String, String)}.
+     * @return True, if the transformation is sharded.
+     */
+    public boolean isSharded() {
+        return shardRunId != null;
+    }
+
+    /**
+     * Get the id of the sharded run, which is the same for every worker of the run.
+     * @return The run id, or null if the transformation is not sharded.
+     */
+    @Nullable
+    public String getShardRunId() {
+        return shardRunId;
+    }
+
+    /**
+     * Get the id of this worker, which is unique among the workers of a sharded run.
+     * @return The worker id.
+     */
+    public String getWorkerId() {
+        return workerId;
+    }
+
+    /**
+     * Get the directory where the lease files of sharded runs are stored.
+     * @return The lease directory, or null if the leases are stored inside the world directory.
+     */
+    @Nullable
+    public Path getLeaseDirectory() {
+        return leaseDirectory;
+    }
+
+    /**
+     * Get the time after which the lease of a region expires, if it was not renewed.
+     * @return The lease duration.
+     */
+    public Duration getLeaseDuration() {
+        return leaseDuration;
+    }
+
+    /**
+     * Get a worker id that is unique on the network, from the process id and the host name.
+     * @return The default worker id.
+     */
+    protected static String getDefaultWorkerId() {
+        return ManagementFactory.getRuntimeMXBean().getName();
+    }
+
+    public static class Builder {
+        private static final Duration DEFAULT_LEASE_DURATION = Duration.ofMinutes(1);
+
+        private int parallelism = 1;
+        private int readQueueCapacity = 0, writeQueueCapacity = 0;
+        private boolean journal = true;
+        private boolean skipUnchanged = false;
+        private Path indexDirectory = null;
+        private boolean compact = false;
+        private Durability durability = Durability.CHUNK;
+        private String shardRunId = null;
+        private String workerId = getDefaultWorkerId();
+        private Path leaseDirectory = null;
+        private Duration leaseDuration = DEFAULT_LEASE_DURATION;
+
+        /**
+         * Transform up to <code>parallelism</code> region files at the same time.
+         * Every region file is opened and transformed by its own task.
+         * Use {@link Runtime#availableProcessors()} to scale with the amount of cores.
+         *
+         * <b>Careful!</b> Transformations will be called from multiple threads if this value is greater than 1.
+         * If a {@link StatefulChunkTransformer} shares its state between threads, region files are transformed one at a time,
+         * see {@link ILevelTransformerManager#isThreadSafe()}.
+         * @param parallelism The amount of region worker threads, must be at least 1.
+         * @return This builder.
+         */
+        public Builder parallelism(int parallelism) {
+            if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be at least 1");
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Process the chunks of each region file in a staged pipeline.
+         * One thread reads, decompresses and parses chunks, the region thread transforms them and
+         * another thread serializes, compresses and writes them back to disk.
+         * The stages are connected by bounded queues, which limit the amount of chunks held in memory.
+         *
+         * @param readQueueCapacity The maximum amount of parsed chunks waiting to be transformed.
+         * @param writeQueueCapacity The maximum amount of modified chunks waiting to be written.
+         * @return This builder.
+         */
+        public Builder pipeline(int readQueueCapacity, int writeQueueCapacity) {
+            if (readQueueCapacity < 1 || writeQueueCapacity < 1) throw new IllegalArgumentException("Queue capacities must be at least 1");
+            this.readQueueCapacity = readQueueCapacity;
+            this.writeQueueCapacity = writeQueueCapacity;
+            return this;
+        }
+
+        /**
+         * Transform every chunk of a region file from start to finish before moving on to the next chunk.
+         * This is the default.
+         * @return This builder.
+         */
+        public Builder noPipeline() {
+            this.readQueueCapacity = 0;
+            this.writeQueueCapacity = 0;
+            return this;
+        }
+
+        /**
+         * Record transformed chunks in a journal inside the world directory.
+         * If the transformation is interrupted, the next run with the same transformers skips the recorded chunks.
+         * The journal is only used if every registered transformer has a fingerprint, see {@link ChunkTransformer#getFingerprint()}.
+         * This is enabled by default.
+         * @param journal Whether to use a journal.
+         * @return This builder.
+         */
+        public Builder journal(boolean journal) {
+            this.journal = journal;
+            return this;
+        }
+
+        /**
+         * Skip chunks that were not modified since they were transformed by the same transformers.
+         * After every region file, the modification times of its chunks are stored in an index.
+         * Chunks whose time in the region header still matches are skipped before their data is read.
+         * Requires every registered transformer to have a fingerprint, see {@link ChunkTransformer#getFingerprint()}.
+         * @param skipUnchanged Whether to skip unchanged chunks.
+         * @return This builder.
+         */
+        public Builder skipUnchanged(boolean skipUnchanged) {
+            this.skipUnchanged = skipUnchanged;
+            return this;
+        }
+
+        /**
+         * Store the indices for {@link #skipUnchanged(boolean)} in another directory.
+         * This is useful if the world directory is replaced by a fresh copy before every run.
+         * @param indexDirectory The index directory, or null to store the indices inside the world directory.
+         * @return This builder.
+         */
+        public Builder indexDirectory(@Nullable Path indexDirectory) {
+            this.indexDirectory = indexDirectory;
+            return this;
+        }
+
+        /**
+         * Rewrite every region file with modified chunks into a fresh, tightly packed file, which atomically replaces the original.
+         * Modified chunks are compressed again, while all other chunks are copied without decompressing them.
+         * This avoids region files that grow and fragment with every transformation, and a crash can never leave
+         * a partially written region file.
+         * With the journal enabled, an interrupted region is transformed again from the start.
+         * @param compact Whether to compact region files.
+         * @return This builder.
+         */
+        public Builder compact(boolean compact) {
+            this.compact = compact;
+            return this;
+        }
+
+        /**
+         * Choose when written chunks are synced to disk.
+         * Relaxed modes are much faster on slow disks and network volumes, while the journal stays crash-consistent
+         * at region granularity: chunks are only journaled after their region file was synced.
+         * Unless region files are compacted, a region that was interrupted while it was written in place can't be resumed.
+         * The default is {@link Durability#CHUNK}.
+         * @param durability The durability mode.
+         * @return This builder.
+         */
+        public Builder durability(Durability durability) {
+            this.durability = Objects.requireNonNull(durability);
+            return this;
+        }
+
+        /**
+         * Share the regions of the world with other workers, which may run in other processes or on other machines.
+         * Every worker claims regions through lease files in a shared directory, renews them while it works
+         * and takes over the regions of workers that crashed. Once every region is done, exactly one worker
+         * completes the transformation, see {@link ILevelTransformerManager#complete()}.
+         * Every worker of a run has to use the same run id; use a new id to transform the world again.
+         * Regions that are done are skipped when a worker of the run is restarted, while the journal of a worker is
+         * only resumed by a worker with the same id. Regions that failed are retried by the next run with the same id.
+         * <p>
+         * Sharded transformations have to {@link #compact(boolean) compact} region files, so that a worker whose lease
+         * expired can never write to a region that another worker took over.
+         * {@link Durability#RUN} is treated as {@link Durability#REGION}, as regions are only done once they were synced.
+         * <p>
+         * The results of stateful transformers are not shared between workers: the worker that completes the run only
+         * passes its own results to {@link StatefulChunkTransformer#complete()}. Transformers that need the results of
+         * every region have to persist them to a shared location themselves.
+         * @param runId The id of the run, shared by every worker.
+         * @param workerId The id of this worker, unique among every worker of the run.
+         * @return This builder.
+         */
+        public Builder shard(String runId, String workerId) {
+            this.shardRunId = Objects.requireNonNull(runId);
+            this.workerId = Objects.requireNonNull(workerId);
+            return this;
+        }
+
+        /**
+         * Share the regions of the world with other workers, identifying this worker by its process id and host name.
+         * @param runId The id of the run, shared by every worker.
+         * @return This builder.
+         * @see #shard(String, String)
+         */
+        public Builder shard(String runId) {
+            return shard(runId, getDefaultWorkerId());
+        }
+
+        /**
+         * Store the lease files of sharded runs in another directory, which has to be shared by every worker.
+         * @param leaseDirectory The lease directory, or null to store the leases inside the world directory.
+         * @return This builder.
+         */
+        public Builder leaseDirectory(@Nullable Path leaseDirectory) {
+            this.leaseDirectory = leaseDirectory;
+            return this;
+        }
+
+        /**
+         * Set the time after which the lease of a region expires, if its worker did not renew it, e.g. because it crashed.
+         * Leases are renewed three times per duration. The default is one minute.
+         * @param leaseDuration The lease duration.
+         * @return This builder.
+         */
+        public Builder leaseDuration(Duration leaseDuration) {
+            if (leaseDuration.toMillis() < 3) throw new IllegalArgumentException("Lease duration is too short");
+            this.leaseDuration = leaseDuration;
+            return this;
+        }
+
+        public TransformOptions create() {
+            if (shardRunId != null && !compact)
+                throw new IllegalStateException("Sharded transformations have to compact region files, see compact(boolean)");
+
+            return new TransformOptions(this);
+        }
+    }
+
+    /**
+     * Controls when written chunks are synced to disk.
+     * With relaxed modes, chunks written in place are only journaled after their region file was synced.
+     * After a crash, a region with such chunks can't be resumed, as they can't be told apart from untransformed chunks;
+     * it is reported as failed instead. Use {@link Builder#compact(boolean)} to replace region files atomically,
+     * so that an interrupted region is transformed again from the start.
+     */
+    public enum Durability {
+        /**
+         * Every chunk write is synced, before the chunk is journaled.
+         */
+        CHUNK,
+        /**
+         * Every region file is synced once, when it is closed. Its chunks are journaled afterwards.
+         */
+        REGION,
+        /**
+         * Region files are synced at the end of the transformation. The journal is only updated afterwards.
+         * A crash before the end loses the progress of the whole run, but never leaves an inconsistent journal.
+         */
+        RUN
+    }
+}
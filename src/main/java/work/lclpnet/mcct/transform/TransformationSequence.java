@@ -0,0 +1,147 @@
+package work.lclpnet.mcct.transform;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The transformations of one or more transformers, in the order they are applied to a chunk.
+ * Consecutive {@link INbtVisitorTransformation}s are fused into a single traversal of the chunk data,
+ * the trees of consecutive {@link INbtPathTransformation}s are merged into a single tree and
+ * all other transformations are applied on their own, between the traversals.
+ *
+ * Transformers that can't be fused with others, see {@link ChunkTransformer#canFuseTransformations()},
+ * are applied as a whole with {@link ChunkTransformer#applyTransformations(ChunkTransformContext)}.
+ */
+final class TransformationSequence {
+
+    /** The transformer every step belongs to; the first one for fused steps. */
+    private final ChunkTransformer[] owners;
+    /** The transformation of every step, or null if the whole owner is applied. */
+    private final IChunkTransformation[] steps;
+
+    private TransformationSequence(List<ChunkTransformer> owners, List<IChunkTransformation> steps) {
+        this.owners = owners.toArray(new ChunkTransformer[0]);
+        this.steps = steps.toArray(new IChunkTransformation[0]);
+    }
+
+    /**
+     * Create the sequence of a single transformer.
+     * @param transformer The transformer.
+     * @return The transformations of the transformer, with its visitors fused.
+     */
+    static TransformationSequence of(ChunkTransformer transformer) {
+        final Builder builder = new Builder();
+        builder.addTransformations(transformer);
+        return builder.build();
+    }
+
+    /**
+     * Create the sequence of multiple transformers.
+     * @param transformers The transformers, in the order they are applied.
+     * @return The transformations of all transformers, with consecutive visitors fused across transformers.
+     */
+    static TransformationSequence of(Iterable<ChunkTransformer> transformers) {
+        final Builder builder = new Builder();
+
+        for (ChunkTransformer transformer : transformers) {
+            if (transformer.canFuseTransformations()) builder.addTransformations(transformer);
+            else builder.addStep(transformer, null);
+        }
+
+        return builder.build();
+    }
+
+    void apply(ChunkTransformContext ctx) {
+        final TransformMetrics metrics = ctx.metrics;
+
+        for (int i = 0; i < steps.length; i++) {
+            final IChunkTransformation step = steps[i];
+
+            if (step == null) {
+                owners[i].applyTransformations(ctx);
+                continue;
+            }
+
+            if (metrics == null) {
+                step.transform(ctx, owners[i]);
+                continue;
+            }
+
+            final long start = System.nanoTime();
+            step.transform(ctx, owners[i]);
+            metrics.transformationTime(step, System.nanoTime() - start);
+        }
+    }
+
+    private static class Builder {
+        private final List<ChunkTransformer> owners = new ArrayList<>();
+        private final List<IChunkTransformation> steps = new ArrayList<>();
+        private final List<INbtVisitorTransformation> visitors = new ArrayList<>();
+        private ChunkTransformer visitorOwner = null;
+        private final List<INbtPathTransformation> paths = new ArrayList<>();
+        private ChunkTransformer pathOwner = null;
+
+        void addTransformations(ChunkTransformer transformer) {
+            for (IChunkTransformation transformation : transformer.transformations) {
+                if (transformation instanceof INbtPathTransformation path) {
+                    flushVisitors();
+                    if (paths.isEmpty()) pathOwner = transformer;
+
+                    paths.add(path);
+                    continue;
+                }
+
+                if (!(transformation instanceof INbtVisitorTransformation visitor) || !visitor.canFuse()) {
+                    addStep(transformer, transformation);
+                    continue;
+                }
+
+                flushPaths();
+
+                if (visitors.size() == FusedVisitorTransformation.MAX_VISITORS) flushVisitors();
+                if (visitors.isEmpty()) visitorOwner = transformer;
+
+                visitors.add(visitor);
+            }
+        }
+
+        void addStep(ChunkTransformer owner, @Nullable IChunkTransformation step) {
+            flushVisitors();
+            flushPaths();
+            owners.add(owner);
+            steps.add(step);
+        }
+
+        private void flushVisitors() {
+            if (visitors.isEmpty()) return;
+
+            owners.add(visitorOwner);
+
+            // a single visitor is applied on its own, so that it is still recorded under its own name in the metrics
+            if (visitors.size() == 1) steps.add(visitors.get(0));
+            else steps.add(new FusedVisitorTransformation(visitors.toArray(new INbtVisitorTransformation[0])));
+
+            visitors.clear();
+            visitorOwner = null;
+        }
+
+        private void flushPaths() {
+            if (paths.isEmpty()) return;
+
+            owners.add(pathOwner);
+
+            if (paths.size() == 1) steps.add(paths.get(0));
+            else steps.add(new MergedPathTransformation(paths.toArray(new INbtPathTransformation[0])));
+
+            paths.clear();
+            pathOwner = null;
+        }
+
+        TransformationSequence build() {
+            flushVisitors();
+            flushPaths();
+            return new TransformationSequence(owners, steps);
+        }
+    }
+}
@@ -3,10 +3,15 @@ package work.lclpnet.mcct.transform;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.io.CountingInputStream;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.util.concurrent.Striped;
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.nbt.NbtCompound;
-import net.minecraft.nbt.NbtIo;
 import net.minecraft.server.SaveLoader;
+import net.minecraft.util.WorldSavePath;
 import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.registry.RegistryKey;
 import net.minecraft.world.SaveProperties;
@@ -16,17 +21,40 @@ import net.minecraft.world.level.storage.LevelStorage;
 import net.minecraft.world.storage.RegionFile;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import work.lclpnet.mcct.asm.type.IRegionFile;
+import work.lclpnet.mcct.nbt.NbtSelection;
+import work.lclpnet.mcct.region.CompactRegionWriter;
+import work.lclpnet.mcct.region.RegionHeader;
+import work.lclpnet.mcct.region.RegionIndex;
+import work.lclpnet.mcct.region.RegionReader;
+import work.lclpnet.mcct.region.StringIndex;
+
+import javax.annotation.Nullable;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.function.DoubleConsumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -39,38 +67,113 @@ public class WorldTransformer {
     public final LevelStorage.Session session;
     protected final ImmutableSet<RegistryKey<World>> worlds;
     protected final ProgressListener progressListener;
+    protected final TransformOptions options;
     protected final AtomicBoolean running = new AtomicBoolean(false);
     protected ILevelTransformerManager transformer = null;
+    protected NbtSelection selection = NbtSelection.all();
+    protected ExecutorService regionExecutor = null;
+    protected ExecutorService pipelineExecutor = null;
+    @Nullable
+    protected TransformJournal journal = null;
+    @Nullable
+    protected String indexFingerprint = null;
+    @Nullable
+    protected volatile TransformMetrics metrics = null;
+    protected int currentStep = 0, stepCount = 0;
+    /** Regions that are committed once every region file was synced at the end of the run. */
+    @Nullable
+    protected Queue<PendingRegion> pendingRegions = null;
+    /** The leases of this worker, if the transformation is sharded. */
+    @Nullable
+    protected RegionLeases leases = null;
+    /** Whether a region of the shard could not be transformed, so that the sharded transformation must not be completed. */
+    protected boolean shardIncomplete = false;
+    /** Chunks written in place hold the write lock of their region file, neighbor chunks are read with the read lock. */
+    protected final Striped<ReadWriteLock> regionLocks = Striped.readWriteLock(64);
 
-    protected WorldTransformer(LevelStorage.Session session, LevelInfo levelInfo, ImmutableSet<RegistryKey<World>> worlds, ProgressListener progressListener) {
+    protected WorldTransformer(LevelStorage.Session session, LevelInfo levelInfo, ImmutableSet<RegistryKey<World>> worlds,
+                               ProgressListener progressListener, TransformOptions options) {
         this.session = Objects.requireNonNull(session);
         this.levelInfo = Objects.requireNonNull(levelInfo);
         this.worlds = Objects.requireNonNull(worlds);
         this.progressListener = Objects.requireNonNull(progressListener);
+        this.options = Objects.requireNonNull(options);
     }
 
+    @Environment(EnvType.CLIENT)
     public static CompletableFuture<WorldTransformer> create(MinecraftClient client, LevelStorage.Session storageSession, ProgressListener progressListener) {
         return CompletableFuture.supplyAsync(() -> createSync(client, storageSession, progressListener));
     }
 
+    @Environment(EnvType.CLIENT)
     protected static WorldTransformer createSync(MinecraftClient client, LevelStorage.Session storageSession, ProgressListener progressListener) {
         try (SaveLoader saveLoader = client.createSaveLoader(storageSession, false)) {
 
             SaveProperties saveProperties = saveLoader.saveProperties();
             storageSession.backupLevelDataFile(saveLoader.dynamicRegistryManager(), saveProperties);
-            var immutableSet = saveProperties.getGeneratorOptions().getWorlds();
 
-            return new WorldTransformer(storageSession, saveProperties.getLevelInfo(), immutableSet, progressListener);
+            return create(storageSession, saveProperties, progressListener, MCCT.getTransformOptions());
         } catch (Exception e) {
             LOGGER.warn("Failed to load datapacks, can't optimize world", e);
             return null;
         }
     }
 
+    /**
+     * Create a world transformer for already loaded save properties.
+     * This does not require a client, so it can be used on dedicated servers or other headless environments.
+     * @param storageSession The session of the world to transform.
+     * @param saveProperties The save properties of the world, which determine the dimensions.
+     * @param progressListener The progress listener.
+     * @param options The transform options.
+     * @return The world transformer.
+     */
+    public static WorldTransformer create(LevelStorage.Session storageSession, SaveProperties saveProperties, ProgressListener progressListener,
+                                          TransformOptions options) {
+        var worlds = saveProperties.getGeneratorOptions().getWorlds();
+        return new WorldTransformer(storageSession, saveProperties.getLevelInfo(), worlds, progressListener, options);
+    }
+
     public boolean isRunning() {
         return running.get();
     }
 
+    public TransformOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * Get the metrics of the current or the last transformation.
+     * @return The metrics, or null if no transformation was started yet.
+     */
+    @Nullable
+    public TransformMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get the directory inside the world directory, where the transformer stores its own data.
+     * @return The data directory.
+     */
+    public Path getDataDirectory() {
+        return session.getDirectory(WorldSavePath.ROOT).resolve("mcct").normalize();
+    }
+
+    /**
+     * Get the file of the {@link RegionIndex} of a region.
+     * @param region The region.
+     * @return The index file.
+     */
+    protected Path getRegionIndexFile(RegionFileLocation region) {
+        Path indexDirectory = options.getIndexDirectory();
+        if (indexDirectory == null) indexDirectory = getDataDirectory().resolve("index");
+
+        var dimension = region.world().getValue();
+
+        return indexDirectory.resolve(dimension.getNamespace()).resolve(dimension.getPath())
+                .resolve("r.%s.%s.idx".formatted(region.getRegionX(), region.getRegionZ()));
+    }
+
     public CompletableFuture<Void> transform() {
         return CompletableFuture.runAsync(this::transformSync);
     }
@@ -79,8 +182,21 @@ public class WorldTransformer {
         if (running.get()) throw new IllegalStateException("Transform is already running");
         running.set(true);
 
+        final TransformMetrics metrics = new TransformMetrics();
+        this.metrics = metrics;
+
         transformer = MCCT.createTransformer(this);
 
+        selection = transformer.getSelection();
+        if (!selection.isAll()) LOGGER.info("Only reading the chunk data selection {}", selection);
+
+        if (options.isJournaled()) openJournal();
+
+        if (options.isSkipUnchanged()) {
+            indexFingerprint = transformer.getFingerprint();
+            if (indexFingerprint == null) LOGGER.info("Not every transformer has a fingerprint, unchanged chunks can't be skipped");
+        }
+
         final ImmutableList<RegistryKey<World>> list = this.worlds.asList();
 
         final int unfilteredDimCount = worlds.size();
@@ -94,18 +210,186 @@ public class WorldTransformer {
         if (ignoredDimensions > 0) LOGGER.info("Ignoring {} dimensions", ignoredDimensions);
 
         this.progressListener.setSteps(dimCount);
+        this.stepCount = dimCount;
+        metrics.setDimensions(dimCount);
+
+        int parallelism = options.getParallelism();
 
-        for (int i = 0; i < dimCount; i++) {
-            this.progressListener.updateCurrentStep(i + 1);
-            this.transformWorld(list.get(i));
+        if (parallelism > 1 && !transformer.isThreadSafe()) {
+            LOGGER.warn("A stateful transformer shares its state between threads, transforming one region file at a time. " +
+                    "Use a per worker state to transform region files in parallel");
+            parallelism = 1;
         }
 
-        transformer.complete();
-        transformer = null;
+        if (parallelism > 1) {
+            LOGGER.info("Transforming up to {} region files in parallel", parallelism);
+            regionExecutor = Executors.newFixedThreadPool(parallelism, createThreadFactory("MCCT-Worker-"));
+        }
+
+        if (options.isPipelined()) {
+            // every region task needs a read and a write stage thread
+            pipelineExecutor = Executors.newCachedThreadPool(createThreadFactory("MCCT-Pipeline-"));
+        }
+
+        if (getDurability() == TransformOptions.Durability.RUN) {
+            pendingRegions = new ConcurrentLinkedQueue<>();
+        }
+
+        try {
+            if (options.isSharded()) openLeases();
+
+            for (int i = 0; i < dimCount; i++) {
+                this.progressListener.updateCurrentStep(i + 1);
+                this.currentStep = i;
+                metrics.setProgress(i / (double) dimCount);
+                this.transformWorld(transformDimensions.get(i));
+            }
+
+            if (pendingRegions != null) syncPendingRegions();
+
+            // every region task has finished at this point, so completion always happens on this thread in registration order
+            if (leases == null || !shardIncomplete && leases.tryClaimCompletion()) transformer.complete();
+            else if (shardIncomplete) LOGGER.warn("Not every region was transformed, the sharded transformation is not completed");
+            else LOGGER.info("Another worker completes the sharded transformation");
+
+            if (journal != null) journal.finish();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to delete the transformation journal", e);
+        } finally {
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to close the transformation journal", e);
+                }
+
+                journal = null;
+            }
+
+            if (leases != null) {
+                leases.close();
+                leases = null;
+            }
+
+            if (regionExecutor != null) {
+                regionExecutor.shutdown();
+                regionExecutor = null;
+            }
+
+            if (pipelineExecutor != null) {
+                pipelineExecutor.shutdown();
+                pipelineExecutor = null;
+            }
+
+            transformer = null;
+            indexFingerprint = null;
+            pendingRegions = null;
+            selection = NbtSelection.all();
+            metrics.finish();
+            running.set(false);
+        }
 
         LOGGER.info("Transformation complete.");
+        LOGGER.info("Transformation summary: {}", metrics);
+    }
+
+    /**
+     * Transform a single region file outside of {@link #transform()}, e.g. to benchmark the transformation of a region.
+     * The region goes through the same code path as in a world transformation, but without journal, leases or progress.
+     * @param region The region file.
+     * @param transformer The transformer manager to apply.
+     * @param selection The parts of the chunk data to read, usually {@link ILevelTransformerManager#getSelection()}.
+     * @return True, if every chunk of the region was transformed.
+     */
+    boolean transformSingleRegion(RegionFileLocation region, ILevelTransformerManager transformer, NbtSelection selection) {
+        if (running.getAndSet(true)) throw new IllegalStateException("Transform is already running");
 
-        running.set(false);
+        this.metrics = new TransformMetrics();
+        this.transformer = Objects.requireNonNull(transformer);
+        this.selection = Objects.requireNonNull(selection);
+
+        if (options.isPipelined()) pipelineExecutor = Executors.newCachedThreadPool(createThreadFactory("MCCT-Pipeline-"));
+
+        try {
+            return transformRegionFile(region, region.file().getParent(), progress -> {});
+        } finally {
+            if (pipelineExecutor != null) {
+                pipelineExecutor.shutdown();
+                pipelineExecutor = null;
+            }
+
+            this.transformer = null;
+            running.set(false);
+        }
+    }
+
+    protected void openJournal() {
+        final String fingerprint = transformer.getFingerprint();
+
+        if (fingerprint == null) {
+            LOGGER.info("Not every transformer has a fingerprint, an interrupted transformation can't be resumed");
+            return;
+        }
+
+        try {
+            // every worker of a sharded transformation appends to its own journal
+            final String fileName = options.isSharded() ? "journal-%s.dat".formatted(toFileName(options.getWorkerId())) : "journal.dat";
+
+            journal = TransformJournal.open(getDataDirectory().resolve(fileName), fingerprint);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to open the transformation journal, an interrupted transformation can't be resumed", e);
+        }
+    }
+
+    protected void openLeases() {
+        Path leaseDirectory = options.getLeaseDirectory();
+        if (leaseDirectory == null) leaseDirectory = getDataDirectory().resolve("leases");
+
+        final String runId = Objects.requireNonNull(options.getShardRunId());
+
+        try {
+            leases = RegionLeases.open(leaseDirectory.resolve(toFileName(runId)), options.getWorkerId(), options.getLeaseDuration());
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to open the lease directory of sharded run %s".formatted(runId), e);
+        }
+
+        LOGGER.info("Transforming as worker {} of sharded run {}", options.getWorkerId(), runId);
+    }
+
+    /**
+     * Get when written chunks are synced to disk.
+     * Sharded regions are only done once they were synced, so they can't wait until the end of the run.
+     * @return The durability mode of this transformation.
+     */
+    protected TransformOptions.Durability getDurability() {
+        final TransformOptions.Durability durability = options.getDurability();
+
+        if (durability == TransformOptions.Durability.RUN && options.isSharded()) return TransformOptions.Durability.REGION;
+
+        return durability;
+    }
+
+    /**
+     * Get the suffix of the temporary files of compacted regions.
+     * Every worker of a sharded transformation uses its own files, as a worker whose lease expired may still be writing them.
+     * @return The suffix of the temporary files.
+     */
+    protected String getTempSuffix() {
+        return options.isSharded() ? ".%s.tmp".formatted(toFileName(options.getWorkerId())) : ".tmp";
+    }
+
+    private static String toFileName(String id) {
+        return id.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    protected ThreadFactory createThreadFactory(String namePrefix) {
+        final AtomicInteger threadCount = new AtomicInteger(0);
+
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
     }
 
     protected void transformWorld(RegistryKey<World> world) {
@@ -113,11 +397,122 @@ public class WorldTransformer {
 
         Path worldPath = this.session.getWorldDirectory(world);
         Path regionPath = worldPath.resolve("region");
+
+        List<RegionFileLocation> regionFiles = listRegionFiles(world, regionPath);
+        if (regionFiles == null) return;
+
+        regionFiles.removeIf(location -> !transformer.shouldTransformRegion(location));
+
+        final int regionFileCount = regionFiles.size();
+        LOGGER.info("Found {} region files.", regionFileCount);
+
+        final RegionProgressTracker progress = new RegionProgressTracker(new DimensionProgressListener(currentStep, stepCount), regionFileCount);
+
+        if (leases != null) {
+            transformShard(regionFiles, regionPath, progress);
+        } else if (regionExecutor == null) {
+            for (int i = 0; i < regionFileCount; i++) {
+                transformRegionFile(regionFiles.get(i), regionPath, progress, i);
+            }
+        } else {
+            final CompletableFuture<?>[] tasks = new CompletableFuture<?>[regionFileCount];
+
+            for (int i = 0; i < regionFileCount; i++) {
+                final int regionIndex = i;
+                final RegionFileLocation regionFile = regionFiles.get(i);
+                tasks[i] = CompletableFuture.runAsync(() -> transformRegionFile(regionFile, regionPath, progress, regionIndex), regionExecutor);
+            }
+
+            CompletableFuture.allOf(tasks).join();
+        }
+
+        LOGGER.info("World {} transformed successfully.", world.getValue());
+    }
+
+    /**
+     * Transforms the regions of a dimension that are not claimed by other workers of a sharded transformation.
+     * Returns once every region of the dimension is done, taking over the regions of workers that crashed.
+     */
+    protected void transformShard(List<RegionFileLocation> regionFiles, Path regionPath, RegionProgressTracker progress) {
+        final RegionLeases leases = Objects.requireNonNull(this.leases);
+        final int regionFileCount = regionFiles.size();
+
+        // workers start at different regions, so that they rarely compete for the same lease
+        final int offset = regionFileCount > 0 ? Math.floorMod(leases.getWorkerId().hashCode(), regionFileCount) : 0;
+        List<Integer> remaining = new ArrayList<>(regionFileCount);
+        for (int i = 0; i < regionFileCount; i++) remaining.add((offset + i) % regionFileCount);
+
+        while (!remaining.isEmpty()) {
+            final Queue<Integer> claimedByOthers = new ConcurrentLinkedQueue<>();
+            final CompletableFuture<?>[] tasks = new CompletableFuture<?>[remaining.size()];
+
+            for (int i = 0; i < tasks.length; i++) {
+                final int regionIndex = remaining.get(i);
+                final RegionFileLocation region = regionFiles.get(regionIndex);
+
+                // leases are only claimed once a thread is free, so that other workers can claim the other regions meanwhile
+                final Runnable task = () -> {
+                    if (leases.isDone(region)) {
+                        progress.complete(regionIndex);
+                    } else if (!leases.tryAcquire(region)) {
+                        claimedByOthers.add(regionIndex);
+                    } else {
+                        boolean success = false;
+
+                        try {
+                            success = transformRegionFile(region, regionPath, progress, regionIndex);
+                        } finally {
+                            // failed regions are released, so that they are retried by another worker or the next run of the shard
+                            if (success) leases.complete(region);
+                            else leases.release(region);
+                        }
+                    }
+                };
+
+                if (regionExecutor != null) {
+                    tasks[i] = CompletableFuture.runAsync(task, regionExecutor);
+                } else {
+                    task.run();
+                    tasks[i] = CompletableFuture.completedFuture(null);
+                }
+            }
+
+            CompletableFuture.allOf(tasks).join();
+
+            remaining = new ArrayList<>(claimedByOthers);
+            if (remaining.isEmpty()) break;
+
+            LOGGER.info("Waiting for {} region files claimed by other workers...", remaining.size());
+
+            try {
+                Thread.sleep(Math.max(1L, leases.getDuration().toMillis() / 3L));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for other workers", e);
+            }
+        }
+
+        final long failed = regionFiles.stream().filter(region -> !leases.isDone(region)).count();
+
+        if (failed > 0) {
+            LOGGER.warn("{} region files could not be transformed by any worker, they are retried by the next run of the shard", failed);
+            shardIncomplete = true;
+        }
+    }
+
+    /**
+     * Lists the region files of a dimension, sorted by their position.
+     * @param world The dimension.
+     * @param regionPath The region directory of the dimension.
+     * @return The region files, or null if the region directory could not be listed.
+     */
+    @Nullable
+    protected List<RegionFileLocation> listRegionFiles(RegistryKey<World> world, Path regionPath) {
         final File regionDirectory = regionPath.toFile();
         File[] files = regionDirectory.listFiles((filex, string) -> string.endsWith(".mca"));
         if (files == null) {
             LOGGER.info("No region files found in {}", regionDirectory.getAbsolutePath());
-            return;
+            return null;
         }
 
         List<RegionFileLocation> regionFiles = new ArrayList<>();
@@ -129,67 +524,712 @@ public class WorldTransformer {
             int regionX = Integer.parseInt(matcher.group(1)) << 5;
             int regionY = Integer.parseInt(matcher.group(2)) << 5;
 
-            final RegionFileLocation location = new RegionFileLocation(regionFile.toPath(), regionX, regionY, world);
-            if (transformer.shouldTransformRegion(location))
-                regionFiles.add(location);
+            regionFiles.add(new RegionFileLocation(regionFile.toPath(), regionX, regionY, world));
         }
 
-        final int regionFileCount = regionFiles.size();
-        LOGGER.info("Found {} region files.", regionFileCount);
+        // listFiles() does not guarantee any order
+        regionFiles.sort(Comparator.comparingInt(RegionFileLocation::x).thenComparingInt(RegionFileLocation::y));
 
-        for (int i = 0; i < regionFileCount; i++) {
-            RegionFileLocation regionFile = regionFiles.get(i);
-            transformRegionFile(regionFile, regionPath);
-            this.progressListener.updateProgress((i + 1) / (float) regionFileCount);
+        return regionFiles;
+    }
+
+    /**
+     * Build the {@link StringIndex} of every region file of the world.
+     * Once the index exists, it is updated by every transformation, so that it only needs to be built once.
+     * Chunk targets can then use a {@link StringIndexTarget} to skip chunks that contain no matching string.
+     * The world must not be loaded while it is indexed.
+     * @return A future that completes once every region file was indexed.
+     */
+    public CompletableFuture<Void> indexStrings() {
+        return CompletableFuture.runAsync(this::indexStringsSync);
+    }
+
+    protected void indexStringsSync() {
+        if (running.get()) throw new IllegalStateException("Transform is already running");
+        running.set(true);
+
+        final ImmutableList<RegistryKey<World>> list = this.worlds.asList();
+        final int dimCount = list.size();
+        final int parallelism = options.getParallelism();
+
+        this.progressListener.setSteps(dimCount);
+        this.stepCount = dimCount;
+
+        final ExecutorService executor = parallelism > 1 ? Executors.newFixedThreadPool(parallelism, createThreadFactory("MCCT-Indexer-")) : null;
+
+        try {
+            for (int i = 0; i < dimCount; i++) {
+                this.progressListener.updateCurrentStep(i + 1);
+                this.currentStep = i;
+
+                final RegistryKey<World> world = list.get(i);
+                LOGGER.info("Indexing world {}...", world.getValue());
+
+                final Path regionPath = this.session.getWorldDirectory(world).resolve("region");
+                final List<RegionFileLocation> regionFiles = listRegionFiles(world, regionPath);
+                if (regionFiles == null) continue;
+
+                final int regionFileCount = regionFiles.size();
+                final RegionProgressTracker progress = new RegionProgressTracker(new DimensionProgressListener(currentStep, stepCount), regionFileCount);
+                final CompletableFuture<?>[] tasks = new CompletableFuture<?>[regionFileCount];
+
+                for (int j = 0; j < regionFileCount; j++) {
+                    final int regionIndex = j;
+                    final RegionFileLocation region = regionFiles.get(j);
+
+                    final Runnable task = () -> {
+                        try {
+                            indexRegionFile(region, regionPath);
+                        } finally {
+                            progress.complete(regionIndex);
+                        }
+                    };
+
+                    if (executor != null) {
+                        tasks[j] = CompletableFuture.runAsync(task, executor);
+                    } else {
+                        task.run();
+                        tasks[j] = CompletableFuture.completedFuture(null);
+                    }
+                }
+
+                CompletableFuture.allOf(tasks).join();
+            }
+        } finally {
+            if (executor != null) executor.shutdown();
+            running.set(false);
         }
 
-        LOGGER.info("World {} transformed successfully.", world.getValue());
+        LOGGER.info("String indexing complete.");
+    }
+
+    protected void indexRegionFile(RegionFileLocation region, Path regDirectory) {
+        try {
+            final StringIndex strings = StringIndex.build(region.file, regDirectory, region.x, region.y);
+            strings.save(RegionHeader.read(region.file));
+        } catch (IOException e) {
+            LOGGER.warn("Failed to index region file {}", region.file.getFileName(), e);
+        }
+    }
+
+    protected boolean transformRegionFile(RegionFileLocation region, Path regDirectory, RegionProgressTracker progress, int regionIndex) {
+        try {
+            return transformRegionFile(region, regDirectory, chunkProgress -> progress.update(regionIndex, chunkProgress));
+        } finally {
+            progress.complete(regionIndex);
+        }
     }
 
-    protected void transformRegionFile(RegionFileLocation region, Path regDirectory) {
+    /**
+     * Transforms the chunks of a region file.
+     * @return True, if every chunk of the region was transformed and committed. False, if the region or any of its chunks failed.
+     */
+    protected boolean transformRegionFile(RegionFileLocation region, Path regDirectory, DoubleConsumer progress) {
+        if (journal != null && journal.isRegionComplete(region)) {
+            LOGGER.info("Skipping region file {}, it was already transformed", region.file.getFileName());
+            metrics.regionSkipped();
+            return true;
+        }
+
         LOGGER.info("Transforming region file {}...", region.file.getFileName());
 
-        try (RegionFile regionFile = new RegionFile(region.file, regDirectory, true)) {
-            List<ChunkPos> chunkPositions = Lists.newArrayList();
+        RegionIndex index = null;
+        RegionHeader header = null;
+
+        if (indexFingerprint != null) {
+            try {
+                header = RegionHeader.read(region.file);
+                index = RegionIndex.load(getRegionIndexFile(region), indexFingerprint);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to read the header of {}, can't skip unchanged chunks", region.file.getFileName(), e);
+            }
+        }
 
-            for (int x = 0; x < 32; ++x) {
-                for (int y = 0; y < 32; ++y) {
-                    ChunkPos chunkPos = new ChunkPos(x + region.x, y + region.y);
+        // the string index is only kept up to date, if it was built before
+        final StringIndex strings = StringIndex.load(StringIndex.getFile(region.file));
+
+        final IRegionTransformPlan plan = transformer.planRegion(region);
+
+        // chunks written by an interrupted run already went through the region transformations, which must not be applied twice
+        if (journal != null && plan.hasRegionTransformations() && journal.isRegionStarted(region)) {
+            LOGGER.error("Region file {} was partially transformed by an interrupted run, region transformations can't be resumed. " +
+                    "Restore the region file and delete the journal to transform it again", region.file.getFileName());
+            journal.markIncomplete();
+            metrics.regionFailed();
+            return false;
+        }
+
+        // chunks written in place by an interrupted run, that were not journaled yet, would be transformed twice
+        if (journal != null && journal.hasUnjournaledWrites(region)) {
+            LOGGER.error("Region file {} was partially written by an interrupted run, before its chunks were journaled. " +
+                    "Restore the region file and delete the journal to transform it again", region.file.getFileName());
+            journal.markIncomplete();
+            metrics.regionFailed();
+            return false;
+        }
+
+        List<ChunkPos> regionChunks = Lists.newArrayList();
+        List<ChunkPos> chunkPositions = Lists.newArrayList();
+        List<ChunkPos> pendingPositions = Lists.newArrayList();
+        final TransformOptions.Durability durability = getDurability();
+        // region transformations written in place are journaled right away, so that an interrupted region is recognized
+        final boolean syncWrites = durability == TransformOptions.Durability.CHUNK || plan.hasRegionTransformations() && !options.isCompact();
+        CompactRegionWriter output = null;
+        RegionTransformContext regionContext = null;
+        RegionTask task = null;
+        RegionFile regionFile = null;
+        boolean closed = false;
+        int done = 0, failures = 0;
+
+        try {
+            regionFile = new RegionFile(region.file, regDirectory, syncWrites);
+
+            try (RegionReader reader = RegionReader.open(region.file, regDirectory)) {
+                // the region file is synced at the end of the run instead
+                if (durability == TransformOptions.Durability.RUN) ((IRegionFile) regionFile).mcct$setSyncOnClose(false);
+
+                int unchanged = 0;
+
+                for (int x = 0; x < 32; ++x) {
+                    for (int y = 0; y < 32; ++y) {
+                        ChunkPos chunkPos = new ChunkPos(x + region.x, y + region.y);
+
+                        if (!regionFile.isChunkValid(chunkPos)) continue;
+
+                        regionChunks.add(chunkPos);
+
+                        if (!plan.shouldTransformChunk(chunkPos)) continue;
+
+                        if (index != null) {
+                            int chunkIndex = RegionFileLocation.getChunkIndex(chunkPos);
+
+                            // the chunk was not written since it was transformed by the same transformers
+                            if (index.isUnchanged(chunkIndex, header.getTimestamp(chunkIndex))) {
+                                unchanged++;
+                                continue;
+                            }
+                        }
 
-                    if (regionFile.isChunkValid(chunkPos) && transformer.shouldTransformChunk(chunkPos, region))
                         chunkPositions.add(chunkPos);
+
+                        // chunks recorded in the journal are skipped before their data is read, but were transformed all the same
+                        if (journal == null || !journal.isChunkComplete(region, chunkPos))
+                            pendingPositions.add(chunkPos);
+                        else if (index != null)
+                            index.markTransformed(RegionFileLocation.getChunkIndex(chunkPos));
+                    }
+                }
+
+                if (unchanged > 0) LOGGER.info("Skipping {} unchanged chunks of region file {}", unchanged, region.file.getFileName());
+                metrics.chunksSkipped(unchanged + chunkPositions.size() - pendingPositions.size());
+
+                if (plan.hasRegionTransformations()) regionContext = transformRegion(region, regionChunks, regDirectory, plan, reader);
+
+                if (options.isCompact() && (!pendingPositions.isEmpty() || regionContext != null && !regionContext.getDirtyChunks().isEmpty()))
+                    output = CompactRegionWriter.open(region.file, regDirectory, getTempSuffix());
+
+                task = new RegionTask(region, plan, index, strings, reader, output, output != null || !syncWrites, regionContext);
+
+                if (pipelineExecutor != null) {
+                    failures = transformChunksPipelined(regionFile, pendingPositions, task, progress);
+                    metrics.chunksFailed(failures);
+                    done = pendingPositions.size();
+                } else {
+                    final int chunkCount = pendingPositions.size();
+
+                    for (int i = 0; i < chunkCount; i++) {
+                        // checking the lease accesses the lease files, so it is only checked once per batch of chunks
+                        if (i % ChunkPipeline.CHECKPOINT_INTERVAL == 0) checkLease(region);
+                        transformChunk(regionFile, pendingPositions.get(i), task);
+                        progress.accept(++done / (double) chunkCount);
+                    }
                 }
-            }
 
-            for (ChunkPos chunkPosition : chunkPositions) {
-                transformChunk(regionFile, chunkPosition, region);
+                if (regionContext != null) writeRegionChunks(regionFile, task);
             }
+
+            // a region file that fails to close is not closed again, its chunks are not durable
+            final RegionFile closing = regionFile;
+            regionFile = null;
+            closing.close();
+            closed = true;
+
+            checkLease(region);
+
+            // the compacted copy replaces the original only after it was closed
+            if (output != null) commitCompactedRegion(task);
+
+            commitRegion(task, chunkPositions);
         } catch (Throwable ignored) {
             LOGGER.warn("Could not read {} as region file", region.file.getFileName());
+            if (journal != null) journal.markIncomplete();
+
+            if (regionFile != null) closed = closeFailedRegionFile(region, regionFile);
+
+            // chunks written in place before the failure are still journaled, if the region file was closed and synced;
+            // a compacted copy was discarded with them
+            if (task != null && output == null && closed) commitRegion(task, null);
+
+            metrics.regionFailed();
+            metrics.chunksFailed(pendingPositions.size() - done);
+            return false;
+        } finally {
+            if (regionContext != null) regionContext.close();
+
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to delete the compacted copy of region file {}", region.file.getFileName(), e);
+                }
+            }
         }
+
+        metrics.regionTransformed();
+
+        return failures == 0;
     }
 
-    protected void transformChunk(RegionFile regionFile, ChunkPos chunkPos, RegionFileLocation region) throws IOException {
-        NbtCompound chunkTag;
-        try (DataInputStream chunkIn = regionFile.getChunkInputStream(chunkPos)) {
-            if (chunkIn == null) {
-                LOGGER.info("Failed to fetch input stream for chunk {}", chunkPos);
-                return;
+    /**
+     * Closes a region file after its transformation failed.
+     * @return True, if the region file was closed and synced without errors, so that the chunks written to it are durable.
+     */
+    protected boolean closeFailedRegionFile(RegionFileLocation region, RegionFile regionFile) {
+        try {
+            regionFile.close();
+            return true;
+        } catch (Throwable t) {
+            LOGGER.warn("Failed to close region file {}, its chunks will be transformed again", region.file.getFileName(), t);
+            return false;
+        }
+    }
+
+    /**
+     * Stops the transformation of a region, if the transformation is sharded and another worker took over its lease.
+     */
+    protected void checkLease(RegionFileLocation region) throws IOException {
+        if (leases != null && !leases.isHeld(region))
+            throw new IOException("The lease of region file %s was taken over by another worker".formatted(region.file.getFileName()));
+    }
+
+    /**
+     * Replaces the region file of a task with its compacted copy.
+     * If no chunk was modified, the region file is left as it is.
+     */
+    protected void commitCompactedRegion(RegionTask task) throws IOException {
+        final CompactRegionWriter output = Objects.requireNonNull(task.output);
+
+        if (output.hasWrittenChunks()) {
+            output.commit();
+            LOGGER.info("Compacted region file {}", task.region.file.getFileName());
+        }
+    }
+
+    /**
+     * Records the deferred chunks of a closed region file in the journal and saves its index, once its data is durable.
+     * With {@link TransformOptions.Durability#RUN}, this is postponed until every region file was synced.
+     * @param task The region task.
+     * @param chunkPositions The chunks that were supposed to be transformed, or null if the region failed.
+     */
+    protected void commitRegion(RegionTask task, @Nullable List<ChunkPos> chunkPositions) {
+        final Runnable commit = () -> {
+            if (journal != null) {
+                for (ChunkPos chunkPos : task.getDeferredChunks())
+                    journal.completeChunk(task.region, chunkPos);
+
+                if (chunkPositions != null) journal.completeRegion(task.region, chunkPositions);
+                if (task.hasStartedUnjournaledWrites()) journal.finishUnjournaledWrites(task.region);
+            }
+
+            if (chunkPositions == null || task.index == null && task.strings == null) return;
+
+            // the timestamps of written chunks are only final after the region file was closed
+            try {
+                final RegionHeader header = RegionHeader.read(task.region.file);
+
+                if (task.index != null) task.index.save(header);
+                if (task.strings != null) task.strings.save(header);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to save the index of region file {}", task.region.file.getFileName(), e);
             }
+        };
 
-            chunkTag = NbtIo.read(chunkIn);
+        final Queue<PendingRegion> pendingRegions = this.pendingRegions;
+
+        if (pendingRegions != null) pendingRegions.add(new PendingRegion(task.region, commit));
+        else commit.run();
+    }
+
+    /**
+     * Sync every region file that was transformed during the run and commit the regions afterwards.
+     * Regions whose file could not be synced are not committed and will be transformed again when the transformation is resumed.
+     */
+    protected void syncPendingRegions() {
+        final Queue<PendingRegion> pendingRegions = Objects.requireNonNull(this.pendingRegions);
+        LOGGER.info("Syncing {} region files...", pendingRegions.size());
+
+        PendingRegion pending;
+        while ((pending = pendingRegions.poll()) != null) {
+            try (FileChannel channel = FileChannel.open(pending.region().file(), StandardOpenOption.WRITE)) {
+                channel.force(true);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to sync region file {}", pending.region().file().getFileName(), e);
+                if (journal != null) journal.markIncomplete();
+                continue;
+            }
+
+            pending.commit().run();
         }
+    }
+
+    /**
+     * Transforms chunks of a region file in a {@link ChunkPipeline}.
+     * @return The amount of chunks that failed.
+     */
+    protected int transformChunksPipelined(RegionFile regionFile, List<ChunkPos> chunkPositions, RegionTask task, DoubleConsumer progress) {
+        return new ChunkPipeline<ChunkData>(pipelineExecutor, options.getReadQueueCapacity(), options.getWriteQueueCapacity(),
+                chunkPos -> readChunk(task, chunkPos),
+                (chunkData, chunkPos) -> transformChunkData(chunkData, chunkPos, task),
+                (chunkData, chunkPos) -> {
+                    writeChunk(regionFile, chunkPos, chunkData, task);
+                    recordChunk(task, chunkPos, chunkData);
+                },
+                () -> checkLease(task.region)
+        ).run(chunkPositions, progress);
+    }
+
+    protected void transformChunk(RegionFile regionFile, ChunkPos chunkPos, RegionTask task) throws IOException {
+        ChunkData chunkData = readChunk(task, chunkPos);
+        if (chunkData == null) return;
+
+        boolean dirty = transformChunkData(chunkData, chunkPos, task);
+        if (!dirty) return;
 
-        boolean dirty = transformer.transformChunk(chunkTag, chunkPos, region);
+        writeChunk(regionFile, chunkPos, chunkData, task);
+        recordChunk(task, chunkPos, chunkData);
+    }
+
+    /**
+     * Applies the transformations to chunk data.
+     * Chunks that were not modified are recorded as complete right away.
+     * @return True, if the chunk data was modified and has to be written.
+     */
+    protected boolean transformChunkData(ChunkData chunkData, ChunkPos chunkPos, RegionTask task) {
+        final TransformMetrics metrics = this.metrics;
+
+        final long start = System.nanoTime();
+        // chunks modified by a region transformation are written, even if no chunk transformation modifies them
+        boolean dirty = task.plan.transformChunk(chunkData.getCompound(), chunkPos, metrics) | chunkData.modified;
+        final long nanos = System.nanoTime() - start;
+
+        chunkData.processingNanos += nanos;
+        metrics.transformTime(nanos);
+        metrics.chunkTransformed();
+
+        if (!dirty) recordChunk(task, chunkPos, chunkData);
+
+        return dirty;
+    }
+
+    /**
+     * Records a chunk in the journal, the region index and the metrics, after it was transformed and written, if necessary.
+     * Unless every write is synced, the chunk is only journaled after its region file was committed, see {@link #commitRegion(RegionTask, List)}.
+     */
+    protected void recordChunk(RegionTask task, ChunkPos chunkPos, ChunkData chunkData) {
+        if (task.deferJournal) task.deferChunk(chunkPos);
+        else if (journal != null) journal.completeChunk(task.region, chunkPos);
+
+        if (task.index != null) task.index.markTransformed(RegionFileLocation.getChunkIndex(chunkPos));
+
+        metrics.chunkCompleted(task.region, chunkPos, chunkData.processingNanos);
+    }
+
+    /**
+     * Applies the region transformations to a region, before its chunks are transformed.
+     * The chunks decoded by the region transformations are kept in the returned context, until the chunk transformations take them.
+     * @param regionChunks The chunks that exist in the region file.
+     * @return The context of the region.
+     */
+    protected RegionTransformContext transformRegion(RegionFileLocation region, List<ChunkPos> regionChunks, Path regDirectory,
+                                                     IRegionTransformPlan plan, RegionReader reader) {
+        final RegionTransformContext ctx = new RegionTransformContext(region, regionChunks, regDirectory, selection,
+                chunkPos -> readChunk(reader, chunkPos), this::getRegionLock);
+
+        final long start = System.nanoTime();
+
+        try {
+            plan.transformRegion(ctx);
+        } catch (Throwable t) {
+            ctx.close();
+            throw t;
+        }
+
+        metrics.transformTime(System.nanoTime() - start);
+
+        return ctx;
+    }
 
-        if (dirty) {
-            try (DataOutputStream chunkOut = regionFile.getChunkOutputStream(chunkPos)) {
-                NbtIo.write(chunkTag, chunkOut);
+    /**
+     * Writes the chunks that were modified by region transformations, but were not transformed by chunk transformations afterwards.
+     * This includes chunks that are not targeted by any transformer, or that were skipped because they were unchanged.
+     * The chunks are recorded like transformed chunks, so that a partially written region is recognized when the transformation is resumed.
+     */
+    protected void writeRegionChunks(RegionFile regionFile, RegionTask task) throws IOException {
+        final RegionTransformContext regionContext = Objects.requireNonNull(task.regionContext);
+
+        for (ChunkPos chunkPos : regionContext.getDirtyChunks()) {
+            final ChunkData chunkData = regionContext.takeChunk(chunkPos);
+            if (chunkData == null) continue;
+
+            writeChunk(regionFile, chunkPos, chunkData, task);
+            recordChunk(task, chunkPos, chunkData);
+        }
+    }
+
+    /**
+     * Get the lock of a region file, see {@link #regionLocks}.
+     * @param file The region file.
+     * @return The lock, which is the same for every path of the file.
+     */
+    protected ReadWriteLock getRegionLock(Path file) {
+        return regionLocks.get(file.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Reads the chunk data of a task, unless it was already decoded by a region transformation.
+     */
+    @Nullable
+    protected ChunkData readChunk(RegionTask task, ChunkPos chunkPos) throws IOException {
+        if (task.regionContext != null) {
+            final ChunkData chunkData = task.regionContext.takeChunk(chunkPos);
+            if (chunkData != null) return chunkData;
+        }
+
+        return readChunk(task.reader, chunkPos);
+    }
+
+    /**
+     * Reads and parses chunk data from a region file.
+     * The reader uses its own file channel, so reads never wait for writes of other chunks to the region file.
+     * Only the parts of the chunk in the current selection are parsed.
+     */
+    @Nullable
+    protected ChunkData readChunk(RegionReader reader, ChunkPos chunkPos) throws IOException {
+        final TransformMetrics metrics = this.metrics;
+        final long start = System.nanoTime();
+
+        final DataInputStream chunkIn = reader.getChunkInputStream(chunkPos);
+
+        final long read = System.nanoTime();
+        metrics.readTime(read - start);
+
+        if (chunkIn == null) {
+            LOGGER.info("Failed to fetch input stream for chunk {}", chunkPos);
+            metrics.chunksFailed(1);
+            return null;
+        }
+
+        final ChunkData chunkData;
+        final CountingInputStream counter = new CountingInputStream(chunkIn);
+
+        try (chunkIn) {
+            chunkData = ChunkData.read(new DataInputStream(counter), selection);
+        }
+
+        final long end = System.nanoTime();
+        metrics.parseTime(end - read, counter.getCount());
+        chunkData.processingNanos += end - start;
+
+        return chunkData;
+    }
+
+    /**
+     * Serializes and writes chunk data to a region file, or its compacted copy.
+     * The region file buffers and compresses the data in memory and only writes it on close,
+     * so only closing the stream is synchronized on the region file.
+     * Writes to the region file itself hold its write lock, so that neighbor chunks are never read while they are written.
+     */
+    protected void writeChunk(RegionFile regionFile, ChunkPos chunkPos, ChunkData chunkData, RegionTask task) throws IOException {
+        final TransformMetrics metrics = this.metrics;
+        final long start = System.nanoTime();
+
+        final DataOutputStream chunkOut = task.output != null
+                ? task.output.getChunkOutputStream(chunkPos)
+                : regionFile.getChunkOutputStream(chunkPos);
+        final CountingOutputStream counter = new CountingOutputStream(chunkOut);
+
+        // the stream is only closed once serialization succeeded, as closing it would write incomplete data
+        chunkData.write(new DataOutputStream(counter));
+
+        final long serialized = System.nanoTime();
+        metrics.serializeTime(serialized - start, counter.getCount());
+
+        // chunks written in place are journaled later, an interrupted run must be able to tell that they were written
+        final TransformJournal journal = this.journal;
+        if (journal != null && task.output == null && task.deferJournal) task.startUnjournaledWrites(journal);
+
+        final Lock lock = task.output == null ? getRegionLock(task.region.file).writeLock() : null;
+        if (lock != null) lock.lock();
+
+        try {
+            synchronized (regionFile) {
+                chunkOut.close();
             }
+        } finally {
+            if (lock != null) lock.unlock();
+        }
+
+        final long end = System.nanoTime();
+        metrics.writeTime(end - serialized);
+        metrics.chunkWritten();
+        chunkData.processingNanos += end - start;
+
+        if (task.strings != null) updateStringIndex(task.strings, chunkPos, chunkData);
+    }
+
+    /**
+     * Updates the strings of a written chunk in the string index of its region.
+     * Partially read chunks are removed from the index instead, as their other strings are unknown.
+     */
+    protected void updateStringIndex(StringIndex strings, ChunkPos chunkPos, ChunkData chunkData) {
+        final int chunkIndex = RegionFileLocation.getChunkIndex(chunkPos);
+
+        if (chunkData.isPartial()) {
+            strings.invalidateChunk(chunkIndex);
+            return;
+        }
+
+        final Set<String> values = new HashSet<>();
+        StringIndex.collectStrings(chunkData.getCompound(), values);
+
+        strings.indexChunk(chunkIndex, values);
+    }
+
+    /**
+     * Forwards the progress of a dimension to the progress listener and records the overall progress in the metrics.
+     */
+    protected class DimensionProgressListener implements ProgressListener {
+
+        private final int step, steps;
+
+        protected DimensionProgressListener(int step, int steps) {
+            this.step = step;
+            this.steps = steps;
+        }
+
+        @Override
+        public void setSteps(int steps) {
+            progressListener.setSteps(steps);
+        }
+
+        @Override
+        public void updateCurrentStep(int currentStep) {
+            progressListener.updateCurrentStep(currentStep);
+        }
+
+        @Override
+        public void updateProgress(float progress) {
+            progressListener.updateProgress(progress);
+
+            final TransformMetrics metrics = WorldTransformer.this.metrics;
+            if (metrics != null && steps > 0) metrics.setProgress((step + progress) / steps);
         }
     }
 
-    public record RegionFileLocation(Path file, int x, int y, RegistryKey<World> world) {}
+    /**
+     * The state of a region file that is currently transformed.
+     */
+    protected static class RegionTask {
+
+        public final RegionFileLocation region;
+        public final IRegionTransformPlan plan;
+        @Nullable
+        public final RegionIndex index;
+        @Nullable
+        public final StringIndex strings;
+        public final RegionReader reader;
+        @Nullable
+        public final CompactRegionWriter output;
+        /** Whether completed chunks are journaled after the region was committed, instead of right away. */
+        public final boolean deferJournal;
+        /** The chunks decoded by region transformations, if the plan has any. */
+        @Nullable
+        public final RegionTransformContext regionContext;
+        private final List<ChunkPos> deferredChunks = new ArrayList<>();
+        private boolean writesStarted = false;
+
+        protected RegionTask(RegionFileLocation region, IRegionTransformPlan plan, @Nullable RegionIndex index, @Nullable StringIndex strings,
+                             RegionReader reader, @Nullable CompactRegionWriter output, boolean deferJournal) {
+            this(region, plan, index, strings, reader, output, deferJournal, null);
+        }
+
+        protected RegionTask(RegionFileLocation region, IRegionTransformPlan plan, @Nullable RegionIndex index, @Nullable StringIndex strings,
+                             RegionReader reader, @Nullable CompactRegionWriter output, boolean deferJournal,
+                             @Nullable RegionTransformContext regionContext) {
+            this.region = Objects.requireNonNull(region);
+            this.plan = Objects.requireNonNull(plan);
+            this.index = index;
+            this.strings = strings;
+            this.reader = Objects.requireNonNull(reader);
+            this.output = output;
+            this.deferJournal = deferJournal;
+            this.regionContext = regionContext;
+        }
+
+        protected synchronized void deferChunk(ChunkPos chunkPos) {
+            deferredChunks.add(chunkPos);
+        }
+
+        protected synchronized List<ChunkPos> getDeferredChunks() {
+            return new ArrayList<>(deferredChunks);
+        }
+
+        /**
+         * Records in the journal that chunks of the region are written in place without being journaled, before the first write.
+         * Other writers wait until the record is durable.
+         */
+        protected synchronized void startUnjournaledWrites(TransformJournal journal) throws IOException {
+            if (writesStarted) return;
+
+            journal.startUnjournaledWrites(region);
+            writesStarted = true;
+        }
+
+        protected synchronized boolean hasStartedUnjournaledWrites() {
+            return writesStarted;
+        }
+    }
+
+    /**
+     * A region that waits for its file to be synced, before it is committed.
+     */
+    protected record PendingRegion(RegionFileLocation region, Runnable commit) {}
+
+    public record RegionFileLocation(Path file, int x, int y, RegistryKey<World> world) {
+
+        /**
+         * @return The x coordinate of the region, as in the region file name.
+         */
+        public int getRegionX() {
+            return x >> 5;
+        }
+
+        /**
+         * @return The z coordinate of the region, as in the region file name.
+         */
+        public int getRegionZ() {
+            return y >> 5;
+        }
+
+        /**
+         * Get the index of a chunk inside its region file.
+         * @param chunkPos The position of the chunk.
+         * @return The index, from 0 to 1023.
+         */
+        public static int getChunkIndex(ChunkPos chunkPos) {
+            return (chunkPos.x & 31) | ((chunkPos.z & 31) << 5);
+        }
+    }
 
     public interface ProgressListener {
         void setSteps(int steps);
@@ -0,0 +1,151 @@
+package work.lclpnet.mcct.transform.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import net.fabricmc.fabric.api.util.NbtType;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtString;
+import work.lclpnet.mcct.nbt.NbtStringInterner;
+import work.lclpnet.mcct.transform.ChunkTransformContext;
+import work.lclpnet.mcct.transform.INbtVisitorTransformation;
+import work.lclpnet.mcct.transform.NbtVisitPath;
+
+import javax.annotation.Nullable;
+
+/**
+ * Base class for chunk transformers that modify strings recursively in the chunk data.
+ * Every string value of every compound is visited, including compounds nested in lists.
+ * Consecutive string transformations are applied in a single traversal of the chunk data, see {@link INbtVisitorTransformation}.
+ *
+ * Chunk data is very repetitive, the same block, entity and item ids occur in almost every chunk.
+ * Deterministic transformations can therefore opt in to remember the new value of every string they have seen, in a bounded cache
+ * shared by all chunks and threads, so that every distinct string is only transformed once.
+ * The new values are taken from the {@link NbtStringInterner}, so that every chunk shares the same instance of a replaced string.
+ * The cache statistics are reported in the {@link work.lclpnet.mcct.transform.TransformMetrics}.
+ */
+public abstract class AbstractStringChunkTransformer implements INbtVisitorTransformation {
+
+    /** A cache size that holds the distinct ids of a typical world. */
+    protected static final int DEFAULT_CACHE_SIZE = 16384;
+    /** Longer strings, e.g. sign texts or book pages, are rarely repeated and are not cached. */
+    protected static final int MAX_CACHED_LENGTH = 256;
+    /** Cached for strings that are not modified; compared by identity and never interned. */
+    private static final NbtString UNMODIFIED = NbtString.of("unmodified");
+
+    @Nullable
+    private final Cache<String, NbtString> cache;
+
+    /**
+     * Create a transformation without a cache.
+     */
+    protected AbstractStringChunkTransformer() {
+        this(0);
+    }
+
+    /**
+     * Create a transformation that caches the new values of strings.
+     * Only use a cache if {@link #transformString(String)} returns the same result for the same string, every time.
+     * @param cacheSize The maximum amount of cached strings, or 0 to disable caching.
+     */
+    protected AbstractStringChunkTransformer(int cacheSize) {
+        if (cacheSize < 0) throw new IllegalArgumentException("Cache size must not be negative");
+
+        this.cache = cacheSize == 0 ? null : CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public boolean onList(NbtVisitPath path, NbtList list, ChunkTransformContext ctx) {
+        // only strings in compounds are modified, lists of strings are skipped
+        return list.getHeldType() == NbtType.COMPOUND;
+    }
+
+    @Nullable
+    @Override
+    public NbtElement onString(NbtVisitPath path, NbtString string, ChunkTransformContext ctx) {
+        final String s = string.asString();
+
+        if (isCacheable(s)) {
+            NbtString cached = getCached(s);
+            return cached != UNMODIFIED ? cached : null;
+        }
+
+        String val = transformString(s);
+        return val != null ? NbtString.of(val) : null;
+    }
+
+    /**
+     * Get the new value of a string from the cache, or compute and cache it.
+     * @param s The current value.
+     * @return The new value or null, if the string should not be modified.
+     */
+    @Nullable
+    protected String transformCached(String s) {
+        if (!isCacheable(s)) return transformString(s);
+
+        NbtString cached = getCached(s);
+        return cached != UNMODIFIED ? cached.asString() : null;
+    }
+
+    private boolean isCacheable(@Nullable String s) {
+        return cache != null && s != null && s.length() <= MAX_CACHED_LENGTH;
+    }
+
+    private NbtString getCached(String s) {
+        NbtString cached = cache.getIfPresent(s);
+
+        if (cached == null) {
+            // concurrent misses may compute the same value twice, which is cheaper than locking
+            String result = transformString(s);
+            cached = result != null ? NbtStringInterner.get().intern(result) : UNMODIFIED;
+            cache.put(s, cached);
+        }
+
+        return cached;
+    }
+
+    /**
+     * Get the hit and miss statistics of the cache, since the transformation was created.
+     * @return The cache statistics, or null if this transformation does not use a cache.
+     */
+    @Nullable
+    @Override
+    public CacheStats getCacheStats() {
+        return cache != null ? cache.stats() : null;
+    }
+
+    /**
+     * Compute the new value of a string.
+     * By default, {@link #replace(String)} is called if {@link #shouldReplace(String)} returns true.
+     * @param s The current value.
+     * @return The new value or null, if the string should not be modified.
+     */
+    @Nullable
+    protected String transformString(String s) {
+        if (!shouldReplace(s)) return null;
+        return replace(s);
+    }
+
+    /**
+     * Checks whether a string would be modified by this transformation.
+     * This can be used to skip chunks that don't contain such a string, see {@link work.lclpnet.mcct.transform.StringIndexTarget}.
+     * The result is not cached, so that checking the strings of an index does not fill the cache with strings of other chunks.
+     * @param s The string.
+     * @return True, if the string would be modified.
+     */
+    public boolean mayModify(String s) {
+        final NbtString cached = cache != null && s != null ? cache.getIfPresent(s) : null;
+        if (cached != null) return cached != UNMODIFIED;
+
+        return transformString(s) != null;
+    }
+
+    protected abstract boolean shouldReplace(String s);
+
+    protected abstract String replace(String s);
+}
@@ -0,0 +1,107 @@
+package work.lclpnet.mcct.transform.impl;
+
+import com.mojang.datafixers.DataFixer;
+import net.fabricmc.fabric.api.util.NbtType;
+import net.minecraft.SharedConstants;
+import net.minecraft.datafixer.DataFixTypes;
+import net.minecraft.datafixer.Schemas;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtHelper;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.registry.RegistryKey;
+import net.minecraft.world.World;
+import work.lclpnet.mcct.transform.ChunkTransformContext;
+import work.lclpnet.mcct.transform.ChunkTransformer;
+import work.lclpnet.mcct.transform.IChunkTransformation;
+
+import javax.annotation.Nullable;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * A chunk transformer that upgrades chunks to the current game version with the vanilla DataFixer,
+ * just like the game does when it loads a chunk of an older version.
+ * Upgrading the whole world with a {@link work.lclpnet.mcct.transform.WorldTransformer} on all cores
+ * avoids the lag spikes the upgrade causes while players explore the world.
+ *
+ * All worker threads share the DataFixer of the game, which builds every rewrite rule only once per version
+ * and caches it for the following chunks.
+ *
+ * Chunks from before Minecraft 1.13 are not upgraded, as their structure data can only be upgraded with the loaded world;
+ * the game will upgrade them when they are loaded. Register this transformer before every other transformer,
+ * so that the others only see chunks in the current format.
+ */
+public class DataFixerChunkTransformer implements IChunkTransformation {
+
+    /** The data version of 1.13, the oldest version that can be upgraded without the world. */
+    protected static final int MIN_DATA_VERSION = 1493;
+    protected static final String DATA_VERSION_KEY = "DataVersion", CONTEXT_KEY = "__context";
+    /** The generator of vanilla dimensions, unless the world is a superflat or debug world. */
+    protected static final Identifier NOISE_GENERATOR = new Identifier("minecraft", "noise");
+
+    protected final DataFixer dataFixer;
+    protected final int targetVersion;
+    protected final Function<RegistryKey<World>, Identifier> generators;
+
+    /**
+     * Create a new upgrade transformation for a world whose dimensions use the noise generator, like vanilla worlds.
+     */
+    public DataFixerChunkTransformer() {
+        this(dimension -> NOISE_GENERATOR);
+    }
+
+    /**
+     * Create a new upgrade transformation.
+     * @param generators The id of the chunk generator type of each dimension, e.g. <code>minecraft:flat</code>.
+     *                   Some fixes, like the extension of the world height in 1.18, depend on it.
+     */
+    public DataFixerChunkTransformer(Function<RegistryKey<World>, Identifier> generators) {
+        this(Schemas.getFixer(), SharedConstants.getGameVersion().getWorldVersion(), generators);
+    }
+
+    protected DataFixerChunkTransformer(DataFixer dataFixer, int targetVersion, Function<RegistryKey<World>, Identifier> generators) {
+        this.dataFixer = Objects.requireNonNull(dataFixer);
+        this.targetVersion = targetVersion;
+        this.generators = Objects.requireNonNull(generators);
+    }
+
+    @Nullable
+    @Override
+    public String getFingerprint() {
+        return "%s[%s]".formatted(getClass().getName(), targetVersion);
+    }
+
+    @Override
+    public void transform(ChunkTransformContext ctx, ChunkTransformer transformer) {
+        final NbtCompound chunk = ctx.getCompound();
+        final int dataVersion = chunk.contains(DATA_VERSION_KEY, NbtType.NUMBER) ? chunk.getInt(DATA_VERSION_KEY) : -1;
+
+        if (dataVersion < MIN_DATA_VERSION || dataVersion >= targetVersion) return;
+
+        // the same context the game passes to the fixers, see VersionedChunkStorage#updateChunkNbt
+        final NbtCompound context = new NbtCompound();
+        final RegistryKey<World> dimension = ctx.region.world();
+        context.putString("dimension", dimension.getValue().toString());
+
+        final Identifier generator = generators.apply(dimension);
+        if (generator != null) context.putString("generator", generator.toString());
+
+        chunk.put(CONTEXT_KEY, context);
+
+        final NbtCompound upgraded;
+
+        try {
+            upgraded = NbtHelper.update(dataFixer, DataFixTypes.CHUNK, chunk, dataVersion, targetVersion);
+        } finally {
+            // the original compound is written back if a later transformation fails
+            chunk.remove(CONTEXT_KEY);
+        }
+
+        upgraded.putInt(DATA_VERSION_KEY, targetVersion);
+        upgraded.remove(CONTEXT_KEY);
+
+        // the upgraded entries are copied into the original compound once every transformation was applied
+        ctx.setCompound(upgraded);
+        ctx.markDirty();
+    }
+}
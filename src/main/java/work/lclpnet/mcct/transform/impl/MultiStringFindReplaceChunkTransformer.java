@@ -0,0 +1,110 @@
+package work.lclpnet.mcct.transform.impl;
+
+import work.lclpnet.mcct.util.AhoCorasick;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A chunk transformer that applies many find and replace rules in a single pass over the chunk data.
+ * The search strings of all rules are compiled into one {@link AhoCorasick} automaton,
+ * so that strings not containing any search string are rejected with a single scan.
+ *
+ * The result is the same as registering one {@link StringFindReplaceChunkTransformer} per rule, in the same order:
+ * a rule is applied to the output of all previous rules, if that output contains its search string.
+ */
+public class MultiStringFindReplaceChunkTransformer extends AbstractStringChunkTransformer {
+
+    protected final String[] searchStrings;
+    protected final String[] replaceValues;
+    protected final AhoCorasick automaton;
+
+    /**
+     * Create a new find and replace transformer with multiple rules.
+     * The rules are applied in the iteration order of the map; use a {@link java.util.LinkedHashMap} if the order matters.
+     *
+     * <br><br>
+     * Example:
+     * <pre>
+     * {@code
+     * Map<String, String> rules = new LinkedHashMap<>();
+     * rules.put("minecraft:stone_slab", "minecraft:oak_slab");
+     * rules.put("minecraft:stone_stairs", "minecraft:oak_stairs");
+     *
+     * new MultiStringFindReplaceChunkTransformer(rules);
+     * }
+     * </pre>
+     *
+     * @param replacements The rules, mapping search strings to the strings that will be inserted.
+     */
+    public MultiStringFindReplaceChunkTransformer(Map<String, String> replacements) {
+        this(replacements, false);
+    }
+
+    /**
+     * Create a new find and replace transformer with multiple rules, that optionally caches the new value of every string it has seen.
+     *
+     * @param replacements The rules, mapping search strings to the strings that will be inserted.
+     * @param cache Whether to cache the new values of strings, see {@link AbstractStringChunkTransformer}.
+     */
+    public MultiStringFindReplaceChunkTransformer(Map<String, String> replacements, boolean cache) {
+        super(cache ? DEFAULT_CACHE_SIZE : 0);
+        Objects.requireNonNull(replacements);
+
+        final int size = replacements.size();
+        this.searchStrings = new String[size];
+        this.replaceValues = new String[size];
+
+        int i = 0;
+        for (var entry : replacements.entrySet()) {
+            searchStrings[i] = Objects.requireNonNull(entry.getKey());
+            replaceValues[i++] = Objects.requireNonNull(entry.getValue());
+        }
+
+        this.automaton = new AhoCorasick(searchStrings);
+    }
+
+    @Override
+    public String getFingerprint() {
+        final StringBuilder builder = new StringBuilder(getClass().getName()).append('[');
+
+        for (int i = 0; i < searchStrings.length; i++) {
+            if (i > 0) builder.append(", ");
+            builder.append(searchStrings[i]).append(" -> ").append(replaceValues[i]);
+        }
+
+        return builder.append(']').toString();
+    }
+
+    @Nullable
+    @Override
+    protected String transformString(String s) {
+        if (s == null) return null;
+
+        int rule = automaton.firstMatch(s, 0);
+        if (rule == -1) return null;
+
+        String result = s;
+
+        do {
+            result = result.replace(searchStrings[rule], replaceValues[rule]);
+
+            // the next rule to apply is the first later rule whose search string occurs in the current result
+            rule = rule + 1 < searchStrings.length ? automaton.firstMatch(result, rule + 1) : -1;
+        } while (rule != -1);
+
+        return result;
+    }
+
+    @Override
+    protected boolean shouldReplace(String s) {
+        return s != null && automaton.matches(s);
+    }
+
+    @Override
+    protected String replace(String s) {
+        String result = transformString(s);
+        return result != null ? result : s;
+    }
+}
@@ -0,0 +1,134 @@
+package work.lclpnet.mcct.transform.impl;
+
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtString;
+import work.lclpnet.mcct.nbt.NbtPath;
+import work.lclpnet.mcct.nbt.NbtPathTree;
+import work.lclpnet.mcct.transform.INbtPathTransformation;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.UnaryOperator;
+
+/**
+ * A chunk transformer that modifies exactly the nodes selected by {@link NbtPath}s, instead of every string of the chunk.
+ * The paths of all bindings are compiled into one {@link NbtPathTree} when the transformer is created,
+ * so every chunk is traversed only once, and only along the bound paths.
+ * Consecutive path transformers, even of different registered transformers, share a single traversal, see {@link INbtPathTransformation}.
+ *
+ * <br><br>
+ * Example:
+ * <pre>
+ * {@code
+ * new NbtPathChunkTransformer.Builder()
+ *         .replace("sections[*].block_states.palette[*].Name", "minecraft:stone", "minecraft:andesite")
+ *         .mapString("block_entities[id=minecraft:sign].Text1", text -> text.replace("Spawn", "Hub"))
+ *         .create();
+ * }
+ * </pre>
+ *
+ * Only the selected parts of the chunk are read, see {@link #getSelection()}.
+ */
+public class NbtPathChunkTransformer implements INbtPathTransformation {
+
+    protected final NbtPathTree tree;
+    @Nullable
+    protected final String fingerprint;
+
+    protected NbtPathChunkTransformer(NbtPathTree tree, @Nullable String fingerprint) {
+        this.tree = Objects.requireNonNull(tree);
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * @return The fingerprint of the transformer, or null if custom functions were bound without a fingerprint.
+     */
+    @Nullable
+    @Override
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    @Override
+    public NbtPathTree getPathTree() {
+        return tree;
+    }
+
+    public static class Builder {
+        private final NbtPathTree tree = new NbtPathTree();
+        private final List<String> replacements = new ArrayList<>();
+        private boolean customFunctions = false;
+        private String fingerprint = null;
+
+        /**
+         * Find and replace a substring in the string values selected by a path.
+         * @param path The path, e.g. <code>"sections[*].block_states.palette[*].Name"</code>.
+         * @param target The string to search; will be replaced with <code>replacement</code>.
+         * @param replacement The string that will be inserted.
+         * @return This builder.
+         */
+        public Builder replace(String path, String target, String replacement) {
+            Objects.requireNonNull(target);
+            Objects.requireNonNull(replacement);
+
+            tree.bind(NbtPath.compile(path), element -> {
+                if (!(element instanceof NbtString)) return null;
+
+                final String s = element.asString();
+                return s.contains(target) ? NbtString.of(s.replace(target, replacement)) : null;
+            });
+
+            replacements.add("%s: %s -> %s".formatted(path, target, replacement));
+            return this;
+        }
+
+        /**
+         * Map the string values selected by a path.
+         * @param path The path.
+         * @param mapper A function that maps the current value to the new value, or to null if it should not be modified.
+         * @return This builder.
+         */
+        public Builder mapString(String path, UnaryOperator<String> mapper) {
+            Objects.requireNonNull(mapper);
+
+            return map(path, element -> {
+                if (!(element instanceof NbtString)) return null;
+
+                final String result = mapper.apply(element.asString());
+                return result != null ? NbtString.of(result) : null;
+            });
+        }
+
+        /**
+         * Map the nodes selected by a path.
+         * A node that is an element of a list must be mapped to an element of the same type.
+         * @param path The path.
+         * @param mapper A function that maps the current node to the new node, or to null if it should not be modified.
+         *               Compounds and lists must not be modified in place, return a modified copy instead.
+         * @return This builder.
+         */
+        public Builder map(String path, UnaryOperator<NbtElement> mapper) {
+            tree.bind(NbtPath.compile(path), mapper);
+            customFunctions = true;
+            return this;
+        }
+
+        public Builder fingerprint(String fingerprint) {
+            this.fingerprint = Objects.requireNonNull(fingerprint);
+            return this;
+        }
+
+        public NbtPathChunkTransformer create() {
+            if (tree.isEmpty()) throw new IllegalStateException("No paths were bound");
+
+            String fingerprint = this.fingerprint;
+
+            if (fingerprint == null && !customFunctions)
+                fingerprint = "%s[%s]".formatted(NbtPathChunkTransformer.class.getName(), String.join(", ", replacements));
+
+            return new NbtPathChunkTransformer(tree, fingerprint);
+        }
+    }
+}
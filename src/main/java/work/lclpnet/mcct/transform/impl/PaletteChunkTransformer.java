@@ -0,0 +1,308 @@
+package work.lclpnet.mcct.transform.impl;
+
+import net.fabricmc.fabric.api.util.NbtType;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtString;
+import net.minecraft.util.math.MathHelper;
+import work.lclpnet.mcct.nbt.NbtSelection;
+import work.lclpnet.mcct.transform.ChunkTransformContext;
+import work.lclpnet.mcct.transform.ChunkTransformer;
+import work.lclpnet.mcct.transform.IChunkTransformation;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * A chunk transformer that maps the block state and biome palettes of chunk sections.
+ * Only the palettes in <code>sections[].block_states</code> and <code>sections[].biomes</code> are visited;
+ * other strings in the chunk (entities, block entities, ...) are never touched.
+ *
+ * If multiple palette entries are mapped to the same value, the palette is deduplicated and the
+ * packed <code>data</code> array is rewritten with the new indices, using as few bits per entry as vanilla would.
+ *
+ * Requires the chunk format of Minecraft 1.18 or newer.
+ */
+public class PaletteChunkTransformer implements IChunkTransformation {
+
+    protected static final int BLOCK_STATE_COUNT = 4096, BIOME_COUNT = 64;
+
+    @Nullable
+    protected final UnaryOperator<NbtCompound> blockStateMapper;
+    @Nullable
+    protected final UnaryOperator<String> biomeMapper;
+    @Nullable
+    protected final String fingerprint;
+
+    protected PaletteChunkTransformer(@Nullable UnaryOperator<NbtCompound> blockStateMapper, @Nullable UnaryOperator<String> biomeMapper) {
+        this(blockStateMapper, biomeMapper, null);
+    }
+
+    protected PaletteChunkTransformer(@Nullable UnaryOperator<NbtCompound> blockStateMapper, @Nullable UnaryOperator<String> biomeMapper,
+                                      @Nullable String fingerprint) {
+        this.blockStateMapper = blockStateMapper;
+        this.biomeMapper = biomeMapper;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * @return The fingerprint of the transformer, or null if custom mappers were used.
+     */
+    @Nullable
+    @Override
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    @Override
+    public NbtSelection getSelection() {
+        if (blockStateMapper != null && biomeMapper != null) return NbtSelection.of("sections.block_states", "sections.biomes");
+        if (blockStateMapper != null) return NbtSelection.of("sections.block_states");
+        if (biomeMapper != null) return NbtSelection.of("sections.biomes");
+        return NbtSelection.none();
+    }
+
+    @Override
+    public void transform(ChunkTransformContext ctx, ChunkTransformer transformer) {
+        final NbtCompound chunk = ctx.getCompound();
+        if (!chunk.contains("sections", NbtType.LIST)) return;
+
+        NbtList sections = chunk.getList("sections", NbtType.COMPOUND);
+        boolean dirty = false;
+
+        for (int i = 0; i < sections.size(); i++) {
+            NbtCompound section = sections.getCompound(i);
+
+            if (blockStateMapper != null && section.contains("block_states", NbtType.COMPOUND)) {
+                dirty |= mapContainer(section.getCompound("block_states"), NbtType.COMPOUND, BLOCK_STATE_COUNT, true,
+                        element -> blockStateMapper.apply((NbtCompound) element));
+            }
+
+            if (biomeMapper != null && section.contains("biomes", NbtType.COMPOUND)) {
+                dirty |= mapContainer(section.getCompound("biomes"), NbtType.STRING, BIOME_COUNT, false,
+                        element -> NbtString.of(biomeMapper.apply(element.asString())));
+            }
+        }
+
+        if (dirty) ctx.markDirty();
+    }
+
+    /**
+     * Map the palette entries of a paletted container.
+     * @return True, if the container was modified.
+     */
+    protected boolean mapContainer(NbtCompound container, int entryType, int containerSize, boolean blockStates, UnaryOperator<NbtElement> mapper) {
+        if (!container.contains("palette", NbtType.LIST)) return false;
+
+        final NbtList palette = container.getList("palette", entryType);
+        final int paletteSize = palette.size();
+        if (paletteSize == 0) return false;
+
+        final List<NbtElement> mapped = new ArrayList<>(paletteSize);
+        boolean changed = false;
+
+        for (int i = 0; i < paletteSize; i++) {
+            NbtElement entry = palette.get(i);
+            NbtElement result = Objects.requireNonNull(mapper.apply(entry), "Palette mapper returned null");
+
+            if (!result.equals(entry)) changed = true;
+            mapped.add(result);
+        }
+
+        if (!changed) return false;
+
+        // deduplicate entries that were mapped to the same value
+        final Map<NbtElement, Integer> indices = new HashMap<>();
+        final List<NbtElement> deduplicated = new ArrayList<>(paletteSize);
+        final int[] remap = new int[paletteSize];
+
+        for (int i = 0; i < paletteSize; i++) {
+            NbtElement entry = mapped.get(i);
+            Integer index = indices.get(entry);
+
+            if (index == null) {
+                index = deduplicated.size();
+                indices.put(entry, index);
+                deduplicated.add(entry);
+            }
+
+            remap[i] = index;
+        }
+
+        if (deduplicated.size() == paletteSize || !remapData(container, remap, paletteSize, deduplicated.size(), containerSize, blockStates)) {
+            // no duplicates or unexpected data layout; vanilla accepts duplicate palette entries
+            for (int i = 0; i < paletteSize; i++) palette.set(i, mapped.get(i));
+            return true;
+        }
+
+        NbtList newPalette = new NbtList();
+        for (NbtElement entry : deduplicated) newPalette.add(entry);
+        container.put("palette", newPalette);
+
+        return true;
+    }
+
+    /**
+     * Rewrite the packed palette indices of a container.
+     * @return False, if the existing data does not have the expected layout and was left unchanged.
+     */
+    protected boolean remapData(NbtCompound container, int[] remap, int oldPaletteSize, int newPaletteSize, int containerSize, boolean blockStates) {
+        final int oldBits = getBitsPerEntry(oldPaletteSize, blockStates);
+        final int newBits = getBitsPerEntry(newPaletteSize, blockStates);
+
+        final int[] values;
+
+        if (oldBits == 0) {
+            values = new int[containerSize];
+        } else {
+            if (!container.contains("data", NbtType.LONG_ARRAY)) return false;
+
+            long[] data = container.getLongArray("data");
+            if (data.length != getPackedLength(oldBits, containerSize)) return false;
+
+            values = unpack(data, oldBits, containerSize);
+        }
+
+        for (int i = 0; i < containerSize; i++) {
+            int value = values[i];
+            if (value < 0 || value >= remap.length) return false;
+
+            values[i] = remap[value];
+        }
+
+        if (newBits == 0) container.remove("data");
+        else container.putLongArray("data", pack(values, newBits));
+
+        return true;
+    }
+
+    /**
+     * Get the amount of bits vanilla uses per entry to store palette indices on disk.
+     * @param paletteSize The size of the palette.
+     * @param blockStates Whether the container holds block states; biomes otherwise.
+     * @return The amount of bits per entry.
+     */
+    protected static int getBitsPerEntry(int paletteSize, boolean blockStates) {
+        int bits = MathHelper.ceilLog2(paletteSize);
+        if (blockStates && bits != 0) return Math.max(4, bits);
+        return bits;
+    }
+
+    protected static int getPackedLength(int bits, int size) {
+        final int valuesPerLong = 64 / bits;
+        return (size + valuesPerLong - 1) / valuesPerLong;
+    }
+
+    protected static int[] unpack(long[] data, int bits, int size) {
+        final int valuesPerLong = 64 / bits;
+        final long mask = (1L << bits) - 1L;
+        final int[] values = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            long word = data[i / valuesPerLong];
+            values[i] = (int) ((word >>> ((i % valuesPerLong) * bits)) & mask);
+        }
+
+        return values;
+    }
+
+    protected static long[] pack(int[] values, int bits) {
+        final int valuesPerLong = 64 / bits;
+        final long[] data = new long[getPackedLength(bits, values.length)];
+
+        for (int i = 0; i < values.length; i++) {
+            data[i / valuesPerLong] |= ((long) values[i]) << ((i % valuesPerLong) * bits);
+        }
+
+        return data;
+    }
+
+    public static class Builder {
+        private UnaryOperator<NbtCompound> blockStateMapper = null;
+        private UnaryOperator<String> biomeMapper = null;
+        // the fingerprint is only known as long as nothing but renames are configured
+        private StringBuilder fingerprint = new StringBuilder(PaletteChunkTransformer.class.getName());
+
+        /**
+         * Rename blocks in the block state palettes; the properties of the block states are kept.
+         * @param renames A map from old block ids to new block ids, e.g. <code>minecraft:stone_slab</code> to <code>minecraft:oak_slab</code>.
+         * @return This builder.
+         */
+        public Builder renameBlocks(Map<String, String> renames) {
+            final Map<String, String> copy = Map.copyOf(renames);
+            final StringBuilder fingerprint = this.fingerprint;
+
+            mapBlockStates(state -> {
+                String replacement = copy.get(state.getString("Name"));
+                if (replacement == null) return state;
+
+                NbtCompound mapped = state.copy();
+                mapped.putString("Name", replacement);
+                return mapped;
+            });
+
+            if (fingerprint != null) this.fingerprint = fingerprint.append("[blocks ").append(new TreeMap<>(copy)).append(']');
+            return this;
+        }
+
+        /**
+         * Map the block state palette entries.
+         * An entry is a compound with the block id as <code>Name</code> and an optional <code>Properties</code> compound.
+         * The mapper must not modify its argument, but return a new compound instead.
+         * Multiple calls are chained in the order they were made.
+         * @param mapper The mapping function, returning its argument if the state should not be changed.
+         * @return This builder.
+         */
+        public Builder mapBlockStates(UnaryOperator<NbtCompound> mapper) {
+            Objects.requireNonNull(mapper);
+
+            final UnaryOperator<NbtCompound> previous = this.blockStateMapper;
+            this.blockStateMapper = previous == null ? mapper : state -> mapper.apply(previous.apply(state));
+            this.fingerprint = null;
+
+            return this;
+        }
+
+        /**
+         * Rename biomes in the biome palettes.
+         * @param renames A map from old biome ids to new biome ids.
+         * @return This builder.
+         */
+        public Builder renameBiomes(Map<String, String> renames) {
+            final Map<String, String> copy = Map.copyOf(renames);
+            final StringBuilder fingerprint = this.fingerprint;
+
+            mapBiomes(biome -> copy.getOrDefault(biome, biome));
+
+            if (fingerprint != null) this.fingerprint = fingerprint.append("[biomes ").append(new TreeMap<>(copy)).append(']');
+            return this;
+        }
+
+        /**
+         * Map the biome palette entries.
+         * Multiple calls are chained in the order they were made.
+         * @param mapper The mapping function, returning its argument if the biome should not be changed.
+         * @return This builder.
+         */
+        public Builder mapBiomes(UnaryOperator<String> mapper) {
+            Objects.requireNonNull(mapper);
+
+            final UnaryOperator<String> previous = this.biomeMapper;
+            this.biomeMapper = previous == null ? mapper : biome -> mapper.apply(previous.apply(biome));
+            this.fingerprint = null;
+
+            return this;
+        }
+
+        public PaletteChunkTransformer create() {
+            return new PaletteChunkTransformer(blockStateMapper, biomeMapper, fingerprint != null ? fingerprint.toString() : null);
+        }
+    }
+}
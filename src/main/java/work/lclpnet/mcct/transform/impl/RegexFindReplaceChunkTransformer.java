@@ -1,14 +1,22 @@
 package work.lclpnet.mcct.transform.impl;
 
+import javax.annotation.Nullable;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 public class RegexFindReplaceChunkTransformer extends StringFindReplaceChunkTransformer {
 
+    protected final Pattern pattern;
+    protected final ThreadLocal<Matcher> matcher;
+    protected final String literalPrefix;
+
     /**
      * Create a new find and replace transformer supporting regex.
      * This transformer will find any strings matching <code>pattern</code>
      * and replaces all matches with <code>replacement</code>.
      *
      * Supports substituting groups with <code>$n</code> identifiers, where <code>n</code> is the match group.
-     * Uses the {@link String#replaceAll(String, String)} method.
+     * Behaves like the {@link String#replaceAll(String, String)} method, but the pattern is only compiled once.
      *
      * <br><br>
      * Example:
@@ -23,16 +31,106 @@ public class RegexFindReplaceChunkTransformer extends StringFindReplaceChunkTran
      * @param replaceValue The string that will be inserted.
      */
     public RegexFindReplaceChunkTransformer(String pattern, String replaceValue) {
-        super(pattern, replaceValue);
+        this(pattern, replaceValue, false);
+    }
+
+    /**
+     * Create a new find and replace transformer supporting regex, that optionally caches the new value of every string it has seen.
+     * As every string has to be matched against the regex, caching usually pays off for transformations of whole worlds.
+     *
+     * @param pattern The string to search; will be replaced with <code>replaceValue</code>.
+     * @param replaceValue The string that will be inserted.
+     * @param cache Whether to cache the new values of strings, see {@link AbstractStringChunkTransformer}.
+     */
+    public RegexFindReplaceChunkTransformer(String pattern, String replaceValue, boolean cache) {
+        super(pattern, replaceValue, cache);
+        this.pattern = Pattern.compile(pattern);
+        // matchers are not thread safe, so every worker thread gets its own
+        this.matcher = ThreadLocal.withInitial(() -> this.pattern.matcher(""));
+        this.literalPrefix = getLiteralPrefix(pattern);
+    }
+
+    @Nullable
+    @Override
+    protected String transformString(String s) {
+        if (s == null || !s.startsWith(literalPrefix)) return null;
+
+        Matcher m = matcher.get().reset(s);
+        if (!m.matches()) return null;
+
+        // replaceAll() starts a new search from the beginning; this is the same as String#replaceAll
+        m.reset();
+        return m.replaceAll(replaceValue);
     }
 
     @Override
     protected boolean shouldReplace(String s) {
-        return s.matches(searchString);
+        return s != null && s.startsWith(literalPrefix) && matcher.get().reset(s).matches();
     }
 
     @Override
     protected String replace(String s) {
-        return s.replaceAll(searchString, replaceValue);
+        return matcher.get().reset(s).replaceAll(replaceValue);
+    }
+
+    /**
+     * Get the literal text every string that fully matches a regex has to start with.
+     * This is used to reject most strings with a cheap {@link String#startsWith(String)} call,
+     * before the regex engine is invoked.
+     * @param regex The regex.
+     * @return A prefix of every string matching the regex; may be empty.
+     */
+    protected static String getLiteralPrefix(String regex) {
+        if (hasTopLevelAlternation(regex)) return "";
+
+        final StringBuilder prefix = new StringBuilder();
+        final int length = regex.length();
+
+        for (int i = regex.startsWith("^") ? 1 : 0; i < length; i++) {
+            char c = regex.charAt(i);
+
+            if ("\\[](){}.*+?^$|".indexOf(c) != -1) {
+                // the literal before these quantifiers is optional
+                if ((c == '*' || c == '?' || c == '{') && !prefix.isEmpty())
+                    prefix.setLength(prefix.length() - 1);
+
+                break;
+            }
+
+            prefix.append(c);
+        }
+
+        return prefix.toString();
+    }
+
+    private static boolean hasTopLevelAlternation(String regex) {
+        int depth = 0;
+        boolean inClass = false;
+
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+
+            if (c == '\\') {
+                i++;  // skip the escaped character
+                continue;
+            }
+
+            if (inClass) {
+                if (c == ']') inClass = false;
+                continue;
+            }
+
+            switch (c) {
+                case '[' -> inClass = true;
+                case '(' -> depth++;
+                case ')' -> depth--;
+                case '|' -> {
+                    if (depth <= 0) return true;
+                }
+                default -> {}
+            }
+        }
+
+        return false;
     }
 }
@@ -7,18 +7,25 @@ import net.minecraft.nbt.NbtList;
 import net.minecraft.nbt.NbtString;
 import work.lclpnet.mcct.transform.ChunkTransformContext;
 import work.lclpnet.mcct.transform.ChunkTransformer;
-import work.lclpnet.mcct.transform.IChunkTransformation;
 
+import java.lang.reflect.Method;
 import java.util.Objects;
 
 /**
  * A chunk transformer that finds and replaces strings recursively in the chunk data.
  * This works just like your text editor's find and replace.
+ *
+ * Strings are visited by the fused traversal of {@link work.lclpnet.mcct.transform.INbtVisitorTransformation}s.
+ * Subclasses that still override the deprecated hooks {@link #visitCompound(NbtCompound, ChunkTransformContext)},
+ * {@link #visitList(NbtList, ChunkTransformContext)} or {@link #visitString(String, NbtCompound, String, ChunkTransformContext)}
+ * are traversed on their own through these hooks, just like before.
  */
-public class StringFindReplaceChunkTransformer implements IChunkTransformation {
+public class StringFindReplaceChunkTransformer extends AbstractStringChunkTransformer {
 
     protected final String searchString;
     protected final String replaceValue;
+    /** Whether a subclass overrides the deprecated traversal hooks, which the fused traversal does not call. */
+    private final boolean legacyHooks;
 
     /**
      * Create a new find and replace transformer.
@@ -28,16 +35,55 @@ public class StringFindReplaceChunkTransformer implements IChunkTransformation {
      * @param replacement The string that will be inserted.
      */
     public StringFindReplaceChunkTransformer(String target, String replacement) {
+        this(target, replacement, false);
+    }
+
+    /**
+     * Create a new find and replace transformer, that optionally caches the new value of every string it has seen.
+     * Caching pays off for transformations of whole worlds, where the same ids are found in every chunk.
+     *
+     * @param target The string to search; will be replaced with <code>replacement</code>.
+     * @param replacement The string that will be inserted.
+     * @param cache Whether to cache the new values of strings, see {@link AbstractStringChunkTransformer}.
+     */
+    public StringFindReplaceChunkTransformer(String target, String replacement, boolean cache) {
+        super(cache ? DEFAULT_CACHE_SIZE : 0);
         this.searchString = Objects.requireNonNull(target);
         this.replaceValue = Objects.requireNonNull(replacement);
+        this.legacyHooks = overridesLegacyHooks(getClass());
+    }
+
+    private static boolean overridesLegacyHooks(Class<?> type) {
+        for (Class<?> c = type; c != StringFindReplaceChunkTransformer.class; c = c.getSuperclass()) {
+            for (Method method : c.getDeclaredMethods()) {
+                switch (method.getName()) {
+                    case "visitCompound", "visitList", "visitString" -> {
+                        return true;
+                    }
+                }
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean canFuse() {
+        return !legacyHooks;
     }
 
     @Override
     public void transform(ChunkTransformContext ctx, ChunkTransformer transformer) {
-        final NbtCompound compound = ctx.getCompound();
-        visitCompound(compound, ctx);
+        if (legacyHooks) visitCompound(ctx.getCompound(), ctx);
+        else super.transform(ctx, transformer);
     }
 
+    /**
+     * Visit the entries of a compound recursively.
+     * @deprecated Strings are visited by {@link #onString(work.lclpnet.mcct.transform.NbtVisitPath, NbtString, ChunkTransformContext)}
+     * in a traversal that is fused with other transformations. Override {@link #transformString(String)} instead.
+     */
+    @Deprecated
     protected void visitCompound(NbtCompound compound, ChunkTransformContext ctx) {
         if (compound == null) return;
 
@@ -49,12 +95,21 @@ public class StringFindReplaceChunkTransformer implements IChunkTransformation {
         });
     }
 
+    /**
+     * Visit the compounds of a list recursively.
+     * @deprecated See {@link #visitCompound(NbtCompound, ChunkTransformContext)}.
+     */
+    @Deprecated
     protected void visitList(NbtList list, ChunkTransformContext ctx) {
         if (list == null || list.getHeldType() != NbtType.COMPOUND) return;
         list.forEach(tag -> visitCompound((NbtCompound) tag, ctx));
     }
 
-
+    /**
+     * Replace a string value of a compound.
+     * @deprecated See {@link #visitCompound(NbtCompound, ChunkTransformContext)}.
+     */
+    @Deprecated
     protected void visitString(String string, NbtCompound parent, String key, ChunkTransformContext ctx) {
         if (!shouldReplace(string)) return;
 
@@ -63,10 +118,17 @@ public class StringFindReplaceChunkTransformer implements IChunkTransformation {
         ctx.markDirty();
     }
 
+    @Override
+    public String getFingerprint() {
+        return "%s[%s -> %s]".formatted(getClass().getName(), searchString, replaceValue);
+    }
+
+    @Override
     protected boolean shouldReplace(String s) {
         return s != null && s.contains(searchString);
     }
 
+    @Override
     protected String replace(String s) {
         return s.replace(searchString, replaceValue);
     }
@@ -0,0 +1,213 @@
+package work.lclpnet.mcct.util;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Queue;
+
+/**
+ * An Aho-Corasick automaton that finds occurrences of many patterns in a single pass over a string.
+ * Patterns are identified by their index in the array the automaton was built from.
+ * Instances are immutable and can be shared between threads.
+ */
+public class AhoCorasick {
+
+    private static final int ROOT = 0;
+    private static final int[] NO_OUTPUT = new int[0];
+
+    private final int patternCount;
+    /** Sorted indices of empty patterns, which occur in every string. */
+    private final int[] emptyPatterns;
+    private final char[][] edgeChars;
+    private final int[][] edgeTargets;
+    private final int[] fail;
+    /** Sorted indices of every pattern ending at a node, including the ones reachable through fail links. */
+    private final int[][] outputs;
+
+    public AhoCorasick(String... patterns) {
+        this.patternCount = patterns.length;
+
+        final TrieBuilder trie = new TrieBuilder();
+        final IntList empty = new IntList();
+
+        for (int i = 0; i < patterns.length; i++) {
+            String pattern = Objects.requireNonNull(patterns[i]);
+            if (pattern.isEmpty()) {
+                empty.add(i);
+                continue;
+            }
+
+            int node = ROOT;
+            for (int j = 0; j < pattern.length(); j++) {
+                node = trie.child(node, pattern.charAt(j));
+            }
+
+            trie.outputs[node].add(i);
+        }
+
+        final int nodeCount = trie.size;
+        this.emptyPatterns = empty.toArray();
+        this.edgeChars = new char[nodeCount][];
+        this.edgeTargets = new int[nodeCount][];
+        this.fail = new int[nodeCount];
+        this.outputs = new int[nodeCount][];
+
+        for (int node = 0; node < nodeCount; node++) {
+            edgeChars[node] = trie.edgeChars[node].toString().toCharArray();
+            edgeTargets[node] = trie.edgeTargets[node].toArray();
+        }
+
+        // breadth first, so that the fail target of a node is always complete before the node itself
+        final Queue<Integer> queue = new ArrayDeque<>();
+        queue.add(ROOT);
+        outputs[ROOT] = NO_OUTPUT;
+
+        while (!queue.isEmpty()) {
+            final int node = queue.remove();
+
+            for (int e = 0; e < edgeChars[node].length; e++) {
+                final char c = edgeChars[node][e];
+                final int child = edgeTargets[node][e];
+
+                if (node == ROOT) {
+                    fail[child] = ROOT;
+                } else {
+                    int state = fail[node];
+                    int next;
+                    while ((next = step(state, c)) == -1 && state != ROOT) state = fail[state];
+                    fail[child] = next == -1 ? ROOT : next;
+                }
+
+                outputs[child] = mergeSorted(trie.outputs[child].toArray(), outputs[fail[child]]);
+                queue.add(child);
+            }
+        }
+    }
+
+    private int step(int node, char c) {
+        final char[] chars = edgeChars[node];
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] == c) return edgeTargets[node][i];
+        }
+        return -1;
+    }
+
+    /**
+     * Find the pattern with the smallest index that occurs in a string.
+     * @param s The string to search in.
+     * @param minPattern The smallest pattern index to consider.
+     * @return The smallest index, that is at least <code>minPattern</code>, of a pattern that occurs in <code>s</code>,
+     * or -1 if there is no such pattern.
+     */
+    public int firstMatch(String s, int minPattern) {
+        int best = Integer.MAX_VALUE;
+
+        for (int pattern : emptyPatterns) {
+            if (pattern >= minPattern) {
+                if (pattern == minPattern) return pattern;
+                best = pattern;
+                break;
+            }
+        }
+
+        int state = ROOT;
+        final int length = s.length();
+
+        for (int i = 0; i < length; i++) {
+            final char c = s.charAt(i);
+
+            int next;
+            while ((next = step(state, c)) == -1 && state != ROOT) state = fail[state];
+            state = next == -1 ? ROOT : next;
+
+            for (int pattern : outputs[state]) {
+                if (pattern < minPattern) continue;
+                if (pattern >= best) break;
+
+                if (pattern == minPattern) return pattern;
+                best = pattern;
+            }
+        }
+
+        return best == Integer.MAX_VALUE ? -1 : best;
+    }
+
+    /**
+     * Checks whether any pattern occurs in a string.
+     * @param s The string to search in.
+     * @return True, if at least one pattern occurs in <code>s</code>.
+     */
+    public boolean matches(String s) {
+        return firstMatch(s, 0) != -1;
+    }
+
+    public int getPatternCount() {
+        return patternCount;
+    }
+
+    private static int[] mergeSorted(int[] a, int[] b) {
+        if (a.length == 0) return b.length == 0 ? NO_OUTPUT : b;
+        if (b.length == 0) return a;
+
+        int[] merged = new int[a.length + b.length];
+        System.arraycopy(a, 0, merged, 0, a.length);
+        System.arraycopy(b, 0, merged, a.length, b.length);
+        Arrays.sort(merged);
+
+        return merged;
+    }
+
+    private static class TrieBuilder {
+        private StringBuilder[] edgeChars = new StringBuilder[16];
+        private IntList[] edgeTargets = new IntList[16];
+        private IntList[] outputs = new IntList[16];
+        private int size = 0;
+
+        TrieBuilder() {
+            addNode();
+        }
+
+        private int addNode() {
+            if (size == edgeChars.length) {
+                edgeChars = Arrays.copyOf(edgeChars, size * 2);
+                edgeTargets = Arrays.copyOf(edgeTargets, size * 2);
+                outputs = Arrays.copyOf(outputs, size * 2);
+            }
+
+            edgeChars[size] = new StringBuilder();
+            edgeTargets[size] = new IntList();
+            outputs[size] = new IntList();
+
+            return size++;
+        }
+
+        int child(int node, char c) {
+            int index = edgeChars[node].indexOf(String.valueOf(c));
+            if (index != -1) return edgeTargets[node].get(index);
+
+            int child = addNode();
+            edgeChars[node].append(c);
+            edgeTargets[node].add(child);
+
+            return child;
+        }
+    }
+
+    private static class IntList {
+        private int[] values = new int[4];
+        private int size = 0;
+
+        void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int[] toArray() {
+            return size == 0 ? NO_OUTPUT : Arrays.copyOf(values, size);
+        }
+    }
+}